@@ -0,0 +1,224 @@
+package com.azure.core.log
+
+/**
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+import android.util.Log
+import timber.log.Timber
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicLong
+import java.util.concurrent.atomic.AtomicLongArray
+import java.util.concurrent.atomic.AtomicReferenceArray
+import java.util.concurrent.locks.LockSupport
+
+/**
+ * A Timber tree that writes the logs to the system log on a background thread, so logging doesn't add the cost of
+ * writing to Logcat to the calling thread (often an OkHttp one).
+ *
+ * The logs wait in a lock-free ring buffer of `capacity` entries: when it's full, new logs are dropped and counted in
+ * `droppedCount` rather than blocking the caller. The last `historySize` logs are kept, and the ones below `writeLevel`
+ * are only written when an error is logged, before it, so the context of the error can be seen without logging
+ * everything.
+ */
+open class AsyncLogTree(
+        capacity: Int = 1024,
+        private val historySize: Int = 64,
+        private val writeLevel: Int = Log.VERBOSE,
+        private val defaultTag: String = "AzureCore"
+) : Timber.Tree() {
+
+    private class Entry(val priority: Int, val tag: String, val message: String)
+
+    //region Ring buffer
+
+    // a bounded multi-producer single-consumer queue: each slot's sequence tells whether it can be written
+    // (sequence == position) or read (sequence == position + 1) for the position being claimed
+
+    private val size = Integer.highestOneBit(Math.max(capacity, 2) - 1) shl 1
+
+    private val mask = size - 1L
+
+    private val entries = AtomicReferenceArray<Entry>(size)
+
+    private val sequences = AtomicLongArray(size).apply { for (i in 0 until size) set(i, i.toLong()) }
+
+    private val tail = AtomicLong()
+
+    // only moved by the writer thread
+    private var head = 0L
+
+    private val dropped = AtomicLong()
+
+    private fun offer(entry: Entry): Boolean {
+
+        while (true) {
+
+            val position = tail.get()
+            val index = (position and mask).toInt()
+            val available = sequences.get(index) - position
+
+            if (available == 0L) {
+
+                if (tail.compareAndSet(position, position + 1)) {
+
+                    entries.set(index, entry)
+                    sequences.set(index, position + 1)
+
+                    return true
+                }
+            } else if (available < 0) {
+                return false
+            }
+        }
+    }
+
+    private fun poll(): Entry? {
+
+        val position = head
+        val index = (position and mask).toInt()
+
+        if (sequences.get(index) != position + 1) {
+            return null
+        }
+
+        val entry = entries.get(index)
+
+        entries.set(index, null)
+        sequences.set(index, position + size)
+        head = position + 1
+
+        return entry
+    }
+
+    //endregion
+
+    //region History
+
+    private val history = arrayOfNulls<Entry>(historySize)
+
+    // the number of entries added to the history, guarded by `history`
+    private var historyCount = 0L
+
+    // the number of entries of the history already written to the system log, only used by the writer thread
+    private var writtenCount = 0L
+
+    //endregion
+
+    /**
+     * The number of logs dropped because the buffer was full.
+     */
+    val droppedCount: Long
+        get() = dropped.get()
+
+    @Volatile private var isWaiting = false
+
+    private val writer = Thread({ writeLogs() }, "AzureLogWriter").apply {
+        isDaemon = true
+        start()
+    }
+
+    override fun log(priority: Int, tag: String?, message: String, t: Throwable?) {
+
+        if (!offer(Entry(priority, tag ?: defaultTag, message))) {
+            dropped.incrementAndGet()
+            return
+        }
+
+        if (isWaiting) {
+            LockSupport.unpark(writer)
+        }
+    }
+
+    /**
+     * Writes the last `count` logs kept in the history to the system log, whatever their level, on the calling thread.
+     */
+    fun dump(count: Int = historySize) {
+
+        recentLogs(count).forEach { write(it.priority, it.tag, it.message) }
+    }
+
+    private fun recentLogs(count: Int): List<Entry> = synchronized(history) {
+
+        val first = Math.max(historyCount - Math.min(count, historySize), 0)
+
+        (first until historyCount).map { history[(it % historySize).toInt()]!! }
+    }
+
+    /**
+     * Writes a log to the system log.
+     */
+    protected open fun write(priority: Int, tag: String, message: String) {
+
+        // as Timber.DebugTree, split the long messages as Logcat truncates them
+        var start = 0
+
+        while (start < message.length) {
+
+            val end = Math.min(start + maxLogLength, message.length)
+
+            Log.println(priority, tag, message.substring(start, end))
+
+            start = end
+        }
+    }
+
+    private fun writeLogs() {
+
+        while (true) {
+
+            var entry = poll()
+
+            if (entry == null) {
+
+                isWaiting = true
+
+                // check again now the loggers can see the writer is waiting, in case they added a log before
+                entry = poll()
+
+                if (entry == null) {
+                    LockSupport.parkNanos(this, TimeUnit.SECONDS.toNanos(1))
+                }
+
+                isWaiting = false
+            }
+
+            entry?.let { handle(it) }
+        }
+    }
+
+    private fun handle(entry: Entry) {
+
+        if (historySize > 0) {
+
+            synchronized(history) {
+                history[(historyCount % historySize).toInt()] = entry
+                historyCount++
+            }
+        }
+
+        try {
+            if (entry.priority >= Log.ERROR) {
+
+                // write the context that wasn't written yet, then the error itself
+                recentLogs(Math.min(historyCount - writtenCount, historySize.toLong()).toInt())
+                        .dropLast(1)
+                        .filter { it.priority < writeLevel }
+                        .forEach { write(it.priority, it.tag, it.message) }
+
+                write(entry.priority, entry.tag, entry.message)
+                writtenCount = historyCount
+            } else if (entry.priority >= writeLevel) {
+                write(entry.priority, entry.tag, entry.message)
+            }
+        } catch (ex: Exception) {
+            // there's nowhere left to report it
+        }
+    }
+
+    companion object {
+
+        private const val maxLogLength = 4000
+    }
+}
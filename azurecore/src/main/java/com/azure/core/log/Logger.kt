@@ -10,12 +10,18 @@ package com.azure.core.log
 import android.util.Log
 import com.azure.core.http.HttpHeader
 import okhttp3.OkHttpClient
-import okhttp3.logging.HttpLoggingInterceptor
 import timber.log.Timber
 
 @PublishedApi internal val defaultLogLevel = Log.VERBOSE
 @PublishedApi internal val defaultLogTree  = Timber.DebugTree()
 
+private val asyncLogTreeDelegate = lazy { AsyncLogTree() }
+
+/**
+ * The tree logging on a background thread when logging was started with `async`
+ */
+val asyncLogTree by asyncLogTreeDelegate
+
 inline fun v(message: () -> String)                 = log(Log.VERBOSE) { Timber.v(message()) }
 inline fun v(t: Throwable)                          = log(Log.VERBOSE) { Timber.v(t) }
 inline fun v(t: Throwable, message: () -> String)   = log(Log.VERBOSE) { Timber.v(t, message()) }
@@ -59,6 +65,32 @@ fun startLogging(level: Int = defaultLogLevel) {
     startLogging()
 }
 
+/**
+ * Start logging at this new log level, writing to the system log on the calling thread,
+ * or on a background thread through `asyncLogTree` if `async` is true.
+ */
+fun startLogging(level: Int = defaultLogLevel, async: Boolean) {
+
+    if (!async) {
+
+        if (asyncLogTreeDelegate.isInitialized() && Timber.forest().contains(asyncLogTree)) {
+            Timber.uproot(asyncLogTree)
+        }
+
+        return startLogging(level)
+    }
+
+    logLevel = level
+
+    if (Timber.forest().contains(defaultLogTree)) {
+        Timber.uproot(defaultLogTree)
+    }
+
+    if (!Timber.forest().contains(asyncLogTree)) {
+        Timber.plant(asyncLogTree)
+    }
+}
+
 /**
  * Stop logging.
  */
@@ -69,28 +101,35 @@ fun stopLogging() {
     if (Timber.forest().contains(defaultLogTree)) {
         Timber.uproot(defaultLogTree)
     }
+
+    if (asyncLogTreeDelegate.isInitialized() && Timber.forest().contains(asyncLogTree)) {
+        Timber.uproot(asyncLogTree)
+    }
 }
 
 /**
- *
+ * Logs the requests made with clients built from `okHttpBuilder` when the log level is `DEBUG` or lower,
+ * sampled at `networkLogSampleRate` and with bodies cut to `networkLogMaxBodySize` bytes.
  */
 fun configureNetworkLogging(okHttpBuilder: OkHttpClient.Builder) {
 
     if (logLevel <= Log.DEBUG) {
 
-        val okHttpLogger = HttpLoggingInterceptor(object : HttpLoggingInterceptor.Logger {
-
-            override fun log(message: String) = d { message }
-        })
-
-        okHttpLogger.level = HttpLoggingInterceptor.Level.BODY
         // don't log the auth token header
-        okHttpLogger.redactHeader(HttpHeader.Authorization.value)
-
-        okHttpBuilder.addInterceptor(okHttpLogger)
+        okHttpBuilder.addInterceptor(NetworkLoggingInterceptor(networkLogSampleRate, networkLogMaxBodySize, setOf(HttpHeader.Authorization.value)))
     }
 }
 
+/**
+ * The share of requests (between 0 and 1) logged by `configureNetworkLogging`. Failed requests are always logged.
+ */
+var networkLogSampleRate = 1.0
+
+/**
+ * The number of bytes of the request and response bodies logged by `configureNetworkLogging`.
+ */
+var networkLogMaxBodySize = 4096L
+
 /**
  * The current log level. Logs at this level or higher will be sent to the system log
  */
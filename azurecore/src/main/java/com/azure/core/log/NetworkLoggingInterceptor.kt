@@ -0,0 +1,129 @@
+package com.azure.core.log
+
+/**
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+import com.azure.core.http.HttpHeader
+import okhttp3.Headers
+import okhttp3.Interceptor
+import okhttp3.MediaType
+import okhttp3.Response
+import okio.Buffer
+import java.util.*
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+
+/**
+ * Logs a sample of the requests (`sampleRate` of them, and every failed one) with their headers and the first
+ * `maxBodySize` bytes of their text bodies, in one entry per call, logged on a background thread.
+ *
+ * Unlike logging whole bodies, it doesn't buffer the responses: at most `maxBodySize` bytes are peeked from them.
+ */
+class NetworkLoggingInterceptor(
+        private val sampleRate: Double = 1.0,
+        private val maxBodySize: Long = 4096,
+        private val redactedHeaders: Set<String> = setOf(HttpHeader.Authorization.value)
+) : Interceptor {
+
+    private val random = Random()
+
+    override fun intercept(chain: Interceptor.Chain): Response {
+
+        val request = chain.request()
+        val isSampled = sampleRate >= 1.0 || random.nextDouble() < sampleRate
+
+        val requestLog = if (isSampled) {
+
+            StringBuilder("--> ${request.method} ${request.url}\n").apply {
+
+                appendHeaders(request.headers)
+
+                request.body?.let { body ->
+                    // media uploads can be large, only bodies within a few times the limit are copied to be logged
+                    if (body.contentLength() in 0..maxBodySize * 4) {
+                        appendBody(Buffer().also { body.writeTo(it) }, body.contentLength(), body.contentType())
+                    } else {
+                        append("(${body.contentLength()}-byte body)\n")
+                    }
+                }
+            }.toString()
+        } else null
+
+        val start = System.nanoTime()
+
+        val response = try {
+            chain.proceed(request)
+        } catch (ex: Exception) {
+
+            val message = "${requestLog ?: "--> ${request.method} ${request.url}\n"}<-- HTTP FAILED: $ex"
+
+            emit(message)
+
+            throw ex
+        }
+
+        if (!isSampled && response.isSuccessful) {
+            return response
+        }
+
+        val duration = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)
+
+        val message = StringBuilder(requestLog ?: "--> ${request.method} ${request.url}\n").apply {
+
+            append("<-- ${response.code} ${response.message} ${request.url} (${duration}ms)\n")
+
+            appendHeaders(response.headers)
+
+            response.body?.let { body ->
+                appendBody(response.peekBody(maxBodySize + 1).source().buffer, body.contentLength(), body.contentType())
+            }
+        }.toString()
+
+        emit(message)
+
+        return response
+    }
+
+    private fun StringBuilder.appendHeaders(headers: Headers) {
+
+        for (i in 0 until headers.size) {
+
+            val name = headers.name(i)
+
+            append(name).append(": ").append(if (redactedHeaders.any { it.equals(name, ignoreCase = true) }) "██" else headers.value(i)).append('\n')
+        }
+    }
+
+    private fun StringBuilder.appendBody(buffer: Buffer, contentLength: Long, contentType: MediaType?) {
+
+        if (!isText(contentType)) {
+            append("(${if (contentLength >= 0) "$contentLength-byte" else "binary"} body)\n")
+            return
+        }
+
+        val size = buffer.size
+
+        append(buffer.readString(Math.min(size, maxBodySize), contentType?.charset() ?: Charsets.UTF_8))
+
+        if (size > maxBodySize || contentLength > maxBodySize) {
+            append("… (${if (contentLength >= 0) contentLength else size} bytes, truncated)")
+        }
+
+        append('\n')
+    }
+
+    private fun isText(contentType: MediaType?) = contentType == null || contentType.type == "text" || contentType.subtype.contains("json")
+
+    // the entry is built on the calling thread, written to the log on the background one
+    private fun emit(message: String) = executor.execute { d { message } }
+
+    companion object {
+
+        private val executor: ExecutorService = Executors.newSingleThreadExecutor { runnable ->
+            Thread(runnable, "AzureNetworkLogging").apply { isDaemon = true }
+        }
+    }
+}
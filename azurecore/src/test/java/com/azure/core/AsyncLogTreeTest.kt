@@ -0,0 +1,86 @@
+package com.azure.core
+
+import android.util.Log
+import com.azure.core.log.AsyncLogTree
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.CopyOnWriteArrayList
+
+class AsyncLogTreeTest {
+
+    class ListTree(capacity: Int = 16, historySize: Int = 8, writeLevel: Int = Log.VERBOSE) : AsyncLogTree(capacity, historySize, writeLevel) {
+
+        val written = CopyOnWriteArrayList<String>()
+        val writerThreads = CopyOnWriteArrayList<Thread>()
+
+        var gate = CountDownLatch(0)
+
+        override fun write(priority: Int, tag: String, message: String) {
+
+            gate.await()
+
+            writerThreads.add(Thread.currentThread())
+            written.add(message)
+        }
+
+        fun awaitWritten(count: Int): List<String> {
+
+            val deadline = System.currentTimeMillis() + 5000
+
+            while (written.size < count && System.currentTimeMillis() < deadline) {
+                Thread.sleep(5)
+            }
+
+            return written.toList()
+        }
+    }
+
+    @Test fun logs_are_written_in_order_on_the_writer_thread() {
+
+        val tree = ListTree()
+
+        tree.log(Log.INFO, "one")
+        tree.log(Log.WARN, "two")
+        tree.log(Log.INFO, "three")
+
+        assertEquals(listOf("one", "two", "three"), tree.awaitWritten(3))
+        assertTrue(tree.writerThreads.none { it == Thread.currentThread() })
+    }
+
+    @Test fun context_below_the_write_level_is_only_written_before_errors() {
+
+        val tree = ListTree(writeLevel = Log.INFO)
+
+        tree.log(Log.DEBUG, "context 1")
+        tree.log(Log.INFO, "info")
+        tree.log(Log.DEBUG, "context 2")
+        tree.log(Log.ERROR, "error")
+        tree.log(Log.DEBUG, "context 3")
+        tree.log(Log.INFO, "done")
+
+        assertEquals(listOf("info", "context 1", "context 2", "error", "done"), tree.awaitWritten(5))
+    }
+
+    @Test fun logs_are_dropped_when_the_buffer_is_full() {
+
+        val tree = ListTree(capacity = 4)
+
+        tree.gate = CountDownLatch(1)
+
+        // the first log blocks the writer, the next four fill the buffer
+        tree.log(Log.INFO, "0")
+        Thread.sleep(100)
+
+        for (i in 1..6) {
+            tree.log(Log.INFO, i.toString())
+        }
+
+        assertEquals(2, tree.droppedCount)
+
+        tree.gate.countDown()
+
+        assertEquals(listOf("0", "1", "2", "3", "4"), tree.awaitWritten(5))
+    }
+}
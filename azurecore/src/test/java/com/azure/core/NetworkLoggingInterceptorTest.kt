@@ -0,0 +1,154 @@
+package com.azure.core
+
+import com.azure.core.log.NetworkLoggingInterceptor
+import com.azure.core.log.startLogging
+import com.azure.core.log.stopLogging
+import okhttp3.MediaType.Companion.toMediaType
+import okhttp3.OkHttpClient
+import okhttp3.Protocol
+import okhttp3.Request
+import okhttp3.RequestBody.Companion.toRequestBody
+import okhttp3.Response
+import okhttp3.ResponseBody.Companion.toResponseBody
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Test
+import java.io.IOException
+
+class NetworkLoggingInterceptorTest {
+
+    private val tree = LogTest.ArrayTree()
+
+    private val json = "application/json".toMediaType()
+
+    @Before
+    fun before() {
+
+        startLogging(tree)
+    }
+
+    @After
+    fun after() {
+
+        stopLogging(tree)
+    }
+
+    // the interceptor, followed by one answering locally with `code` and `body`
+    private fun client(interceptor: NetworkLoggingInterceptor, code: Int = 200, body: String = "{}") = OkHttpClient.Builder()
+            .addInterceptor(interceptor)
+            .addInterceptor { chain ->
+
+                if (code == 0) {
+                    throw IOException("unreachable")
+                }
+
+                Response.Builder()
+                        .request(chain.request())
+                        .protocol(Protocol.HTTP_1_1)
+                        .code(code)
+                        .message(if (code == 200) "OK" else "Error")
+                        .body(body.toResponseBody(json))
+                        .build()
+            }
+            .build()
+
+    private fun request(body: String? = null) = Request.Builder()
+            .url("https://account.documents.azure.com/dbs/db/colls/coll/docs")
+            .header("Authorization", "type%3Dmaster%26sig%3Dsecret")
+            .header("x-ms-version", "2018-12-31")
+            .apply { body?.let { post(it.toRequestBody(json)) } }
+            .build()
+
+    private fun send(client: OkHttpClient, request: Request = request()) {
+
+        try {
+            client.newCall(request).execute().use { it.body?.string() }
+        } catch (e: IOException) {
+            // logged
+        }
+    }
+
+    // the entries are logged on a background thread
+    private fun awaitLog(count: Int): List<String> {
+
+        val deadline = System.currentTimeMillis() + 5000
+
+        while (tree.log.size < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10)
+        }
+
+        return tree.log.map { it.message }
+    }
+
+    @Test
+    fun logsTheRequestAndResponse() {
+
+        send(client(NetworkLoggingInterceptor(), body = "{\"id\":\"doc\"}"), request("{\"id\":\"new\"}"))
+
+        val message = awaitLog(1).single()
+
+        assertTrue(message.startsWith("--> POST https://account.documents.azure.com/dbs/db/colls/coll/docs\n"))
+        assertTrue(message.contains("x-ms-version: 2018-12-31\n"))
+        assertTrue(message.contains("{\"id\":\"new\"}\n"))
+        assertTrue(message.contains("<-- 200 OK https://account.documents.azure.com/dbs/db/colls/coll/docs"))
+        assertTrue(message.contains("{\"id\":\"doc\"}\n"))
+    }
+
+    @Test
+    fun redactsTheAuthorizationHeader() {
+
+        send(client(NetworkLoggingInterceptor()))
+
+        val message = awaitLog(1).single()
+
+        assertTrue(message.contains("Authorization: ██\n"))
+        assertFalse(message.contains("secret"))
+    }
+
+    @Test
+    fun truncatesBodiesAtMaxBodySize() {
+
+        val body = "{\"id\":\"${"a".repeat(40)}\"}"
+
+        send(client(NetworkLoggingInterceptor(maxBodySize = 16), body = body), request(body))
+
+        val message = awaitLog(1).single()
+
+        // the request's, then the response's
+        assertEquals(2, message.split("${body.take(16)}… (${body.length} bytes, truncated)\n").size - 1)
+        assertFalse(message.contains(body))
+    }
+
+    @Test
+    fun onlyLogsASampleOfSuccessfulCalls() {
+
+        val interceptor = NetworkLoggingInterceptor(sampleRate = 0.0)
+
+        repeat(10) { send(client(interceptor)) }
+
+        // failures are always logged, after the calls before them would have been
+        send(client(interceptor, code = 500))
+
+        val messages = awaitLog(1)
+
+        assertEquals(1, messages.size)
+        assertTrue(messages[0].contains("<-- 500 Error"))
+    }
+
+    @Test
+    fun alwaysLogsCallsThatThrow() {
+
+        send(client(NetworkLoggingInterceptor(sampleRate = 0.0), code = 0))
+
+        val message = awaitLog(1).single()
+
+        assertTrue(message.startsWith("--> GET https://account.documents.azure.com/dbs/db/colls/coll/docs\n"))
+        assertTrue(message.contains("<-- HTTP FAILED: java.io.IOException: unreachable"))
+
+        // unsampled calls don't log their headers
+        assertFalse(message.contains("Authorization"))
+    }
+}
@@ -0,0 +1,50 @@
+package com.azure.data.benchmark
+
+import com.azure.data.integration.common.CustomDocument
+import com.azure.data.integration.common.PartitionedCustomDocment
+import com.azure.data.model.ResourceList
+import com.azure.data.util.json.gson
+import com.azure.data.util.json.gsonBuilder
+
+/**
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+// documents as returned by the service, with the system properties set
+internal object BenchmarkData {
+
+    const val databaseId = "BenchmarkDatabase"
+    const val collectionId = "BenchmarkCollection"
+
+    private const val databaseRid = "dbRid=="
+    private const val collectionRid = "dbRid+collRid="
+
+    init {
+
+        gson = gsonBuilder.create()
+    }
+
+    fun document(index: Int): CustomDocument = PartitionedCustomDocment("Document$index").apply {
+
+        val rid = "$collectionRid${index.toString().padStart(8, '0')}=="
+
+        resourceId = rid
+        selfLink = "dbs/$databaseRid/colls/$collectionRid/docs/$rid/"
+        altLink = "dbs/$databaseId/colls/$collectionId/docs/$id"
+        etag = "\"00000000-0000-0000-0000-${index.toString().padStart(12, '0')}\""
+        attachmentsLink = "attachments/"
+        customNumber = index
+    }
+
+    fun documents(count: Int): ResourceList<CustomDocument> = ResourceList<CustomDocument>().apply {
+
+        resourceId = collectionRid
+        items = (0 until count).map { document(it) }
+        this.count = count
+    }
+
+    fun documentJson(index: Int): String = gson.toJson(document(index))
+
+    fun documentsJson(count: Int): String = gson.toJson(documents(count))
+}
@@ -0,0 +1,103 @@
+package com.azure.data.benchmark
+
+import androidx.benchmark.junit4.BenchmarkRule
+import androidx.benchmark.junit4.measureRepeated
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import com.azure.core.crypto.CryptoProvider
+import com.azure.core.http.HttpMethod
+import com.azure.data.model.PermissionMode
+import com.azure.data.model.Query
+import com.azure.data.model.service.RequestDetails
+import com.azure.data.model.service.ResourceLocation
+import com.azure.data.service.PartitionKeyPropertyCache
+import com.azure.data.service.ResourceTokenProvider
+import com.azure.data.util.json.gson
+import okhttp3.Headers
+import org.junit.Rule
+import org.junit.Test
+import org.junit.runner.RunWith
+
+/**
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+@RunWith(AndroidJUnit4::class)
+class RequestBenchmarks {
+
+    @get:Rule
+    val benchmarkRule = BenchmarkRule()
+
+    // a made up key, in the base64 form of the account keys
+    private val masterKey = "C2y6yDjf5/R+ob0N8A7Cgv30VRDJIWEHLM+4QDU5DE2nQ9nDuVTqobD4b8mGGyPMbIZnqyMsEcaGQy67XIw/Jw=="
+
+    private val location = ResourceLocation.Document(BenchmarkData.databaseId, BenchmarkData.collectionId, "Document0")
+
+    private val document = BenchmarkData.document(0)
+
+    @Test
+    fun getCachedToken() {
+
+        val tokenProvider = ResourceTokenProvider(masterKey, PermissionMode.All)
+
+        benchmarkRule.measureRepeated {
+
+            tokenProvider.getToken(location, HttpMethod.Get)
+        }
+    }
+
+    @Test
+    fun getToken() = benchmarkRule.measureRepeated {
+
+        // a new provider each time, so the token is signed rather than reused from the current second
+        val tokenProvider = runWithTimingDisabled { ResourceTokenProvider(masterKey, PermissionMode.All) }
+
+        tokenProvider.getToken(location, HttpMethod.Get)
+    }
+
+    @Test
+    fun hmacEncrypt() {
+
+        val payload = "get\ndocs\ndbs/${BenchmarkData.databaseId}/colls/${BenchmarkData.collectionId}/docs/Document0\nfri, 18 oct 2019 08:00:00 gmt\n\n"
+
+        benchmarkRule.measureRepeated {
+
+            CryptoProvider.hmacEncrypt(payload, masterKey)
+        }
+    }
+
+    @Test
+    fun buildQuery() = benchmarkRule.measureRepeated {
+
+        val query = Query.select()
+                .from("People")
+                .where("firstName", "Colby")
+                .andWhere("lastName", "Williams")
+                .andWhereGreaterThan("age", 30)
+                .orderBy("_etag", true)
+
+        gson.toJson(query.dictionary)
+    }
+
+    @Test
+    fun fillHeaders() {
+
+        val requestDetails = RequestDetails(location, "MyPartitionKey").apply {
+            method = HttpMethod.Post
+            isQuery = true
+            maxPerPage = 100
+            body = "{\"query\":\"SELECT * FROM People\",\"parameters\":[]}".toByteArray()
+        }
+
+        benchmarkRule.measureRepeated {
+
+            requestDetails.fillHeaders(Headers.Builder())
+        }
+    }
+
+    @Test
+    fun getPartitionKeyValues() = benchmarkRule.measureRepeated {
+
+        PartitionKeyPropertyCache.getPartitionKeyValues(document)
+    }
+}
@@ -0,0 +1,73 @@
+package com.azure.data.benchmark
+
+import androidx.benchmark.junit4.BenchmarkRule
+import androidx.benchmark.junit4.measureRepeated
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import androidx.test.platform.app.InstrumentationRegistry
+import com.azure.data.model.service.ResourceLocation
+import com.azure.data.util.ResourceOracle
+import org.junit.After
+import org.junit.Before
+import org.junit.Rule
+import org.junit.Test
+import org.junit.runner.RunWith
+
+/**
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+@RunWith(AndroidJUnit4::class)
+class ResourceOracleBenchmarks {
+
+    @get:Rule
+    val benchmarkRule = BenchmarkRule()
+
+    private val documents = BenchmarkData.documents(100)
+
+    private val document = documents.items[50]
+
+    private val location = ResourceLocation.Document(BenchmarkData.databaseId, BenchmarkData.collectionId, document.id)
+
+    private val oracle: ResourceOracle
+        get() = ResourceOracle.shared
+
+    @Before
+    fun setUp() {
+
+        ResourceOracle.init(InstrumentationRegistry.getInstrumentation().targetContext, "benchmark.documents.azure.com")
+
+        oracle.purge()
+        oracle.storeLinks(documents)
+    }
+
+    @After
+    fun tearDown() {
+
+        oracle.purge()
+    }
+
+    @Test
+    fun storeLinks() = benchmarkRule.measureRepeated {
+
+        oracle.storeLinks(document)
+    }
+
+    @Test
+    fun storeListLinks() = benchmarkRule.measureRepeated {
+
+        oracle.storeLinks(documents)
+    }
+
+    @Test
+    fun getFilePathForResource() = benchmarkRule.measureRepeated {
+
+        oracle.getFilePath(document)
+    }
+
+    @Test
+    fun getFilePathForLocation() = benchmarkRule.measureRepeated {
+
+        oracle.getFilePath(location)
+    }
+}
@@ -0,0 +1,64 @@
+package com.azure.data.benchmark
+
+import androidx.benchmark.junit4.BenchmarkRule
+import androidx.benchmark.junit4.measureRepeated
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import com.azure.data.integration.common.CustomDocument
+import com.azure.data.integration.common.PartitionedCustomDocment
+import com.azure.data.model.ResourceList
+import com.azure.data.util.json.ResourceListJsonDeserializer
+import com.azure.data.util.json.gson
+import com.google.gson.reflect.TypeToken
+import org.junit.Rule
+import org.junit.Test
+import org.junit.runner.RunWith
+
+/**
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+@RunWith(AndroidJUnit4::class)
+class SerializationBenchmarks {
+
+    @get:Rule
+    val benchmarkRule = BenchmarkRule()
+
+    private val document = BenchmarkData.document(0)
+    private val documentJson = BenchmarkData.documentJson(0)
+
+    private val documents = BenchmarkData.documents(100)
+    private val documentsJson = BenchmarkData.documentsJson(100)
+
+    private val documentsType = object : TypeToken<ResourceList<PartitionedCustomDocment>>() {}.type
+
+    @Test
+    fun serializeDocument() = benchmarkRule.measureRepeated {
+
+        gson.toJson(document)
+    }
+
+    @Test
+    fun deserializeDocument() = benchmarkRule.measureRepeated {
+
+        gson.fromJson(documentJson, PartitionedCustomDocment::class.java)
+    }
+
+    @Test
+    fun serializeResourceList() = benchmarkRule.measureRepeated {
+
+        gson.toJson(documents)
+    }
+
+    @Test
+    fun deserializeResourceList() = benchmarkRule.measureRepeated {
+
+        gson.fromJson<ResourceList<PartitionedCustomDocment>>(documentsJson, documentsType)
+    }
+
+    @Test
+    fun deserializeResourceListWithListDeserializer() = benchmarkRule.measureRepeated {
+
+        ResourceListJsonDeserializer<CustomDocument>().deserialize(documentsJson, PartitionedCustomDocment::class.java)
+    }
+}
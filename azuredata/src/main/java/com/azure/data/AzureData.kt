@@ -42,6 +42,8 @@ class AzureData {
             configured = true
 
             gson = configureGsonBuilder(gsonBuilder).create()
+
+            WarmUp.shared.start()
         }
 
         @JvmStatic
@@ -55,6 +57,8 @@ class AzureData {
             configured = true
 
             gson = configureGsonBuilder(gsonBuilder).create()
+
+            WarmUp.shared.start()
         }
 
         @JvmStatic
@@ -68,6 +72,8 @@ class AzureData {
             configured = true
 
             gson = configureGsonBuilder(gsonBuilder).create()
+
+            WarmUp.shared.start()
         }
 
         @JvmStatic
@@ -81,6 +87,8 @@ class AzureData {
             configured = true
 
             gson = configureGsonBuilder(gsonBuilder).create()
+
+            WarmUp.shared.start()
         }
 
         @JvmStatic
@@ -94,6 +102,8 @@ class AzureData {
             configured = true
 
             gson = configureGsonBuilder(gsonBuilder).create()
+
+            WarmUp.shared.start()
         }
 
         @JvmStatic
@@ -107,8 +117,19 @@ class AzureData {
             configured = true
 
             gson = configureGsonBuilder(gsonBuilder).create()
+
+            WarmUp.shared.start()
         }
 
+        /**
+         * Routes requests between the account's regional endpoints, the first being the write region:
+         * reads go to the region with the lowest latency and fail over to the next one when it can't be reached.
+         */
+        @JvmStatic
+        @JvmOverloads
+        fun configureRegions(endpoints: List<HttpUrl>, probeInterval: Long = 60) =
+                documentClient.configureRegions(endpoints, probeInterval)
+
         @JvmStatic
         fun reset() {
 
@@ -123,15 +144,97 @@ class AzureData {
         val isConfigured: Boolean
             get() = configured && documentClient.isConfigured
 
+        /**
+         * Whether the state persisted by the client (resource links, permissions and pending offline writes)
+         * has been loaded. It's loaded in the background after `configure`, requests made before then run
+         * against what has been loaded so far.
+         */
+        @JvmStatic
+        val isReady: Boolean
+            get() = WarmUp.shared.isReady
+
+        /**
+         * Calls `callback` once the client's persisted state has been loaded, right away if it already is.
+         */
+        @JvmStatic
+        fun onReady(callback: () -> Unit) = WarmUp.shared.onReady(callback)
+
         @JvmStatic
         var isOfflineDataEnabled: Boolean
             get() = ResourceCache.shared.isEnabled
             set(value) = { ResourceCache.shared.isEnabled = value }()
 
+        /**
+         * Encrypts the offline cache. A ResourceStreamEncryptor, such as AesGcmResourceEncryptor,
+         * encrypts the compressed entries as they're written instead of their json text.
+         */
         @JvmStatic
         var resourceEncryptor: ResourceEncryptor?
             get() = ResourceCache.shared.resourceEncryptor
             set(value) = { ResourceCache.shared.resourceEncryptor = value }()
+
+        /**
+         * How long (in seconds) cached query results are used to answer queries while offline.
+         * Set to 0 to keep them until a write to the collection invalidates them.
+         */
+        @JvmStatic
+        var queryCacheTimeToLive: Long
+            get() = ResourceCache.shared.queryResultsTimeToLive
+            set(value) = { ResourceCache.shared.queryResultsTimeToLive = value }()
+
+        /**
+         * The maximum size (in bytes) of the offline cache, the least recently used documents
+         * and query results are evicted past it. Set to 0 for no limit.
+         */
+        @JvmStatic
+        var offlineCacheMaxSize: Long
+            get() = ResourceCache.shared.maxSize
+            set(value) = { ResourceCache.shared.maxSize = value }()
+
+        /**
+         * The maximum size (in bytes) of the documents cached for a single collection. Set to 0 for no limit.
+         */
+        @JvmStatic
+        var offlineCacheMaxCollectionSize: Long
+            get() = ResourceCache.shared.maxCollectionSize
+            set(value) = { ResourceCache.shared.maxCollectionSize = value }()
+
+        /**
+         * How long (in seconds) a cached document or query result can go unused before it's evicted. Set to 0 for no limit.
+         */
+        @JvmStatic
+        var offlineCacheMaxAge: Long
+            get() = ResourceCache.shared.maxAge
+            set(value) = { ResourceCache.shared.maxAge = value }()
+
+        /**
+         * The consistency level reads are made with, when they don't set their own. It can only be the account's
+         * consistency level or a weaker one, null (the default) uses the account's.
+         * Session tokens are tracked per collection and sent back, so session consistency reads see the client's writes.
+         */
+        @JvmStatic
+        var consistencyLevel: ConsistencyLevel?
+            get() = documentClient.consistencyLevel
+            set(value) = { documentClient.consistencyLevel = value }()
+
+        /**
+         * Adds a listener notified of every operation's type, status, latency, request charge and size,
+         * e.g. a MetricsAggregator to read latency percentiles and request units spent from.
+         */
+        @JvmStatic
+        fun addMetricsListener(listener: MetricsListener) = documentClient.addMetricsListener(listener)
+
+        @JvmStatic
+        fun removeMetricsListener(listener: MetricsListener) = documentClient.removeMetricsListener(listener)
+
+        /**
+         * Hedges slow reads and queries by sending them again and using whichever response comes first,
+         * the policy keeps count of the hedges and how many of them won. Null (the default) to disable.
+         */
+        @JvmStatic
+        var hedgingPolicy: HedgingPolicy?
+            get() = documentClient.hedgingPolicy
+            set(value) = { documentClient.hedgingPolicy = value }()
         
         //region Databases
 
@@ -324,11 +427,21 @@ class AzureData {
         fun <T : Document> getDocument(documentId: String, partitionKey: String, collectionId: String, databaseId: String, documentClass: Class<T>, callback: (Response<T>) -> Unit) =
                 documentClient.getDocument(documentId, partitionKey, collectionId, databaseId, documentClass, callback)
 
+        // get, reading at `consistencyLevel` rather than the client's
+        @JvmStatic
+        fun <T : Document> getDocument(documentId: String, partitionKey: String, collectionId: String, databaseId: String, documentClass: Class<T>, consistencyLevel: ConsistencyLevel?, callback: (Response<T>) -> Unit) =
+                documentClient.getDocument(documentId, partitionKey, collectionId, databaseId, documentClass, consistencyLevel, callback)
+
         // get
         @JvmStatic
         fun <T : Document> getDocument(documentId: String, partitionKey: String, collection: DocumentCollection, documentClass: Class<T>, callback: (Response<T>) -> Unit) =
                 documentClient.getDocument(documentId, partitionKey, collection, documentClass, callback)
 
+        // get, reading at `consistencyLevel` rather than the client's
+        @JvmStatic
+        fun <T : Document> getDocument(documentId: String, partitionKey: String, collection: DocumentCollection, documentClass: Class<T>, consistencyLevel: ConsistencyLevel?, callback: (Response<T>) -> Unit) =
+                documentClient.getDocument(documentId, partitionKey, collection, documentClass, consistencyLevel, callback)
+
         // delete
         @JvmStatic
         @Deprecated("Deleting a document without a partition key is deprecated and will be removed in a future version of AzureData")
@@ -383,24 +496,44 @@ class AzureData {
         fun <T : Document> queryDocuments(collectionId: String, databaseId: String, query: Query, documentClass: Class<T>, maxPerPage: Int? = null, callback: (ListResponse<T>) -> Unit) =
                 documentClient.queryDocuments(collectionId, databaseId, query, documentClass, maxPerPage, callback)
 
+        // query, reading at `consistencyLevel` rather than the client's
+        @JvmStatic
+        fun <T : Document> queryDocuments(collectionId: String, databaseId: String, query: Query, documentClass: Class<T>, maxPerPage: Int?, consistencyLevel: ConsistencyLevel?, callback: (ListResponse<T>) -> Unit) =
+                documentClient.queryDocuments(collectionId, databaseId, query, documentClass, maxPerPage, consistencyLevel, callback)
+
         // query
         @JvmStatic
         @JvmOverloads
         fun <T : Document> queryDocuments(collectionId: String, partitionKey: String, databaseId: String, query: Query, documentClass: Class<T>, maxPerPage: Int? = null, callback: (ListResponse<T>) -> Unit) =
                 documentClient.queryDocuments(collectionId, partitionKey, databaseId, query, documentClass, maxPerPage, callback)
 
+        // query, reading at `consistencyLevel` rather than the client's
+        @JvmStatic
+        fun <T : Document> queryDocuments(collectionId: String, partitionKey: String, databaseId: String, query: Query, documentClass: Class<T>, maxPerPage: Int?, consistencyLevel: ConsistencyLevel?, callback: (ListResponse<T>) -> Unit) =
+                documentClient.queryDocuments(collectionId, partitionKey, databaseId, query, documentClass, maxPerPage, consistencyLevel, callback)
+
         // query
         @JvmStatic
         @JvmOverloads
         fun <T : Document> queryDocuments(collection: DocumentCollection, query: Query, documentClass: Class<T>, maxPerPage: Int? = null, callback: (ListResponse<T>) -> Unit) =
                 documentClient.queryDocuments(collection, query, documentClass, maxPerPage, callback)
 
+        // query, reading at `consistencyLevel` rather than the client's
+        @JvmStatic
+        fun <T : Document> queryDocuments(collection: DocumentCollection, query: Query, documentClass: Class<T>, maxPerPage: Int?, consistencyLevel: ConsistencyLevel?, callback: (ListResponse<T>) -> Unit) =
+                documentClient.queryDocuments(collection, query, documentClass, maxPerPage, consistencyLevel, callback)
+
         // query
         @JvmStatic
         @JvmOverloads
         fun <T : Document> queryDocuments(collection: DocumentCollection, partitionKey: String, query: Query, documentClass: Class<T>, maxPerPage: Int? = null, callback: (ListResponse<T>) -> Unit) =
                 documentClient.queryDocuments(collection, partitionKey, query, documentClass, maxPerPage, callback)
 
+        // query, reading at `consistencyLevel` rather than the client's
+        @JvmStatic
+        fun <T : Document> queryDocuments(collection: DocumentCollection, partitionKey: String, query: Query, documentClass: Class<T>, maxPerPage: Int?, consistencyLevel: ConsistencyLevel?, callback: (ListResponse<T>) -> Unit) =
+                documentClient.queryDocuments(collection, partitionKey, query, documentClass, maxPerPage, consistencyLevel, callback)
+
         // find
         @JvmStatic
         fun <T : Document> findDocument(documentId: String, collectionId: String, databaseId: String, documentClass: Class<T>, callback: (ListResponse<T>) -> Unit) =
@@ -0,0 +1,21 @@
+package com.azure.data.model
+
+/**
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+/**
+ * The consistency levels a read can be made with in the Azure Cosmos DB service, from strongest to weakest.
+ * A read can only use the account's consistency level or a weaker one.
+ *
+ * - Session: reads within a session see its writes, the client tracks the session with the tokens it's given.
+ */
+enum class ConsistencyLevel {
+
+    Strong,
+    BoundedStaleness,
+    Session,
+    ConsistentPrefix,
+    Eventual
+}
@@ -23,6 +23,19 @@ class Query private constructor (properties: List<String>? = null) {
 
     private var type: String? = null
 
+    // structured form of the simple property constraints, used to evaluate the query against locally cached resources
+    internal val predicates: MutableList<QueryPredicate> = mutableListOf()
+
+    internal val spatialPredicates: MutableList<SpatialPredicate> = mutableListOf()
+
+    internal var orderByProperty: String? = null
+
+    internal var orderByDescending = false
+
+    // false once the query uses a clause (projection, user function, etc.) that can't be evaluated locally
+    internal var isLocallyEvaluable = true
+        get() = field && !isSelectingProperties
+
     init {
 
         selectCalled = true
@@ -102,6 +115,7 @@ class Query private constructor (properties: List<String>? = null) {
 
         whereCalled = true
         whereFragment = if (quoteValue) "$type.$property $operator '$value'" else "$type.$property $operator $value"
+        predicates.add(QueryPredicate(property, operator, value))
 
         return this
     }
@@ -142,6 +156,7 @@ class Query private constructor (properties: List<String>? = null) {
 
         andCalled = true
         andFragments.add(if (quoteValue) "$type.$property $operator '$value'" else "$type.$property $operator $value")
+        predicates.add(QueryPredicate(property, operator, value))
 
         return this
     }
@@ -184,6 +199,12 @@ class Query private constructor (properties: List<String>? = null) {
 
         whereFragment = "ST_DISTANCE($type.$property, $spatialJson) $operator $distance"
         whereCalled = true
+        spatialPredicates.add(SpatialPredicate(property, SpatialFunction.Distance, toSpatial, operator, distance.toDouble()))
+
+        // a distance computed locally won't be exactly the service's, only the range comparisons are evaluated locally
+        if (operator == "=") {
+            isLocallyEvaluable = false
+        }
 
         return this
     }
@@ -215,6 +236,12 @@ class Query private constructor (properties: List<String>? = null) {
 
         andCalled = true
         andFragments.add("ST_DISTANCE($type.$property, $spatialJson) $operator $distance")
+        spatialPredicates.add(SpatialPredicate(property, SpatialFunction.Distance, toSpatial, operator, distance.toDouble()))
+
+        // a distance computed locally won't be exactly the service's, only the range comparisons are evaluated locally
+        if (operator == "=") {
+            isLocallyEvaluable = false
+        }
 
         return this
     }
@@ -246,6 +273,7 @@ class Query private constructor (properties: List<String>? = null) {
 
         whereFragment = "ST_INTERSECTS($type.$spatialProperty, $spatialJson)"
         whereCalled = true
+        spatialPredicates.add(SpatialPredicate(spatialProperty, SpatialFunction.Intersects, spatial))
 
         return this
     }
@@ -258,6 +286,7 @@ class Query private constructor (properties: List<String>? = null) {
 
         andCalled = true
         andFragments.add("ST_INTERSECTS($type.$spatialProperty, $spatialJson)")
+        spatialPredicates.add(SpatialPredicate(spatialProperty, SpatialFunction.Intersects, spatial))
 
         return this
     }
@@ -270,6 +299,7 @@ class Query private constructor (properties: List<String>? = null) {
 
         whereFragment = "ST_WITHIN($type.$spatialProperty, $spatialJson)"
         whereCalled = true
+        spatialPredicates.add(SpatialPredicate(spatialProperty, SpatialFunction.Within, withinSpatial))
 
         return this
     }
@@ -282,6 +312,7 @@ class Query private constructor (properties: List<String>? = null) {
 
         andCalled = true
         andFragments.add("ST_WITHIN($type.$spatialProperty, $spatialJson)")
+        spatialPredicates.add(SpatialPredicate(spatialProperty, SpatialFunction.Within, withinSpatial))
 
         return this
     }
@@ -296,6 +327,7 @@ class Query private constructor (properties: List<String>? = null) {
 
         whereCalled = true
         whereFragment = if (quoteValue) "$functionName(${propertyNameArgs.formatAsArgs()}) $operator '$value'" else "$functionName(${propertyNameArgs.formatAsArgs()}) $operator $value"
+        isLocallyEvaluable = false
 
         return this
     }
@@ -334,6 +366,7 @@ class Query private constructor (properties: List<String>? = null) {
 
         andCalled = true
         andFragments.add(if (quoteValue) "$functionName(${propertyNameArgs.formatAsArgs()}) $operator '$value'" else "$functionName(${propertyNameArgs.formatAsArgs()}) $operator $value")
+        isLocallyEvaluable = false
 
         return this
     }
@@ -369,6 +402,8 @@ class Query private constructor (properties: List<String>? = null) {
         if (orderByCalled) throw Exception("you can only call `orderBy` once, to order on an additional level use `thenBy`")
 
         orderByFragment = property
+        orderByProperty = property
+        orderByDescending = descending
 
         if (descending) {
             orderByFragment += " DESC"
@@ -412,4 +447,21 @@ class Query private constructor (properties: List<String>? = null) {
             return Query(strings.toList())
         }
     }
-}
\ No newline at end of file
+}
+
+/**
+ * A single `property operator value` constraint of a `Query`.
+ */
+internal class QueryPredicate(val property: String, val operator: String, val value: Any)
+
+internal enum class SpatialFunction {
+
+    Distance,
+    Intersects,
+    Within
+}
+
+/**
+ * A single `ST_DISTANCE`, `ST_INTERSECTS` or `ST_WITHIN` constraint of a `Query`.
+ */
+internal class SpatialPredicate(val property: String, val function: SpatialFunction, val spatial: SpatialObject, val operator: String? = null, val distance: Double? = null)
@@ -0,0 +1,31 @@
+package com.azure.data.model.service
+
+/**
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+/**
+ * Where the time of a request's network call went, in microseconds: phases the call didn't go through
+ * (e.g. dns, connect and secureConnect on a reused connection) are 0.
+ */
+class NetworkTimings(
+        // resolving the host name
+        val dns: Long,
+        // opening the connection, including the TLS handshake
+        val connect: Long,
+        // the TLS handshake
+        val secureConnect: Long,
+        // sending the request headers and body
+        val requestSent: Long,
+        // from the request being sent to the response headers being received
+        val timeToFirstByte: Long,
+        // receiving the response body
+        val download: Long,
+        // from the call leaving the dispatcher queue to the end of the response body
+        val total: Long,
+        val connectionReused: Boolean,
+        val bytesReceived: Long,
+        // the x-ms-activity-id of the response, to correlate the call with the service's logs
+        val activityId: String?
+)
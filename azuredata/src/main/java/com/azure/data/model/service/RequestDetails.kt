@@ -3,11 +3,13 @@ package com.azure.data.model.service
 import com.azure.core.http.*
 import com.azure.data.constants.HttpHeaderValue
 import com.azure.data.constants.MSHttpHeader
+import com.azure.data.model.ConsistencyLevel
 import com.azure.data.model.Resource
 import com.azure.data.model.ResourceList
 import com.azure.data.model.partition.PartitionKeyRange
 import com.azure.data.model.partition.PartitionKeyResource
 import com.azure.data.service.PartitionKeyPropertyCache
+import com.azure.data.service.SessionContainer
 import okhttp3.Headers
 import okhttp3.HttpUrl
 import okhttp3.MediaType.Companion.toMediaTypeOrNull
@@ -67,6 +69,19 @@ data class RequestDetails(val resourceLocation: ResourceLocation) {
 
     var cacheControl: String? = null
 
+    var consistencyLevel: ConsistencyLevel? = null
+
+    @Transient
+    private var responseDiagnostics: ResponseDiagnostics? = null
+
+    // when the request was last built to be sent (in milliseconds): its response reflects the resources as of then
+    @Transient
+    internal var sentAt: Long = 0
+
+    // set transient, so it's also created for the details read back from the offline write queue
+    val diagnostics: ResponseDiagnostics
+        get() = responseDiagnostics ?: ResponseDiagnostics().also { responseDiagnostics = it }
+
     fun <T : Resource> setResourcePartitionKey(resource: T) {
 
         if (resource is PartitionKeyResource && this.partitionKey.isNullOrEmpty()) {
@@ -183,13 +198,37 @@ data class RequestDetails(val resourceLocation: ResourceLocation) {
 
             headersBuilder.add(HttpHeader.CacheControl.value, it)
         }
+
+        consistencyLevel?.let {
+
+            headersBuilder.add(MSHttpHeader.MSConsistencyLevel.value, it.name)
+        }
+
+        sessionToken?.let {
+
+            headersBuilder.add(MSHttpHeader.MSSessionToken.value, it)
+        }
     }
 
+    // the collection's session token to echo (only the range's when targeting one), unless reading at another consistency level
+    internal val sessionToken: String?
+        get() = if (consistencyLevel == null || consistencyLevel == ConsistencyLevel.Session) {
+            SessionContainer.shared.getSessionToken(resourceLocation, partitionKeyRange?.items?.firstOrNull()?.id)
+        } else {
+            null
+        }
+
     fun buildRequest(url: HttpUrl, headersBuilder: Headers.Builder): Request {
 
+        partitionKeyRange?.items?.firstOrNull()?.id?.let { diagnostics.addPartitionKeyRanges(it) }
+
+        diagnostics.requestReady = System.nanoTime()
+        sentAt = System.currentTimeMillis()
+
         val builder = Request.Builder()
                 .headers(headersBuilder.build())
                 .url(url)
+                .tag(ResponseDiagnostics::class.java, diagnostics)
 
         return builder.withMethod(this.method, this.body?.toRequestBody(this.contentType.toMediaTypeOrNull())).build()
     }
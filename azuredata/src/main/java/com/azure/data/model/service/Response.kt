@@ -63,6 +63,18 @@ open class Response<T>(
      * Returns the associated value of the result if it is a success, null otherwise.
      */
     val resource: T? = result.resource
+
+    /**
+     * Where the time of the operation went, null if it didn't get to send a request.
+     */
+    val diagnostics: ResponseDiagnostics?
+        get() = (response?.request ?: request)?.tag(ResponseDiagnostics::class.java)
+
+    /**
+     * How long the phases of the network call took, null if the response didn't come from the network.
+     */
+    val networkTimings: NetworkTimings?
+        get() = diagnostics?.networkTimings
 }
 
 fun <T, U> Response<T>.map(transform: (T) -> U): Response<U> {
@@ -0,0 +1,77 @@
+package com.azure.data.model.service
+
+/**
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+/**
+ * Where the time of one operation went, from getting its token to deserializing its result, to find out why a call
+ * was slow without logging the requests. Times are in microseconds, 0 for the steps the operation didn't go through.
+ */
+class ResponseDiagnostics internal constructor() {
+
+    // getting the authorization token, from the ResourceTokenProvider or the PermissionProvider
+    var tokenAcquisition: Long = 0
+        internal set
+
+    // whether the permission came from the permission cache, null when the client uses a master key
+    var permissionCacheHit: Boolean? = null
+        internal set
+
+    // serializing the request body
+    var serialization: Long = 0
+        internal set
+
+    // from the request being ready to its call being given a connection
+    var queueWait: Long = 0
+        internal set
+
+    // the phases of the network call that got the response
+    var networkTimings: NetworkTimings? = null
+        internal set
+
+    // deserializing the response body
+    var deserialization: Long = 0
+        internal set
+
+    // how many times the request was sent again (retried in another region or with partition key ranges)
+    var retries: Int = 0
+        internal set
+
+    // the ids of the partition key ranges the request targeted or the service reported
+    val partitionKeyRanges: Set<String>
+        get() = synchronized(ranges) { ranges.toSet() }
+
+    // when the request was built, in nanoseconds
+    internal var requestReady: Long = 0
+
+    // the diagnostics of the request a hedged call was sent for, set once the call won
+    @Volatile
+    internal var winnerOf: ResponseDiagnostics? = null
+
+    private val ranges: MutableSet<String> = mutableSetOf()
+
+    internal fun recordNetwork(queueWait: Long, networkTimings: NetworkTimings) {
+
+        this.queueWait = queueWait
+        this.networkTimings = networkTimings
+
+        winnerOf?.recordNetwork(queueWait, networkTimings)
+    }
+
+    internal fun addPartitionKeyRanges(ids: String) {
+
+        synchronized(ranges) {
+            ids.split(',').map { it.trim() }.filterTo(ranges) { it.isNotEmpty() }
+        }
+    }
+
+    override fun toString(): String =
+            "token=${tokenAcquisition}us (permission cache hit: $permissionCacheHit), serialization=${serialization}us, " +
+            "queue=${queueWait}us, network=${networkTimings?.total ?: 0}us (dns=${networkTimings?.dns ?: 0}us, " +
+            "connect=${networkTimings?.connect ?: 0}us, tls=${networkTimings?.secureConnect ?: 0}us, " +
+            "ttfb=${networkTimings?.timeToFirstByte ?: 0}us, download=${networkTimings?.download ?: 0}us, " +
+            "reused=${networkTimings?.connectionReused}, activityId=${networkTimings?.activityId}), " +
+            "deserialization=${deserialization}us, retries=$retries, partitionKeyRanges=$partitionKeyRanges"
+}
@@ -0,0 +1,148 @@
+package com.azure.data.service
+
+import java.io.ByteArrayInputStream
+import java.io.FilterOutputStream
+import java.io.IOException
+import java.io.InputStream
+import java.io.OutputStream
+import java.security.SecureRandom
+import java.security.spec.AlgorithmParameterSpec
+import javax.crypto.Cipher
+import javax.crypto.KeyGenerator
+import javax.crypto.SecretKey
+import javax.crypto.spec.GCMParameterSpec
+import javax.crypto.spec.IvParameterSpec
+import javax.crypto.spec.SecretKeySpec
+
+/**
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+/**
+ * Encrypts the cache entries with AES-GCM, using `key` (16, 24 or 32 bytes) and a random nonce per entry.
+ *
+ * Each entry is written as a version byte, the nonce, then the ciphertext followed by the authentication tag.
+ * Ciphers are created once per thread and reused for every entry, so a thread must close the stream returned by `encrypt`
+ * before encrypting the next entry.
+ */
+class AesGcmResourceEncryptor(private val key: SecretKey) : ResourceStreamEncryptor {
+
+    constructor(key: ByteArray) : this(SecretKeySpec(key, algorithm))
+
+    private val ciphers = object : ThreadLocal<Cipher>() {
+        override fun initialValue(): Cipher = Cipher.getInstance(transformation)
+    }
+
+    override fun encrypt(output: OutputStream): OutputStream {
+
+        val nonce = ByteArray(nonceLength)
+
+        random.nextBytes(nonce)
+
+        val cipher = ciphers.get()!!
+
+        cipher.init(Cipher.ENCRYPT_MODE, key, parameterSpec(nonce))
+
+        output.write(version)
+        output.write(nonce)
+
+        return EncryptingOutputStream(output, cipher)
+    }
+
+    override fun decrypt(input: InputStream): InputStream {
+
+        input.use {
+
+            if (it.read() != version) {
+                throw IOException("unsupported encrypted cache entry")
+            }
+
+            val nonce = ByteArray(nonceLength)
+
+            if (it.readFully(nonce) != nonceLength) {
+                throw IOException("truncated encrypted cache entry")
+            }
+
+            val cipher = ciphers.get()!!
+
+            cipher.init(Cipher.DECRYPT_MODE, key, parameterSpec(nonce))
+
+            // the tag is at the end: nothing can be returned until the whole entry is authenticated
+            return ByteArrayInputStream(cipher.doFinal(it.readBytes()))
+        }
+    }
+
+    // CipherOutputStream swallows the exceptions of doFinal on some platforms, which would hide write failures
+    private class EncryptingOutputStream(output: OutputStream, private val cipher: Cipher) : FilterOutputStream(output) {
+
+        private var isClosed = false
+
+        override fun write(b: Int) = write(byteArrayOf(b.toByte()), 0, 1)
+
+        override fun write(b: ByteArray, off: Int, len: Int) {
+            cipher.update(b, off, len)?.let { out.write(it) }
+        }
+
+        override fun close() {
+
+            if (isClosed) {
+                return
+            }
+
+            isClosed = true
+
+            out.use { it.write(cipher.doFinal()) }
+        }
+    }
+
+    companion object {
+
+        private const val algorithm = "AES"
+
+        private const val transformation = "AES/GCM/NoPadding"
+
+        private const val version = 1
+
+        private const val nonceLength = 12
+
+        private const val tagLength = 128
+
+        private val random = SecureRandom()
+
+        // GCMParameterSpec is only available from API 19, older platforms take the nonce as an IvParameterSpec
+        private val supportsGcmParameterSpec = try {
+            Class.forName("javax.crypto.spec.GCMParameterSpec")
+            true
+        } catch (e: ClassNotFoundException) {
+            false
+        }
+
+        private fun parameterSpec(nonce: ByteArray): AlgorithmParameterSpec =
+                if (supportsGcmParameterSpec) GCMParameterSpec(tagLength, nonce) else IvParameterSpec(nonce)
+
+        private fun InputStream.readFully(buffer: ByteArray): Int {
+
+            var count = 0
+
+            while (count < buffer.size) {
+
+                val read = read(buffer, count, buffer.size - count)
+
+                if (read < 0) {
+                    break
+                }
+
+                count += read
+            }
+
+            return count
+        }
+
+        /**
+         * Generates a random 256 bit key.
+         */
+        @JvmStatic
+        fun generateKey(): SecretKey = KeyGenerator.getInstance(algorithm).apply { init(256) }.generateKey()
+    }
+}
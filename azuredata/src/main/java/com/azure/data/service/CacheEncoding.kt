@@ -0,0 +1,238 @@
+package com.azure.data.service
+
+import com.azure.data.model.Document
+import com.azure.data.model.Resource
+import com.azure.data.model.ResourceBase
+import com.azure.data.util.json.gson
+import com.google.gson.JsonElement
+import com.google.gson.stream.JsonWriter
+import java.io.ByteArrayOutputStream
+import java.io.File
+import java.io.OutputStream
+import java.io.OutputStreamWriter
+import java.io.StringWriter
+import java.util.zip.Adler32
+import java.util.zip.DataFormatException
+import java.util.zip.Deflater
+import java.util.zip.DeflaterOutputStream
+import java.util.zip.Inflater
+
+/**
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+/**
+ * The on-disk encoding of cache entries: compact JSON compressed with DEFLATE, using a preset dictionary
+ * of the strings that show up in every resource (`"_rid":"`, `"_self":"dbs/`, etc.) or a dictionary trained
+ * on the documents of a collection.
+ *
+ * Encoded entries start with a short header so entries written before the encoding existed (plain JSON text)
+ * can still be read. The dictionary used by an entry is identified by its Adler-32 checksum, which DEFLATE
+ * already records in the stream.
+ */
+internal object CacheEncoding {
+
+    // "ADZ" + format version
+    private val header = byteArrayOf(0x41, 0x44, 0x5A, 0x01)
+
+    /**
+     * The preset dictionary used for every entry that doesn't have a trained one.
+     * DEFLATE favours the end of the dictionary, so the most common strings come last.
+     */
+    val baseDictionary: ByteArray = listOf(
+            "\"attachments/\"", "\"${Document.Companion.Keys.attachmentsLinkKey}\":\"",
+            "/docs/", "/colls/", "\"${Resource.Companion.Keys.timestampKey}\":",
+            "\"${Resource.Companion.Keys.etagKey}\":\"\\\"", "-0000-0000-0000-",
+            "\"${Resource.Companion.Keys.selfLinkKey}\":\"dbs/", "\"${ResourceBase.resourceIdKey}\":\"",
+            "\"${Resource.Companion.Keys.idKey}\":\""
+    ).joinToString("").toByteArray(Charsets.UTF_8)
+
+    val baseDictionaryId: Int = idOf(baseDictionary)
+
+    fun idOf(dictionary: ByteArray): Int {
+
+        val adler = Adler32()
+
+        adler.update(dictionary)
+
+        return adler.value.toInt()
+    }
+
+    /**
+     * Returns the json without any formatting, whatever the Gson instance's pretty printing setting.
+     */
+    fun compact(json: JsonElement): String {
+
+        val writer = StringWriter()
+
+        gson.toJson(json, JsonWriter(writer))
+
+        return writer.toString()
+    }
+
+    fun isEncoded(bytes: ByteArray): Boolean =
+            bytes.size >= header.size && header.indices.all { bytes[it] == header[it] }
+
+    fun isEncoded(file: File): Boolean {
+
+        val bytes = ByteArray(header.size)
+        val count = file.inputStream().use { it.read(bytes) }
+
+        return count == header.size && isEncoded(bytes)
+    }
+
+    fun encode(json: JsonElement, dictionary: ByteArray = baseDictionary): ByteArray {
+
+        val output = ByteArrayOutputStream()
+
+        encode(json, dictionary, output)
+
+        return output.toByteArray()
+    }
+
+    /**
+     * Streams the encoded json to `output`, which is left open.
+     */
+    fun encode(json: JsonElement, dictionary: ByteArray, output: OutputStream) {
+
+        val deflater = Deflater(Deflater.BEST_SPEED)
+
+        try {
+            deflater.setDictionary(dictionary)
+
+            output.write(header)
+
+            val deflaterOutput = DeflaterOutputStream(output, deflater, 4096)
+            val writer = OutputStreamWriter(deflaterOutput, Charsets.UTF_8)
+
+            gson.toJson(json, JsonWriter(writer))
+
+            writer.flush()
+            deflaterOutput.finish()
+        } finally {
+            deflater.end()
+        }
+    }
+
+    /**
+     * Returns the text of an entry, whether it's encoded or was written as plain text before the encoding existed.
+     */
+    fun decodeToString(bytes: ByteArray, dictionaryWithId: (Int) -> ByteArray? = { null }): String =
+            String(if (isEncoded(bytes)) decode(bytes, dictionaryWithId) else bytes, Charsets.UTF_8)
+
+    /**
+     * Decodes an encoded entry, `dictionaryWithId` returns the trained dictionaries the entry may have been encoded with.
+     */
+    fun decode(bytes: ByteArray, dictionaryWithId: (Int) -> ByteArray? = { null }): ByteArray {
+
+        val inflater = Inflater()
+
+        try {
+            inflater.setInput(bytes, header.size, bytes.size - header.size)
+
+            val output = ByteArrayOutputStream(bytes.size * 4)
+            val buffer = ByteArray(4096)
+
+            while (!inflater.finished()) {
+
+                val count = inflater.inflate(buffer)
+
+                if (count == 0) {
+
+                    when {
+                        inflater.needsDictionary() -> {
+
+                            val id = inflater.adler
+                            val dictionary = (if (id == baseDictionaryId) baseDictionary else dictionaryWithId(id))
+                                    ?: throw DataFormatException("missing cache dictionary ${Integer.toHexString(id)}")
+
+                            inflater.setDictionary(dictionary)
+                        }
+                        inflater.needsInput() -> throw DataFormatException("truncated cache entry")
+                    }
+                }
+
+                output.write(buffer, 0, count)
+            }
+
+            return output.toByteArray()
+        } finally {
+            inflater.end()
+        }
+    }
+}
+
+/**
+ * Trains a preset dictionary for the documents of a collection from the property names of the first documents cached.
+ */
+internal class DictionaryTrainer(private val sampleSize: Int = defaultSampleSize) {
+
+    private val counts: MutableMap<String, Int> = HashMap()
+
+    private var samples = 0
+
+    var isComplete = false
+        private set
+
+    /**
+     * Adds a document to the samples, returns the trained dictionary once enough documents were seen.
+     */
+    @Synchronized
+    fun add(json: JsonElement): ByteArray? {
+
+        if (isComplete) {
+            return null
+        }
+
+        countKeys(json)
+        samples++
+
+        if (samples < sampleSize) {
+            return null
+        }
+
+        isComplete = true
+
+        return build()
+    }
+
+    private fun countKeys(json: JsonElement) {
+
+        when {
+            json.isJsonObject -> json.asJsonObject.entrySet().forEach { (key, value) ->
+
+                val fragment = "\"$key\":"
+
+                counts[fragment] = (counts[fragment] ?: 0) + 1
+                countKeys(value)
+            }
+            json.isJsonArray -> json.asJsonArray.forEach { countKeys(it) }
+        }
+    }
+
+    private fun build(): ByteArray {
+
+        // keys found in at least a quarter of the samples, least frequent first so the most frequent end up closest to the data
+        val fragments = counts.filter { it.value * 4 >= samples }.entries.sortedBy { it.value }.map { it.key }
+        val trained = StringBuilder()
+
+        for (fragment in fragments.asReversed()) {
+
+            if (trained.length + fragment.length > maxTrainedLength) {
+                break
+            }
+
+            trained.insert(0, fragment)
+        }
+
+        return trained.toString().toByteArray(Charsets.UTF_8) + CacheEncoding.baseDictionary
+    }
+
+    companion object {
+
+        const val defaultSampleSize = 32
+
+        private const val maxTrainedLength = 4096
+    }
+}
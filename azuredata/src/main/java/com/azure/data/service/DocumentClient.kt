@@ -25,6 +25,8 @@ import java.io.IOException
 import java.net.URL
 import java.text.SimpleDateFormat
 import java.util.*
+import java.util.concurrent.CopyOnWriteArrayList
+import java.util.concurrent.TimeUnit
 
 /**
  * Copyright (c) Microsoft Corporation. All rights reserved.
@@ -41,6 +43,14 @@ class DocumentClient private constructor() {
 
     private var isOffline = false
 
+    var hedgingPolicy: HedgingPolicy? = null
+
+    var consistencyLevel: ConsistencyLevel? = null
+
+    private var endpointRouter: EndpointRouter? = null
+
+    private val metricsListeners: MutableList<MetricsListener> = CopyOnWriteArrayList()
+
     var connectivityManager: NetworkConnectivityManager? = null
         set(value) {
             if (isConfigured && value != null) {
@@ -115,6 +125,10 @@ class DocumentClient private constructor() {
         ResourceOracle.init(ContextProvider.appContext, host)
         PermissionCache.init(host)
 
+        // the tokens being refreshed, and the session tokens, are the previous account's
+        PermissionRefresher.shared.clear()
+        SessionContainer.shared.clear()
+
         connectivityManager = NetworkConnectivity.manager
 
         // create client and configure OkHttp logging if logLevel is low enough
@@ -122,7 +136,28 @@ class DocumentClient private constructor() {
 
         configureNetworkLogging(builder)
 
+        builder.eventListenerFactory(NetworkTimingsListener.factory)
+
         client = builder.build()
+
+        endpointRouter?.stopProbing()
+        endpointRouter = null
+    }
+
+    /**
+     * Routes requests between the account's regional endpoints, the first being the write region: reads go to
+     * the region with the lowest latency, probed every `probeInterval` seconds, and fail over to the next
+     * region when one can't be reached. An empty list routes everything to the configured account again.
+     */
+    fun configureRegions(endpoints: List<HttpUrl>, probeInterval: Long = 60) {
+
+        if (!isConfigured) {
+            throw DocumentClientError.ConfigureError
+        }
+
+        endpointRouter?.stopProbing()
+
+        endpointRouter = if (endpoints.isNotEmpty()) EndpointRouter(endpoints, probeInterval).also { it.startProbing(client) } else null
     }
 
     fun reset() {
@@ -130,6 +165,42 @@ class DocumentClient private constructor() {
         host = null
         permissionProvider = null
         resourceTokenProvider = null
+
+        endpointRouter?.stopProbing()
+        endpointRouter = null
+
+        PermissionRefresher.shared.clear()
+        SessionContainer.shared.clear()
+    }
+
+    //endregion
+
+    //region Metrics
+
+    fun addMetricsListener(listener: MetricsListener) = metricsListeners.add(listener)
+
+    fun removeMetricsListener(listener: MetricsListener) = metricsListeners.remove(listener)
+
+    // reports the operation to the metrics listeners when it completes
+    private fun <R : Response<*>> measured(requestDetails: RequestDetails, callback: (R) -> Unit): (R) -> Unit {
+
+        if (metricsListeners.isEmpty()) {
+            return callback
+        }
+
+        val start = System.nanoTime()
+
+        return { response ->
+
+            safeExecute {
+
+                val metrics = OperationMetrics.from(requestDetails, response, TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start))
+
+                metricsListeners.forEach { it.onOperation(metrics) }
+            }
+
+            callback(response)
+        }
     }
 
     //endregion
@@ -329,19 +400,29 @@ class DocumentClient private constructor() {
     }
 
     // get
-    fun <T : Document> getDocument(documentId: String, partitionKey: String?, collectionId: String, databaseId: String, documentClass: Class<T>, callback: (Response<T>) -> Unit) {
+    fun <T : Document> getDocument(documentId: String, partitionKey: String?, collectionId: String, databaseId: String, documentClass: Class<T>, callback: (Response<T>) -> Unit) =
+            getDocument(documentId, partitionKey, collectionId, databaseId, documentClass, null, callback)
+
+    // get, reading at `consistencyLevel` rather than the client's
+    fun <T : Document> getDocument(documentId: String, partitionKey: String?, collectionId: String, databaseId: String, documentClass: Class<T>, consistencyLevel: ConsistencyLevel?, callback: (Response<T>) -> Unit) {
 
         val requestDetails = RequestDetails(ResourceLocation.Document(databaseId, collectionId, documentId), partitionKey)
         requestDetails.resourceType = documentClass // send the specific doc type here
+        requestDetails.consistencyLevel = consistencyLevel
 
         return resource(requestDetails, callback)
     }
 
     // get
-    fun <T : Document> getDocument(documentId: String, partitionKey: String?, collection: DocumentCollection, documentClass: Class<T>, callback: (Response<T>) -> Unit) {
+    fun <T : Document> getDocument(documentId: String, partitionKey: String?, collection: DocumentCollection, documentClass: Class<T>, callback: (Response<T>) -> Unit) =
+            getDocument(documentId, partitionKey, collection, documentClass, null, callback)
+
+    // get, reading at `consistencyLevel` rather than the client's
+    fun <T : Document> getDocument(documentId: String, partitionKey: String?, collection: DocumentCollection, documentClass: Class<T>, consistencyLevel: ConsistencyLevel?, callback: (Response<T>) -> Unit) {
 
         val requestDetails = RequestDetails(ResourceLocation.Child(ResourceType.Document, collection, documentId), partitionKey)
         requestDetails.resourceType = documentClass // send the specific doc type here
+        requestDetails.consistencyLevel = consistencyLevel
 
         return resource(requestDetails, callback)
     }
@@ -416,41 +497,61 @@ class DocumentClient private constructor() {
     }
 
     // query
-    fun <T : Document> queryDocuments(collectionId: String, databaseId: String, query: Query, documentClass: Class<T>, maxPerPage: Int? = null, callback: (ListResponse<T>) -> Unit) {
+    fun <T : Document> queryDocuments(collectionId: String, databaseId: String, query: Query, documentClass: Class<T>, maxPerPage: Int? = null, callback: (ListResponse<T>) -> Unit) =
+            queryDocuments(collectionId, databaseId, query, documentClass, maxPerPage, null, callback)
+
+    // query, reading at `consistencyLevel` rather than the client's
+    fun <T : Document> queryDocuments(collectionId: String, databaseId: String, query: Query, documentClass: Class<T>, maxPerPage: Int?, consistencyLevel: ConsistencyLevel?, callback: (ListResponse<T>) -> Unit) {
 
         val requestDetails = RequestDetails(ResourceLocation.Document(databaseId, collectionId))
         requestDetails.maxPerPage = maxPerPage
         requestDetails.resourceType = documentClass
+        requestDetails.consistencyLevel = consistencyLevel
 
         return query(query, requestDetails, callback)
     }
 
     // query
-    fun <T : Document> queryDocuments(collectionId: String, partitionKey: String, databaseId: String, query: Query, documentClass: Class<T>, maxPerPage: Int? = null, callback: (ListResponse<T>) -> Unit) {
+    fun <T : Document> queryDocuments(collectionId: String, partitionKey: String, databaseId: String, query: Query, documentClass: Class<T>, maxPerPage: Int? = null, callback: (ListResponse<T>) -> Unit) =
+            queryDocuments(collectionId, partitionKey, databaseId, query, documentClass, maxPerPage, null, callback)
+
+    // query, reading at `consistencyLevel` rather than the client's
+    fun <T : Document> queryDocuments(collectionId: String, partitionKey: String, databaseId: String, query: Query, documentClass: Class<T>, maxPerPage: Int?, consistencyLevel: ConsistencyLevel?, callback: (ListResponse<T>) -> Unit) {
 
         val requestDetails = RequestDetails(ResourceLocation.Document(databaseId, collectionId), partitionKey)
         requestDetails.maxPerPage = maxPerPage
         requestDetails.resourceType = documentClass
+        requestDetails.consistencyLevel = consistencyLevel
 
         return query(query, requestDetails, callback)
     }
 
     // query
-    fun <T : Document> queryDocuments(collection: DocumentCollection, query: Query, documentClass: Class<T>, maxPerPage: Int? = null, callback: (ListResponse<T>) -> Unit) {
+    fun <T : Document> queryDocuments(collection: DocumentCollection, query: Query, documentClass: Class<T>, maxPerPage: Int? = null, callback: (ListResponse<T>) -> Unit) =
+            queryDocuments(collection, query, documentClass, maxPerPage, null, callback)
+
+    // query, reading at `consistencyLevel` rather than the client's
+    fun <T : Document> queryDocuments(collection: DocumentCollection, query: Query, documentClass: Class<T>, maxPerPage: Int?, consistencyLevel: ConsistencyLevel?, callback: (ListResponse<T>) -> Unit) {
 
         val requestDetails = RequestDetails(ResourceLocation.Child(ResourceType.Document, collection))
         requestDetails.maxPerPage = maxPerPage
         requestDetails.resourceType = documentClass
+        requestDetails.consistencyLevel = consistencyLevel
 
         return query(query, requestDetails, callback)
     }
 
     // query
-    fun <T : Document> queryDocuments(collection: DocumentCollection, partitionKey: String, query: Query, documentClass: Class<T>, maxPerPage: Int? = null, callback: (ListResponse<T>) -> Unit) {
+    fun <T : Document> queryDocuments(collection: DocumentCollection, partitionKey: String, query: Query, documentClass: Class<T>, maxPerPage: Int? = null, callback: (ListResponse<T>) -> Unit) =
+            queryDocuments(collection, partitionKey, query, documentClass, maxPerPage, null, callback)
+
+    // query, reading at `consistencyLevel` rather than the client's
+    fun <T : Document> queryDocuments(collection: DocumentCollection, partitionKey: String, query: Query, documentClass: Class<T>, maxPerPage: Int?, consistencyLevel: ConsistencyLevel?, callback: (ListResponse<T>) -> Unit) {
 
         val requestDetails = RequestDetails(ResourceLocation.Child(ResourceType.Document, collection), partitionKey)
         requestDetails.maxPerPage = maxPerPage
         requestDetails.resourceType = documentClass
+        requestDetails.consistencyLevel = consistencyLevel
 
         return query(query, requestDetails, callback)
     }
@@ -622,6 +723,9 @@ class DocumentClient private constructor() {
         requestDetails.slug = attachment.id
         requestDetails.body = media
 
+        @Suppress("NAME_SHADOWING")
+        val callback = measured(requestDetails, callback)
+
         try {
             createRequest(requestDetails) { request ->
 
@@ -1075,20 +1179,29 @@ class DocumentClient private constructor() {
 
         requestDetails.method = HttpMethod.Get
 
-        createRequest(requestDetails) { request ->
+        // identical reads in flight share the call and its result
+        listReads.execute(readKey(requestDetails), { completion ->
 
-            sendResourceListRequest<T>(
-                    request,
-                    requestDetails,
-                    callback = { response ->
-                        processResourceListResponse(
-                                requestDetails,
-                                response,
-                                callback
-                        )
-                    }
-            )
-        }
+            val done = measured(requestDetails, completion)
+
+            createRequest(requestDetails) { request ->
+
+                sendResourceListRequest<T>(
+                        request,
+                        requestDetails,
+                        callback = { response ->
+                            processResourceListResponse(
+                                    requestDetails,
+                                    response,
+                                    done
+                            )
+                        }
+                )
+            }
+        }, {
+            @Suppress("UNCHECKED_CAST")
+            callback(it as ListResponse<T>)
+        })
     }
 
     // get
@@ -1096,20 +1209,40 @@ class DocumentClient private constructor() {
 
         requestDetails.method = HttpMethod.Get
 
-        createRequest(requestDetails) { request ->
+        // identical reads in flight share the call and its result
+        reads.execute(readKey(requestDetails), { completion ->
 
-            sendResourceRequest<T>(
-                    request,
-                    requestDetails,
-                    callback = { response ->
-                        processResourceGetResponse(
-                                requestDetails,
-                                response,
-                                callback
-                        )
-                    }
-            )
-        }
+            val done = measured(requestDetails, completion)
+
+            createRequest(requestDetails) { request ->
+
+                sendResourceRequest<T>(
+                        request,
+                        requestDetails,
+                        callback = { response ->
+                            processResourceGetResponse(
+                                    requestDetails,
+                                    response,
+                                    done
+                            )
+                        }
+                )
+            }
+        }, {
+            @Suppress("UNCHECKED_CAST")
+            callback(it as Response<T>)
+        })
+    }
+
+    private val reads = SingleFlight<String, Response<*>> { Response<Resource>(DataError(it)) }
+
+    private val listReads = SingleFlight<String, ListResponse<*>> { ListResponse<Resource>(DataError(it)) }
+
+    // everything a read's request is built from: the same key means the same request. The session token changes
+    // with each write to the collection, so a read made after one never joins a read sent before it
+    private fun readKey(requestDetails: RequestDetails) = with(requestDetails) {
+        listOf(method, resourceLocation.path(), resourceType, partitionKey, maxPerPage, partitionKeyRange?.resourceId,
+                ifNoneMatchETag, acceptEncoding, cacheControl, consistencyLevel, sessionToken).joinToString("\n")
     }
 
     // refresh
@@ -1122,10 +1255,12 @@ class DocumentClient private constructor() {
             // if we have an eTag, we'll set & send the IfNoneMatch header
             requestDetails.ifNoneMatchETag = resource.etag
 
+            val measuredCallback = measured(requestDetails, callback)
+
             createRequest(requestDetails) { request ->
 
                 //send the request!
-                sendResourceRequest(request, requestDetails, resource, callback)
+                sendResourceRequest(request, requestDetails, resource, measuredCallback)
             }
         } catch (ex: Exception) {
             e(ex)
@@ -1136,6 +1271,9 @@ class DocumentClient private constructor() {
     // delete
     private fun delete(requestDetails: RequestDetails, callback: (DataResponse) -> Unit) {
 
+        @Suppress("NAME_SHADOWING")
+        val callback = measured(requestDetails, callback)
+
         requestDetails.method = HttpMethod.Delete
 
         createRequest(requestDetails) { request ->
@@ -1181,10 +1319,13 @@ class DocumentClient private constructor() {
     // create or replace
     internal fun <T : Resource> createOrReplace(body: T, requestDetails: RequestDetails, replacing: Boolean = false, callback: (Response<T>) -> Unit) {
 
+        @Suppress("NAME_SHADOWING")
+        val callback = measured(requestDetails, callback)
+
         try {
             requestDetails.method = if (replacing) HttpMethod.Put else HttpMethod.Post
             //serialize the resource
-            requestDetails.body = gson.toJson(body).toByteArray()
+            requestDetails.body = requestDetails.timed({ serialization += it }) { gson.toJson(body).toByteArray() }
             requestDetails.resourceType = body::class.java
             //look for partition key property(ies) to send for this resource type
             requestDetails.setResourcePartitionKey(body)
@@ -1214,6 +1355,9 @@ class DocumentClient private constructor() {
     // create or replace
     private fun <T : Resource> createOrReplace(requestDetails: RequestDetails, replacing: Boolean = false, callback: (Response<T>) -> Unit) {
 
+        @Suppress("NAME_SHADOWING")
+        val callback = measured(requestDetails, callback)
+
         try {
             requestDetails.method = if (replacing) HttpMethod.Put else HttpMethod.Post
 
@@ -1230,10 +1374,13 @@ class DocumentClient private constructor() {
     // query
     private fun <T : Resource> query(query: Query, requestDetails: RequestDetails, callback: (ListResponse<T>) -> Unit) {
 
+        @Suppress("NAME_SHADOWING")
+        val callback = measured(requestDetails, callback)
+
         try {
             requestDetails.isQuery = true
             requestDetails.method = HttpMethod.Post
-            requestDetails.body = gson.toJson(query.dictionary).toByteArray()
+            requestDetails.body = requestDetails.timed({ serialization += it }) { gson.toJson(query.dictionary).toByteArray() }
 
             createRequest(requestDetails) { request ->
 
@@ -1258,6 +1405,7 @@ class DocumentClient private constructor() {
 
                                 // THEN, we can retry our request after setting the range Id header
                                 requestDetails.partitionKeyRange = pkRanges.resource
+                                requestDetails.diagnostics.retries++
 
                                 createRequest(requestDetails) { retryRequest ->
 
@@ -1298,11 +1446,15 @@ class DocumentClient private constructor() {
 
             val requestDetails = RequestDetails(resourceLocation)
             requestDetails.resourceType = resourceType
+            requestDetails.method = if (request.method == HttpMethod.Get.name.toUpperCase(Locale.ROOT)) HttpMethod.Get else HttpMethod.Post
+            requestDetails.isQuery = request.header(MSHttpHeader.MSDocumentDBIsQuery.value) != null
 
             val newRequest = request.newBuilder()
                     .header(MSHttpHeader.MSContinuation.value, continuation)
                     .build()
 
+            val measuredCallback = measured(requestDetails, callback)
+
             client.newCall(newRequest)
                     .enqueue(object : Callback {
 
@@ -1310,12 +1462,12 @@ class DocumentClient private constructor() {
                         override fun onFailure(call: Call, e: IOException) {
                             isOffline = true
                             // todo: callback with cached data instead of the callback with the error below
-                            callback(ListResponse(DataError(e)))
+                            measuredCallback(ListResponse(DataError(e)))
                         }
 
                         @Throws(IOException::class)
                         override fun onResponse(call: Call, response: okhttp3.Response) =
-                                callback(processListResponse(request, response, requestDetails))
+                                measuredCallback(processListResponse(request, response, requestDetails))
 
                     })
         } catch (ex: Exception) {
@@ -1327,9 +1479,12 @@ class DocumentClient private constructor() {
     // execute
     private fun <T> execute(requestDetails: RequestDetails, body: T? = null, callback: (DataResponse) -> Unit) {
 
+        @Suppress("NAME_SHADOWING")
+        val callback = measured(requestDetails, callback)
+
         try {
             requestDetails.method = HttpMethod.Post
-            requestDetails.body = body?.let { gson.toJson(body).toByteArray() } ?: gson.toJson(arrayOf<String>()).toByteArray()
+            requestDetails.body = requestDetails.timed({ serialization += it }) { body?.let { gson.toJson(body).toByteArray() } ?: gson.toJson(arrayOf<String>()).toByteArray() }
 
             createRequest(requestDetails) { request ->
 
@@ -1345,6 +1500,9 @@ class DocumentClient private constructor() {
     // get media bytes
     private fun getMedia(requestDetails: RequestDetails, callback: (Response<ByteArray>) -> Unit) {
 
+        @Suppress("NAME_SHADOWING")
+        val callback = measured(requestDetails, callback)
+
         requestDetails.method = HttpMethod.Get
 
         createRequest(requestDetails) { request ->
@@ -1384,6 +1542,8 @@ class DocumentClient private constructor() {
 
             return permissionProvider?.getPermission(requestDetails.resourceLocation, if (requestDetails.method.isWrite()) PermissionMode.All else PermissionMode.Read) {
 
+                requestDetails.diagnostics.permissionCacheHit = it.fromCache
+
                 if (it.isSuccessful) {
 
                     val dateString = String.format("%s %s", dateFormatter.format(Date()), "GMT")
@@ -1404,14 +1564,20 @@ class DocumentClient private constructor() {
 
     private inline fun createRequest(requestDetails: RequestDetails, crossinline callback: (Request) -> Unit) {
 
+        val tokenStart = System.nanoTime()
+
         getTokenForResource(requestDetails) {
 
+            requestDetails.diagnostics.tokenAcquisition = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - tokenStart)
+
             when {
                 it.isSuccessful -> it.resource?.let { token ->
 
-                    val url = HttpUrl.Builder()
+                    val endpoint = endpointRouter?.endpoint(requestDetails.isRead)
+
+                    val url = (endpoint?.newBuilder() ?: HttpUrl.Builder()
                             .scheme(HttpScheme.Https.toString())
-                            .host(this.host!!)
+                            .host(this.host!!))
                             .addPathSegment(requestDetails.resourceLocation.path())
                             .build()
 
@@ -1426,6 +1592,11 @@ class DocumentClient private constructor() {
                     headersBuilder.add(MSHttpHeader.MSDate.value, token.date)
                     headersBuilder.add(HttpHeader.Authorization.value, token.token)
 
+                    // reads use the client's consistency level unless they override it
+                    if (requestDetails.consistencyLevel == null && requestDetails.isRead) {
+                        requestDetails.consistencyLevel = consistencyLevel
+                    }
+
                     // fill in all extra headers defined by the request details
                     requestDetails.fillHeaders(headersBuilder)
 
@@ -1446,8 +1617,8 @@ class DocumentClient private constructor() {
     private inline fun <T : Resource> sendResourceRequest(request: Request, requestDetails: RequestDetails, resource: T?, crossinline callback: (Response<T>) -> Unit) {
 
         try {
-            client.newCall(request)
-                    .enqueue(object : Callback {
+            enqueue(request, requestDetails,
+                    object : Callback {
 
                         override fun onFailure(call: Call, e: IOException) {
                             e(e)
@@ -1515,8 +1686,8 @@ class DocumentClient private constructor() {
     private inline fun <T : Resource> sendResourceListRequest(request: Request, requestDetails: RequestDetails, crossinline callback: (ListResponse<T>) -> Unit) {
 
         try {
-            client.newCall(request)
-                    .enqueue(object : Callback {
+            enqueue(request, requestDetails,
+                    object : Callback {
 
                         // only transport errors handled here
                         override fun onFailure(call: Call, e: IOException) {
@@ -1536,8 +1707,45 @@ class DocumentClient private constructor() {
         }
     }
 
+    // reads fail over to other regions when they're configured
+    private fun enqueue(request: Request, requestDetails: RequestDetails, callback: Callback) {
+
+        val isRead = requestDetails.isRead
+
+        endpointRouter?.let {
+            return it.enqueue(request, isRead, { retry, retryCallback ->
+
+                if (retry !== request) {
+                    requestDetails.diagnostics.retries++
+                }
+
+                send(retry, isRead, retryCallback)
+            }, callback)
+        }
+
+        send(request, isRead, callback)
+    }
+
+    // reads are hedged when a hedging policy is set
+    private fun send(request: Request, isRead: Boolean, callback: Callback) {
+
+        val hedgingPolicy = this.hedgingPolicy
+
+        if (hedgingPolicy != null && isRead) {
+            return hedgingPolicy.enqueue(client, request, callback)
+        }
+
+        client.newCall(request).enqueue(callback)
+    }
+
+    // gets and queries, which can be safely sent more than once
+    private val RequestDetails.isRead: Boolean
+        get() = method.isRead() || isQuery
+
     private fun <T : Resource> processResponse(request: Request, response: okhttp3.Response, requestDetails: RequestDetails, resource: T?): Response<T> {
 
+        captureResponseHeaders(response, requestDetails.resourceLocation)
+
         try {
             val body = response.body
                     ?: return Response(DataError("Empty response body received"))
@@ -1557,7 +1765,7 @@ class DocumentClient private constructor() {
                 response.isSuccessful -> {
 
                     val type = requestDetails.resourceType ?: resource?.javaClass ?: requestDetails.resourceLocation.resourceType.type
-                    val returnedResource = gson.fromJson<T>(json, type)
+                    val returnedResource = requestDetails.timed({ deserialization = it }) { gson.fromJson<T>(json, type) }
                             ?: return Response(json.toError())
 
                     setResourceMetadata(response, returnedResource, requestDetails.resourceLocation.resourceType)
@@ -1584,6 +1792,8 @@ class DocumentClient private constructor() {
 
     private fun <T : Resource> processListResponse(request: Request, response: okhttp3.Response, requestDetails: RequestDetails): ListResponse<T> {
 
+        captureResponseHeaders(response, requestDetails.resourceLocation)
+
         return try {
             val body = response.body
                     ?: return ListResponse(DataError("Empty response body received"), request, response)
@@ -1592,7 +1802,7 @@ class DocumentClient private constructor() {
             if (response.isSuccessful) {
 
                 val type = requestDetails.resourceType ?: requestDetails.resourceLocation.resourceType.type
-                val resourceList = ResourceListJsonDeserializer<T>().deserialize(json, type)
+                val resourceList = requestDetails.timed({ deserialization = it }) { ResourceListJsonDeserializer<T>().deserialize(json, type) }
 
                 setResourceMetadata(response, resourceList, requestDetails.resourceLocation.resourceType)
 
@@ -1616,7 +1826,10 @@ class DocumentClient private constructor() {
 
                 when (replace) {
                     true -> response.resource?.let { ResourceCache.shared.replace(it) }
-                    false -> response.resource?.let { ResourceCache.shared.cache(it) }
+                    false -> response.resource?.let {
+                        ResourceCache.shared.cache(it)
+                        ResourceCache.shared.invalidateQueries(it)
+                    }
                 }
             }
 
@@ -1696,7 +1909,7 @@ class DocumentClient private constructor() {
 
                 callback(response)
 
-                response.resource?.let { ResourceCache.shared.cache(it, query, requestDetails.resourceLocation.link()) }
+                response.resource?.let { ResourceCache.shared.cache(it, query, requestDetails) }
             }
 
             response.isErrored -> {
@@ -1737,6 +1950,8 @@ class DocumentClient private constructor() {
 
     private fun processDataResponse(request: Request, resourceLocation: ResourceLocation, response: okhttp3.Response): DataResponse {
 
+        captureResponseHeaders(response, resourceLocation)
+
         try {
             val body = response.body
                     ?: return Response(DataError("Empty response body received"), request, response)
@@ -1760,6 +1975,30 @@ class DocumentClient private constructor() {
         }
     }
 
+    // the session token is sent back with the next requests to the collection, the partition key ranges go to the diagnostics
+    private fun captureResponseHeaders(response: okhttp3.Response, resourceLocation: ResourceLocation) {
+
+        response.header(MSHttpHeader.MSSessionToken.value)?.let {
+            SessionContainer.shared.setSessionToken(resourceLocation, it)
+        }
+
+        response.header(MSHttpHeader.MSDocumentDBPartitionKeyRangeId.value)?.let {
+            response.request.tag(ResponseDiagnostics::class.java)?.addPartitionKeyRanges(it)
+        }
+    }
+
+    // adds the time (in microseconds) `block` takes to the request's diagnostics
+    private inline fun <R> RequestDetails.timed(record: ResponseDiagnostics.(Long) -> Unit, block: () -> R): R {
+
+        val start = System.nanoTime()
+
+        try {
+            return block()
+        } finally {
+            diagnostics.record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start))
+        }
+    }
+
     private fun processByteResponse(request: Request, response: okhttp3.Response): Response<ByteArray> {
 
         try {
@@ -1819,7 +2058,7 @@ class DocumentClient private constructor() {
 
         val type = requestDetails.resourceType ?: requestDetails.resourceLocation.resourceType.type
 
-        return ResourceCache.shared.getResourcesForQuery<T>(query, type)?.let { resources ->
+        return ResourceCache.shared.getResourcesForQuery<T>(query, requestDetails, type)?.let { resources ->
 
             callback(ListResponse(response?.request, response?.response, response?.jsonData, Result(resources), requestDetails.resourceLocation, response?.resourceType, true))
 
@@ -0,0 +1,169 @@
+package com.azure.data.service
+
+import okhttp3.*
+import java.io.IOException
+import java.util.concurrent.Executors
+import java.util.concurrent.ScheduledExecutorService
+import java.util.concurrent.ScheduledFuture
+import java.util.concurrent.TimeUnit
+
+/**
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+/**
+ * Routes requests between an account's regional endpoints: writes go to the write region (the first endpoint),
+ * reads to the healthy region with the lowest latency.
+ *
+ * Latencies are probed in the background every `probeInterval` seconds. A region a request can't reach is
+ * skipped for `failoverTime` seconds, and the read is retried in the next region.
+ */
+internal class EndpointRouter(
+        endpoints: List<HttpUrl>,
+        private val probeInterval: Long = 60,
+        private val failoverTime: Long = 30,
+        private val clock: () -> Long = { System.currentTimeMillis() }
+) {
+
+    class Endpoint(val url: HttpUrl) {
+
+        // smoothed round trip (in milliseconds) of the probes, -1 until the first one
+        @Volatile
+        var latency: Long = -1
+
+        @Volatile
+        var unavailableUntil: Long = 0
+    }
+
+    val endpoints = endpoints.map { Endpoint(it) }
+
+    val writeEndpoint: HttpUrl
+        get() = endpoints.first().url
+
+    private var probes: ScheduledFuture<*>? = null
+
+    init {
+        require(endpoints.isNotEmpty()) { "At least one endpoint is required" }
+    }
+
+    /**
+     * The endpoint requests go to, reads to the fastest available region, skipping the ones in `excluding`.
+     */
+    fun endpoint(isRead: Boolean, excluding: Collection<HttpUrl> = emptyList()): HttpUrl? {
+
+        if (!isRead) {
+            return writeEndpoint.takeUnless { excluding.contains(it) }
+        }
+
+        val now = clock()
+        val candidates = endpoints.filter { !excluding.contains(it.url) }
+
+        // unprobed regions rank after the probed ones, in the order they were given
+        return (candidates.filter { it.unavailableUntil <= now }.ifEmpty { candidates })
+                .sortedBy { if (it.latency < 0) Long.MAX_VALUE else it.latency }
+                .firstOrNull()?.url
+    }
+
+    // a region that failed stays skipped until its failover time passes, even if a probe reaches it meanwhile
+    fun recordLatency(url: HttpUrl, latency: Long) {
+
+        find(url)?.let {
+            it.latency = if (it.latency < 0) latency else (it.latency * 3 + latency) / 4
+        }
+    }
+
+    fun markUnavailable(url: HttpUrl) {
+
+        find(url)?.unavailableUntil = clock() + TimeUnit.SECONDS.toMillis(failoverTime)
+    }
+
+    /**
+     * Sends `request` with `send`, retrying a read that fails to connect in the next available region.
+     */
+    fun enqueue(request: Request, isRead: Boolean, send: (Request, Callback) -> Unit, callback: Callback) {
+
+        send(request, object : Callback {
+
+            private val tried = mutableListOf<HttpUrl>()
+
+            override fun onResponse(call: Call, response: Response) = callback.onResponse(call, response)
+
+            override fun onFailure(call: Call, e: IOException) {
+
+                val failed = find(call.request().url)?.url
+
+                if (failed == null || call.isCanceled()) {
+                    return callback.onFailure(call, e)
+                }
+
+                markUnavailable(failed)
+                tried.add(failed)
+
+                val next = if (isRead) endpoint(true, tried) else null
+
+                if (next == null) {
+                    return callback.onFailure(call, e)
+                }
+
+                send(call.request().newBuilder().url(call.request().url.withOrigin(next)).build(), this)
+            }
+        })
+    }
+
+    /**
+     * Starts probing the endpoints' latency with `client`.
+     */
+    fun startProbing(client: OkHttpClient) {
+
+        val probeClient = client.newBuilder()
+                .connectTimeout(probeTimeout, TimeUnit.SECONDS)
+                .readTimeout(probeTimeout, TimeUnit.SECONDS)
+                .build()
+
+        synchronized(this) {
+
+            probes?.cancel(false)
+            probes = scheduler.scheduleWithFixedDelay({ endpoints.forEach { probe(probeClient, it) } }, 0, probeInterval, TimeUnit.SECONDS)
+        }
+    }
+
+    fun stopProbing() {
+
+        synchronized(this) {
+
+            probes?.cancel(false)
+            probes = null
+        }
+    }
+
+    private fun probe(client: OkHttpClient, endpoint: Endpoint) {
+
+        val start = clock()
+
+        client.newCall(Request.Builder().url(endpoint.url).head().build()).enqueue(object : Callback {
+
+            // any answer, even unauthorized, means the region is up
+            override fun onResponse(call: Call, response: Response) {
+
+                response.close()
+                recordLatency(endpoint.url, clock() - start)
+            }
+
+            override fun onFailure(call: Call, e: IOException) = markUnavailable(endpoint.url)
+        })
+    }
+
+    private fun find(url: HttpUrl) = endpoints.firstOrNull { it.url.isSameOrigin(url) }
+
+    private fun HttpUrl.isSameOrigin(other: HttpUrl) = scheme == other.scheme && host == other.host && port == other.port
+
+    private fun HttpUrl.withOrigin(origin: HttpUrl) = newBuilder().scheme(origin.scheme).host(origin.host).port(origin.port).build()
+
+    companion object {
+
+        private const val probeTimeout = 5L
+
+        private val scheduler: ScheduledExecutorService = Executors.newSingleThreadScheduledExecutor()
+    }
+}
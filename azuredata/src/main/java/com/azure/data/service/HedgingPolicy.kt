@@ -0,0 +1,231 @@
+package com.azure.data.service
+
+import com.azure.data.model.service.ResponseDiagnostics
+import okhttp3.Call
+import okhttp3.Callback
+import okhttp3.OkHttpClient
+import okhttp3.Request
+import java.io.IOException
+import java.util.*
+import java.util.concurrent.Executors
+import java.util.concurrent.ScheduledExecutorService
+import java.util.concurrent.ScheduledFuture
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+/**
+ * Hedges reads (GETs and queries): when a read hasn't completed after `delay` milliseconds, the same request is sent again
+ * and whichever completes first is used, the other being cancelled.
+ *
+ * With a `delay` of 0 the read is hedged once it's slower than the given `percentile` of the recent reads,
+ * kept between `minDelay` and `maxDelay`.
+ *
+ * The hedge is a separate call, so over HTTP/1.1 it's sent on another connection than the one the slow read is waiting on.
+ */
+class HedgingPolicy @JvmOverloads constructor(
+        val delay: Long = 0,
+        val percentile: Double = 0.95,
+        val minDelay: Long = 20,
+        val maxDelay: Long = 2000
+) {
+
+    private val latencies = LongArray(sampleSize)
+
+    private var sampleCount = 0
+
+    @Volatile
+    private var adaptiveDelay = maxDelay
+
+    private val requests = AtomicLong()
+
+    private val hedges = AtomicLong()
+
+    private val wins = AtomicLong()
+
+    /**
+     * The number of reads sent with this policy.
+     */
+    val requestCount: Long
+        get() = requests.get()
+
+    /**
+     * The number of reads that were hedged.
+     */
+    val hedgeCount: Long
+        get() = hedges.get()
+
+    /**
+     * The number of hedged reads the hedge completed first.
+     */
+    val hedgeWinCount: Long
+        get() = wins.get()
+
+    /**
+     * The part of the reads that were hedged.
+     */
+    val hedgeRate: Double
+        get() = requestCount.let { if (it > 0) hedgeCount.toDouble() / it else 0.0 }
+
+    /**
+     * How long (in milliseconds) a read is waited on before it's hedged.
+     */
+    val currentDelay: Long
+        get() = if (delay > 0) delay else adaptiveDelay
+
+    internal fun recordLatency(latency: Long) {
+
+        if (delay > 0) {
+            return
+        }
+
+        synchronized(latencies) {
+
+            latencies[sampleCount % sampleSize] = latency
+            sampleCount++
+
+            // the percentile is only worth recomputing every few reads
+            if (sampleCount >= minSamples && sampleCount % recomputeInterval == 0) {
+
+                val samples = latencies.copyOf(Math.min(sampleCount, sampleSize))
+
+                Arrays.sort(samples)
+
+                val index = Math.min(samples.size - 1, (samples.size * percentile).toInt())
+
+                adaptiveDelay = Math.max(minDelay, Math.min(maxDelay, samples[index]))
+            }
+        }
+    }
+
+    /**
+     * Sends `request` with `client`, hedging it if it's slow.
+     */
+    internal fun enqueue(client: OkHttpClient, request: Request, callback: Callback) {
+
+        requests.incrementAndGet()
+
+        HedgedCall(client, request, callback).start()
+    }
+
+    private inner class HedgedCall(private val client: OkHttpClient, private val request: Request, private val callback: Callback) {
+
+        private val start = System.currentTimeMillis()
+
+        private val calls: MutableList<Call> = mutableListOf()
+
+        private var pending = 0
+
+        private var isCompleted = false
+
+        private var hedge: ScheduledFuture<*>? = null
+
+        fun start() {
+
+            synchronized(this) {
+                hedge = scheduler.schedule({ send(true) }, currentDelay, TimeUnit.MILLISECONDS)
+            }
+
+            send(false)
+        }
+
+        private fun send(isHedge: Boolean) {
+
+            val call = synchronized(this) {
+
+                if (isCompleted) {
+                    return
+                }
+
+                if (isHedge) {
+                    hedges.incrementAndGet()
+                }
+
+                pending++
+
+                client.newCall(withOwnDiagnostics(isHedge)).also { calls.add(it) }
+            }
+
+            call.enqueue(object : Callback {
+
+                override fun onFailure(call: Call, e: IOException) {
+
+                    synchronized(this@HedgedCall) {
+
+                        pending--
+
+                        // the other call may still succeed
+                        if (isCompleted || pending > 0) {
+                            return
+                        }
+
+                        complete()
+                    }
+
+                    callback.onFailure(call, e)
+                }
+
+                override fun onResponse(call: Call, response: okhttp3.Response) {
+
+                    synchronized(this@HedgedCall) {
+
+                        pending--
+
+                        if (isCompleted) {
+                            response.close()
+                            return
+                        }
+
+                        complete()
+
+                        calls.filter { it !== call }.forEach { it.cancel() }
+
+                        // only the winner's timings go to the request's diagnostics
+                        call.request().tag(ResponseDiagnostics::class.java)?.winnerOf = request.tag(ResponseDiagnostics::class.java)
+                    }
+
+                    recordLatency(System.currentTimeMillis() - start)
+
+                    if (isHedge) {
+                        wins.incrementAndGet()
+                    }
+
+                    callback.onResponse(call, response.newBuilder().request(request).build())
+                }
+            })
+        }
+
+        // each call times itself, so the one that loses can't overwrite the timings of the one that won
+        private fun withOwnDiagnostics(isHedge: Boolean): Request {
+
+            val diagnostics = request.tag(ResponseDiagnostics::class.java) ?: return request
+
+            val own = ResponseDiagnostics().apply {
+                requestReady = if (isHedge) System.nanoTime() else diagnostics.requestReady
+            }
+
+            return request.newBuilder().tag(ResponseDiagnostics::class.java, own).build()
+        }
+
+        private fun complete() {
+
+            isCompleted = true
+            hedge?.cancel(false)
+        }
+    }
+
+    companion object {
+
+        private const val sampleSize = 128
+
+        private const val minSamples = 16
+
+        private const val recomputeInterval = 8
+
+        private val scheduler: ScheduledExecutorService = Executors.newSingleThreadScheduledExecutor()
+    }
+}
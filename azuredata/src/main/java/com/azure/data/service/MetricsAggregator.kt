@@ -0,0 +1,90 @@
+package com.azure.data.service
+
+import com.azure.data.model.service.ResourceType
+import com.azure.data.util.Histogram
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+/**
+ * Aggregates the operations per operation and resource type: a latency histogram to read percentiles from,
+ * the request units spent, bytes sent and received, errors and cache hits.
+ */
+class MetricsAggregator : MetricsListener {
+
+    class Stats {
+
+        // in microseconds, up to an hour
+        val latency = Histogram(TimeUnit.HOURS.toMicros(1))
+
+        private val errors = AtomicLong()
+
+        private val cacheHits = AtomicLong()
+
+        // in thousandths of request units
+        private val charge = AtomicLong()
+
+        private val sent = AtomicLong()
+
+        private val received = AtomicLong()
+
+        val count: Long
+            get() = latency.count
+
+        val errorCount: Long
+            get() = errors.get()
+
+        val fromCacheCount: Long
+            get() = cacheHits.get()
+
+        val requestCharge: Double
+            get() = charge.get() / 1000.0
+
+        val bytesSent: Long
+            get() = sent.get()
+
+        val bytesReceived: Long
+            get() = received.get()
+
+        internal fun record(metrics: OperationMetrics) {
+
+            latency.record(metrics.latency)
+
+            if (!metrics.isSuccessful) errors.incrementAndGet()
+            if (metrics.fromCache) cacheHits.incrementAndGet()
+
+            charge.addAndGet(Math.round(metrics.requestCharge * 1000))
+            sent.addAndGet(metrics.bytesSent)
+            received.addAndGet(metrics.bytesReceived)
+        }
+    }
+
+    private val stats = ConcurrentHashMap<String, Stats>()
+
+    override fun onOperation(metrics: OperationMetrics) {
+
+        val key = key(metrics.operationType, metrics.resourceType)
+
+        (stats[key] ?: Stats().let { stats.putIfAbsent(key, it) ?: it }).record(metrics)
+    }
+
+    /**
+     * The stats of an operation on a resource type, null if it wasn't done yet.
+     */
+    fun stats(operationType: OperationType, resourceType: ResourceType): Stats? = stats[key(operationType, resourceType)]
+
+    /**
+     * The request units spent by all operations.
+     */
+    val requestCharge: Double
+        get() = stats.values.sumByDouble { it.requestCharge }
+
+    fun reset() = stats.clear()
+
+    private fun key(operationType: OperationType, resourceType: ResourceType) = "$operationType:$resourceType"
+}
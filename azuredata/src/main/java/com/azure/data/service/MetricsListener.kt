@@ -0,0 +1,88 @@
+package com.azure.data.service
+
+import com.azure.core.http.HttpMethod
+import com.azure.data.constants.MSHttpHeader
+import com.azure.data.model.service.NetworkTimings
+import com.azure.data.model.service.RequestDetails
+import com.azure.data.model.service.ResourceType
+import com.azure.data.model.service.Response
+
+/**
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+/**
+ * Notified of every operation DocumentClient completes, on the thread completing it, before its callback is called.
+ * Listeners should return quickly: MetricsAggregator aggregates the operations for later reading.
+ */
+interface MetricsListener {
+
+    fun onOperation(metrics: OperationMetrics)
+}
+
+enum class OperationType {
+
+    Create,
+    Upsert,
+    Read,
+    ReadFeed,
+    Replace,
+    Delete,
+    Query,
+    Execute
+}
+
+class OperationMetrics(
+        val operationType: OperationType,
+        val resourceType: ResourceType,
+        // the HTTP status code, null when the request didn't get a response
+        val statusCode: Int?,
+        // from the start of the operation to its completion, in microseconds
+        val latency: Long,
+        // the request units the operation consumed
+        val requestCharge: Double,
+        val bytesSent: Long,
+        val bytesReceived: Long,
+        val fromCache: Boolean,
+        // how many times the request was sent again (retried in another region or with partition key ranges)
+        val retries: Int,
+        // the phases of the network call, and its activity id
+        val networkTimings: NetworkTimings? = null
+) {
+
+    val isSuccessful: Boolean
+        get() = statusCode != null && statusCode in 200..399
+
+    internal companion object {
+
+        // the metrics of the operation `requestDetails` describes, completed with `response` `latency` microseconds after it started
+        fun from(requestDetails: RequestDetails, response: Response<*>, latency: Long) = OperationMetrics(
+                operationType(requestDetails),
+                requestDetails.resourceLocation.resourceType,
+                response.response?.code,
+                latency,
+                response.response?.header(MSHttpHeader.MSRequestCharge.value)?.toDoubleOrNull() ?: 0.0,
+                requestDetails.body?.size?.toLong() ?: 0,
+                response.networkTimings?.bytesReceived ?: response.jsonData?.length?.toLong() ?: 0,
+                response.fromCache,
+                requestDetails.diagnostics.retries,
+                response.networkTimings
+        )
+
+        private fun operationType(requestDetails: RequestDetails) = with(requestDetails) {
+
+            when (method) {
+                HttpMethod.Get, HttpMethod.Head, HttpMethod.Options -> if (resourceLocation.id() == null) OperationType.ReadFeed else OperationType.Read
+                HttpMethod.Put -> OperationType.Replace
+                HttpMethod.Delete -> OperationType.Delete
+                HttpMethod.Post -> when {
+                    isQuery -> OperationType.Query
+                    isUpsert == true -> OperationType.Upsert
+                    resourceLocation.resourceType == ResourceType.StoredProcedure && resourceLocation.id() != null -> OperationType.Execute
+                    else -> OperationType.Create
+                }
+            }
+        }
+    }
+}
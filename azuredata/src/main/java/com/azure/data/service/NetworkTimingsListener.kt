@@ -0,0 +1,138 @@
+package com.azure.data.service
+
+import com.azure.data.constants.MSHttpHeader
+import com.azure.data.model.service.NetworkTimings
+import com.azure.data.model.service.ResponseDiagnostics
+import okhttp3.*
+import java.net.InetAddress
+import java.net.InetSocketAddress
+import java.net.Proxy
+import java.util.concurrent.TimeUnit
+
+/**
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+/**
+ * Times the phases of a call (DNS, connect, TLS, waiting for the first byte, download) and records them,
+ * once the response body is read, in the request's ResponseDiagnostics, with the time it waited to be sent.
+ */
+internal class NetworkTimingsListener private constructor(private val diagnostics: ResponseDiagnostics) : EventListener() {
+
+    private var callStart = 0L
+    // when the call started looking for a connection, after waiting for the dispatcher
+    private var dispatched = 0L
+    private var dnsStart = 0L
+    private var dnsEnd = 0L
+    private var connectStart = 0L
+    private var connectEnd = 0L
+    private var secureConnectStart = 0L
+    private var secureConnectEnd = 0L
+    private var requestStart = 0L
+    private var requestEnd = 0L
+    private var responseStart = 0L
+    private var responseBodyStart = 0L
+
+    private var activityId: String? = null
+
+    override fun callStart(call: Call) {
+        callStart = System.nanoTime()
+    }
+
+    override fun proxySelectStart(call: Call, url: HttpUrl) = markDispatched()
+
+    override fun dnsStart(call: Call, domainName: String) {
+        markDispatched()
+        dnsStart = System.nanoTime()
+    }
+
+    override fun dnsEnd(call: Call, domainName: String, inetAddressList: List<InetAddress>) {
+        dnsEnd = System.nanoTime()
+    }
+
+    override fun connectStart(call: Call, inetSocketAddress: InetSocketAddress, proxy: Proxy) {
+
+        markDispatched()
+
+        // the first of the routes tried
+        if (connectStart == 0L) {
+            connectStart = System.nanoTime()
+        }
+    }
+
+    override fun secureConnectStart(call: Call) {
+        secureConnectStart = System.nanoTime()
+    }
+
+    override fun secureConnectEnd(call: Call, handshake: Handshake?) {
+        secureConnectEnd = System.nanoTime()
+    }
+
+    override fun connectEnd(call: Call, inetSocketAddress: InetSocketAddress, proxy: Proxy, protocol: Protocol?) {
+        connectEnd = System.nanoTime()
+    }
+
+    override fun connectionAcquired(call: Call, connection: Connection) = markDispatched()
+
+    override fun requestHeadersStart(call: Call) {
+        requestStart = System.nanoTime()
+    }
+
+    override fun requestHeadersEnd(call: Call, request: Request) {
+        requestEnd = System.nanoTime()
+    }
+
+    override fun requestBodyEnd(call: Call, byteCount: Long) {
+        requestEnd = System.nanoTime()
+    }
+
+    override fun responseHeadersStart(call: Call) {
+        responseStart = System.nanoTime()
+    }
+
+    override fun responseHeadersEnd(call: Call, response: Response) {
+        activityId = response.header(MSHttpHeader.MSActivityId.value)
+    }
+
+    override fun responseBodyStart(call: Call) {
+        responseBodyStart = System.nanoTime()
+    }
+
+    override fun responseBodyEnd(call: Call, byteCount: Long) {
+
+        val end = System.nanoTime()
+
+        diagnostics.recordNetwork(micros(diagnostics.requestReady, dispatched), NetworkTimings(
+                dns = micros(dnsStart, dnsEnd),
+                connect = micros(connectStart, connectEnd),
+                secureConnect = micros(secureConnectStart, secureConnectEnd),
+                requestSent = micros(requestStart, requestEnd),
+                timeToFirstByte = micros(requestEnd, responseStart),
+                download = micros(if (responseBodyStart > 0) responseBodyStart else responseStart, end),
+                total = micros(if (dispatched > 0) dispatched else callStart, end),
+                connectionReused = connectStart == 0L,
+                bytesReceived = byteCount,
+                activityId = activityId
+        ))
+    }
+
+    private fun markDispatched() {
+
+        if (dispatched == 0L) {
+            dispatched = System.nanoTime()
+        }
+    }
+
+    private fun micros(start: Long, end: Long) = if (start > 0 && end > start) TimeUnit.NANOSECONDS.toMicros(end - start) else 0
+
+    companion object {
+
+        // only times the calls of DocumentClient's requests
+        val factory = object : EventListener.Factory {
+
+            override fun create(call: Call): EventListener =
+                    call.request().tag(ResponseDiagnostics::class.java)?.let { NetworkTimingsListener(it) } ?: EventListener.NONE
+        }
+    }
+}
@@ -1,52 +1,201 @@
 package com.azure.data.service
 
-import android.annotation.SuppressLint
 import android.content.Context
 import android.content.SharedPreferences
+import com.azure.core.util.ContextProvider
 import com.azure.data.model.Permission
+import com.azure.data.model.PermissionMode
 import com.azure.data.model.Resource
+import com.azure.data.model.service.ResourceLocation
+import com.azure.data.model.service.ResourceType
 import com.azure.data.util.ResourceOracle
 import com.azure.data.util.json.gson
+import java.io.*
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.Executors
+import java.util.concurrent.ScheduledExecutorService
+import java.util.concurrent.ScheduledFuture
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicBoolean
 
 /**
  * Copyright (c) Microsoft Corporation. All rights reserved.
  * Licensed under the MIT License.
  */
 
-@SuppressLint("CommitPrefEdits")
-class PermissionCache private constructor (host: String) {
+/**
+ * The permissions (resource tokens) used by the client, by alt link.
+ *
+ * Permissions are kept in memory and written behind to a compact file: changes made in quick succession
+ * are coalesced into a single write. Persisted permissions are only decoded when they're first used.
+ */
+class PermissionCache internal constructor (host: String, private val directory: () -> File = { ContextProvider.appContext.filesDir }) {
 
+    // permissions used to be stored in these shared preferences, they're migrated to the file
     private val permissionCacheStorageKey = "com.azure.data.permissioncache$host"
+    private val permissionCacheFileName = "com.azure.data.permissions.$host"
     private val slashCharacter = '/'
 
-    private lateinit var cache: MutableMap<String, Permission>
+    // a cached permission, decoded from its json when it's first used
+    private class Entry(@Volatile private var json: String?, @Volatile private var permission: Permission?) {
+
+        fun permission(): Permission? =
+                permission ?: json?.let { safe { gson.fromJson(it, Permission::class.java) } }?.also { permission = it }
+
+        fun json(): String = json ?: gson.toJson(permission).also { json = it }
+    }
+
+    private val cache = ConcurrentHashMap<String, Entry>()
 
-    private lateinit var permissionCachePrefsEditor: SharedPreferences.Editor
+    private val isFlushScheduled = AtomicBoolean(false)
+
+    // bumped by purge: writes scheduled before it must not bring the purged permissions back
+    @Volatile
+    private var generation = 0
+
+    private var pendingFlush: ScheduledFuture<*>? = null
 
     var isRestored: Boolean = false
 
+    private var isRestoring = false
+
+    private val file: File
+        get() = File(directory(), permissionCacheFileName)
+
     private fun commit() {
 
-        permissionCachePrefsEditor.apply()
+        // coalesce bursts of changes into a single write
+        if (isFlushScheduled.compareAndSet(false, true)) {
+
+            synchronized(this) {
+
+                val generation = generation
+
+                pendingFlush = scheduler.schedule({
+
+                    isFlushScheduled.set(false)
+                    safeExecute { flush(generation) }
+
+                }, flushDelay, TimeUnit.MILLISECONDS)
+            }
+        }
+    }
+
+    @Synchronized
+    private fun flush(generation: Int = this.generation) {
+
+        if (generation != this.generation) {
+            return
+        }
+
+        val snapshot = cache.entries.map { Pair(it.key, it.value) }
+        val file = file
+        val tmp = File(file.parentFile, "${file.name}.tmp")
+
+        DataOutputStream(BufferedOutputStream(FileOutputStream(tmp))).use { output ->
+
+            output.writeInt(snapshot.size)
+
+            snapshot.forEach { (altLink, entry) ->
+                output.writeUTF(altLink)
+                output.writeString(entry.json())
+            }
+        }
+
+        if (!tmp.renameTo(file)) {
+            file.delete()
+            tmp.renameTo(file)
+        }
+    }
+
+    /**
+     * Loads the persisted permissions, unless they're already loaded or loading: the cache can be used
+     * while they load, and permissions set meanwhile take precedence over the ones loaded.
+     */
+    fun restore(appCtx: Context) = restore { appCtx.getSharedPreferences(it, Context.MODE_PRIVATE) }
+
+    internal fun restore(preferences: (String) -> SharedPreferences) {
+
+        val generation = synchronized(this) {
+
+            if (isRestored || isRestoring) {
+                return
+            }
+
+            isRestoring = true
+            generation
+        }
+
+        try {
+            val file = file
+
+            if (file.exists()) {
+
+                val permissions = mutableListOf<Pair<String, String>>()
+
+                safeExecute {
+                    DataInputStream(BufferedInputStream(FileInputStream(file))).use { input ->
+
+                        repeat(input.readInt()) {
+                            permissions.add(Pair(input.readUTF(), input.readString()))
+                        }
+                    }
+                }
+
+                store(permissions, generation)
+            } else {
+
+                migrate(preferences(permissionCacheStorageKey), generation)
+            }
+
+            isRestored = true
+        } finally {
+            isRestoring = false
+        }
     }
 
-    fun restore(appCtx: Context) {
+    // adds the permissions loaded, unless the cache was purged since they were read
+    @Synchronized
+    private fun store(permissions: List<Pair<String, String>>, generation: Int): Boolean {
+
+        if (generation != this.generation) {
+            return false
+        }
 
-        val permissionCachePrefs = appCtx.getSharedPreferences(permissionCacheStorageKey, Context.MODE_PRIVATE)
+        permissions.forEach { (altLink, json) ->
+            cache.putIfAbsent(altLink, Entry(json, null))
+        }
 
-        //copy prefs to cache
-        cache = permissionCachePrefs.all.mapValues { gson.fromJson(it.value.toString(), Permission::class.java) }.toMutableMap()
+        return true
+    }
 
-        permissionCachePrefsEditor = permissionCachePrefs.edit()
+    private fun migrate(permissionCachePrefs: SharedPreferences, generation: Int) {
+
+        val permissions = permissionCachePrefs.all
+
+        if (permissions.isEmpty()) {
+            return
+        }
+
+        if (store(permissions.map { Pair(it.key, it.value.toString()) }, generation)) {
+            safeExecute { flush(generation) }
+        }
 
-        isRestored = true
+        permissionCachePrefs.edit().clear().apply()
     }
 
+    @Synchronized
     fun purge() {
 
-        cache = mutableMapOf()
-        permissionCachePrefsEditor.clear()
-        commit()
+        generation++
+
+        pendingFlush?.cancel(false)
+        pendingFlush = null
+        isFlushScheduled.set(false)
+
+        cache.clear()
+
+        safeExecute { file.delete() }
     }
 
     fun getPermission(resource: Resource): Permission? {
@@ -54,19 +203,62 @@ class PermissionCache private constructor (host: String) {
         val altLink = ResourceOracle.shared.getAltLink(resource)
 
         return altLink?.let {
-            return cache[altLink]
+            return cache[altLink]?.permission()
         }
     }
 
     fun getPermission(altLink: String): Permission? {
 
         return if (altLink.trim(slashCharacter).isNotEmpty()) {
-            cache[altLink]
+            cache[altLink]?.permission()
         } else {
             null
         }
     }
 
+    /**
+     * Returns the widest cached permission granting `mode` on the resource at `location`, with the location it was granted for:
+     * a permission on a collection also grants access to its documents, and one on a document to its attachments.
+     * `isValid` rules out the permissions about to expire.
+     */
+    fun getPermission(location: ResourceLocation, mode: PermissionMode, isValid: (Permission) -> Boolean): Pair<ResourceLocation, Permission>? {
+
+        for (scope in location.permissionScopes()) {
+
+            getPermission(scope.link())?.let { permission ->
+
+                if ((permission.permissionMode == PermissionMode.All || permission.permissionMode == mode) && isValid(permission)) {
+                    return Pair(scope, permission)
+                }
+            }
+        }
+
+        return null
+    }
+
+    // the locations whose permissions grant access to the resource, widest first
+    private fun ResourceLocation.permissionScopes(): List<ResourceLocation> {
+
+        val ancestorIds = ancestorIds()
+        val databaseId = ancestorIds[ResourceType.Database]
+        val collectionId = ancestorIds[ResourceType.Collection]
+        val documentId = ancestorIds[ResourceType.Document]
+        val scopes = mutableListOf<ResourceLocation>()
+
+        if (databaseId != null && collectionId != null) {
+
+            scopes.add(ResourceLocation.Collection(databaseId, collectionId))
+
+            if (documentId != null) {
+                scopes.add(ResourceLocation.Document(databaseId, collectionId, documentId))
+            }
+        }
+
+        scopes.add(this)
+
+        return scopes.distinctBy { it.link() }
+    }
+
     fun setPermission(permission: Permission, resource: Resource): Boolean {
 
         val altLink = ResourceOracle.shared.getAltLink(resource)
@@ -79,8 +271,7 @@ class PermissionCache private constructor (host: String) {
     fun setPermission(permission: Permission, altLink: String): Boolean {
 
         return if (altLink.trim(slashCharacter).isNotEmpty()) {
-            cache[altLink] = permission
-            permissionCachePrefsEditor.putString(altLink, gson.toJson(permission))
+            cache[altLink] = Entry(null, permission)
             commit()
             true
         } else {
@@ -92,6 +283,29 @@ class PermissionCache private constructor (host: String) {
 
         lateinit var shared: PermissionCache
 
+        private const val flushDelay: Long = 1000
+
+        // writes the permissions of every cache in the background
+        private val scheduler: ScheduledExecutorService = Executors.newSingleThreadScheduledExecutor()
+
+        // tokens can be longer than writeUTF allows
+        private fun DataOutputStream.writeString(value: String) {
+
+            val bytes = value.toByteArray(Charsets.UTF_8)
+
+            writeInt(bytes.size)
+            write(bytes)
+        }
+
+        private fun DataInputStream.readString(): String {
+
+            val bytes = ByteArray(readInt())
+
+            readFully(bytes)
+
+            return String(bytes, Charsets.UTF_8)
+        }
+
         fun init(host: String) {
 
             shared = PermissionCache(host)
@@ -4,6 +4,7 @@ import com.azure.data.model.*
 import com.azure.core.util.ContextProvider
 import com.azure.data.model.service.*
 import com.azure.data.util.ResourceOracle
+import com.azure.data.util.SingleFlight
 import com.azure.data.util.ancestorIds
 import java.util.*
 
@@ -66,34 +67,51 @@ internal fun PermissionProvider.getPermission(resourceLocation: ResourceLocation
         }
     }
 
-    // does a cached permission exist / is it valid?
-    PermissionCache.shared.getPermission(location.link())?.let { permission ->
+    // does a cached permission exist for the resource or one of its ancestors / is it valid?
+    val cached = PermissionCache.shared.getPermission(location, permissionMode) { permission ->
 
-        if (permission.permissionMode == PermissionMode.All || permission.permissionMode == permissionMode) {
+        permission.timestamp?.let { timestamp ->
+            config.defaultTokenDuration - ((Date().time - timestamp.time) / 1000) > config.tokenRefreshThreshold
+        } ?: false
+    }
 
-            permission.timestamp?.let { timestamp ->
+    cached?.let { (scope, permission) ->
 
-                if (config.defaultTokenDuration - ((Date().time - timestamp.time) / 1000) > config.tokenRefreshThreshold) {
+        PermissionRefresher.shared.recordUse(this, scope, permission.permissionMode ?: mode, permission, config)
 
-                    return completion(Response(permission))
-                }
-            }
-        }
+        return completion(Response(result = Result(permission), fromCache = true))
     }
 
-    doGetPermission(location, mode) {
+    fetchPermission(location, mode) { response ->
 
-        it.resource?.let { permission ->
+        response.resource?.let { PermissionRefresher.shared.recordUse(this, location, mode, it, config) }
 
-            if (PermissionCache.shared.setPermission(permission, location.link())) {
-                completion(Response(permission))
-            } else {
-                completion(Response(DataError(PermissionProviderError.PermissionCacheFailed)))
-            }
-        } ?: completion(Response(DataError(PermissionProviderError.GetPermissionFailed)))
+        completion(response)
     }
 }
 
+// gets a new permission from the provider and caches it
+internal fun PermissionProvider.fetchPermission(location: ResourceLocation, mode: PermissionMode, completion: (Response<Permission>) -> Unit) {
+
+    // concurrent misses for the same link and mode share a single call to the provider
+    permissionFetches.execute("${location.link()}:$mode", { fetched ->
+
+        doGetPermission(location, mode) {
+
+            it.resource?.let { permission ->
+
+                if (PermissionCache.shared.setPermission(permission, location.link())) {
+                    fetched(Response(permission))
+                } else {
+                    fetched(Response(DataError(PermissionProviderError.PermissionCacheFailed)))
+                }
+            } ?: fetched(Response(DataError(PermissionProviderError.GetPermissionFailed)))
+        }
+    }, completion)
+}
+
+private val permissionFetches = SingleFlight<String, Response<Permission>> { Response(DataError(it)) }
+
 private fun PermissionProvider.doGetPermission(location: ResourceLocation, permissionMode: PermissionMode, completion: (Response<Permission>) -> Unit) {
 
     return when (location) {
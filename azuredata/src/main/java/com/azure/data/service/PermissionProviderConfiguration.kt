@@ -34,6 +34,22 @@ class PermissionProviderConfiguration {
 
     var tokenRefreshThreshold: Long = 600 // 10 minutes
 
+    // renew the tokens of recently used resources in the background, before
+    // requests reach the tokenRefreshThreshold and have to wait for a new one
+    //
+    // default: true
+    var backgroundRefreshEnabled: Boolean = true
+
+    // how long before the tokenRefreshThreshold a token is renewed in the background
+    var backgroundRefreshLeadTime: Long = 60 // 1 minute
+
+    // background renewals are spread randomly over this window so tokens
+    // fetched at the same time aren't all renewed at once
+    var backgroundRefreshJitter: Long = 120 // 2 minutes
+
+    // tokens of resources that weren't used for that long aren't renewed in the background
+    var backgroundRefreshIdleTime: Long = 900 // 15 minutes
+
     companion object {
 
         val default: PermissionProviderConfiguration by lazy {
@@ -0,0 +1,132 @@
+package com.azure.data.service
+
+import com.azure.data.model.Permission
+import com.azure.data.model.PermissionMode
+import com.azure.data.model.service.ResourceLocation
+import java.util.*
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.Executors
+import java.util.concurrent.ScheduledExecutorService
+import java.util.concurrent.ScheduledFuture
+import java.util.concurrent.TimeUnit
+
+/**
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+/**
+ * Renews the resource tokens of recently used links in the background, shortly before requests would have to renew them,
+ * so the round trip to the permission provider stays off the request path.
+ *
+ * Refreshes are spread randomly over `backgroundRefreshJitter` so tokens fetched together aren't all renewed at once,
+ * and links that weren't used for `backgroundRefreshIdleTime` are dropped and fetched again on their next use.
+ */
+internal class PermissionRefresher(private val clock: () -> Long = { System.currentTimeMillis() }) {
+
+    companion object {
+        val shared = PermissionRefresher()
+    }
+
+    private class Entry(val provider: PermissionProvider, val location: ResourceLocation, val mode: PermissionMode) {
+
+        @Volatile
+        var lastUsed: Long = 0
+
+        // when the token the refresh is scheduled for was issued
+        var issuedAt: Long = 0
+
+        var refresh: ScheduledFuture<*>? = null
+    }
+
+    private val entries = ConcurrentHashMap<String, Entry>()
+
+    private val scheduler: ScheduledExecutorService = Executors.newSingleThreadScheduledExecutor()
+
+    private val random = Random()
+
+    /**
+     * Records that `permission` was used for a request, scheduling its refresh if it isn't yet.
+     */
+    fun recordUse(provider: PermissionProvider, location: ResourceLocation, mode: PermissionMode, permission: Permission, config: PermissionProviderConfiguration) {
+
+        if (!config.backgroundRefreshEnabled) {
+            return
+        }
+
+        val key = "${location.link()}:$mode"
+        val entry = entries[key] ?: Entry(provider, location, mode).let { entries.putIfAbsent(key, it) ?: it }
+
+        entry.lastUsed = clock()
+
+        schedule(key, entry, permission, config)
+    }
+
+    // the number of links whose tokens are being refreshed
+    val size: Int
+        get() = entries.size
+
+    fun clear() {
+
+        entries.values.forEach { entry -> synchronized(entry) { entry.refresh?.cancel(false) } }
+        entries.clear()
+    }
+
+    private fun schedule(key: String, entry: Entry, permission: Permission, config: PermissionProviderConfiguration) {
+
+        val issuedAt = permission.timestamp?.time ?: return
+
+        synchronized(entry) {
+
+            // the entry was dropped or cleared (e.g. the client was reset) meanwhile
+            if (entries[key] !== entry || entry.issuedAt == issuedAt) {
+                return
+            }
+
+            entry.refresh?.cancel(false)
+            entry.issuedAt = issuedAt
+
+            val refreshAt = issuedAt + refreshDelay(config)
+
+            entry.refresh = scheduler.schedule({ refresh(key, entry, config) }, Math.max(0, refreshAt - clock()), TimeUnit.MILLISECONDS)
+        }
+    }
+
+    /**
+     * Returns how long (in milliseconds) after a token is issued it's refreshed: the lead time before requests
+     * start renewing it themselves, minus a random part of the jitter.
+     */
+    fun refreshDelay(config: PermissionProviderConfiguration): Long {
+
+        val delay = TimeUnit.SECONDS.toMillis(config.defaultTokenDuration - config.tokenRefreshThreshold - config.backgroundRefreshLeadTime)
+        val jitter = TimeUnit.SECONDS.toMillis(config.backgroundRefreshJitter)
+
+        return delay - if (jitter > 0) (random.nextDouble() * jitter).toLong() else 0
+    }
+
+    private fun refresh(key: String, entry: Entry, config: PermissionProviderConfiguration) {
+
+        if (entries[key] !== entry) {
+            return
+        }
+
+        if (clock() - entry.lastUsed > TimeUnit.SECONDS.toMillis(config.backgroundRefreshIdleTime)) {
+            entries.remove(key, entry)
+            return
+        }
+
+        safeExecute {
+            entry.provider.fetchPermission(entry.location, entry.mode) { response ->
+
+                val permission = response.resource
+
+                // a failed refresh leaves it to the next request
+                if (permission == null) {
+                    entries.remove(key, entry)
+                } else {
+                    schedule(key, entry, permission, config)
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.azure.data.service
+
+import com.azure.data.model.Query
+import com.azure.data.model.service.RequestDetails
+import com.azure.data.util.ancestorPath
+import com.google.gson.Gson
+import java.security.MessageDigest
+
+/**
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+/**
+ * Identifies the cached results of a query.
+ *
+ * The key is made of everything that affects the results: the query text and parameters, the feed it runs against
+ * and the partition key it's scoped to. Cached results are grouped by `scope` (the alt link of the resource that owns
+ * the feed, e.g. the collection for a document query) so that every query affected by a write can be invalidated at once.
+ */
+internal class QueryCacheKey(val scope: String, val key: String) {
+
+    val scopeHash: String
+        get() = scope.sha256()
+
+    val hash: String
+        get() = key.sha256()
+
+    override fun equals(other: Any?): Boolean = other is QueryCacheKey && other.scope == scope && other.key == key
+
+    override fun hashCode(): Int = key.hashCode()
+
+    override fun toString(): String = key
+
+    companion object {
+
+        // a plain Gson instance, so the key doesn't depend on the app's serialization settings (e.g. pretty printing)
+        private val canonicalGson = Gson()
+
+        fun from(query: Query, requestDetails: RequestDetails): QueryCacheKey {
+
+            // the link of a feed is the link of the resource that owns it, e.g. `dbs/db/colls/coll` for its documents
+            val scope = requestDetails.resourceLocation.link().trim('/')
+
+            val components = linkedMapOf(
+                    "query" to query.query,
+                    "parameters" to query.parameters.toSortedMap(),
+                    "link" to scope,
+                    "type" to requestDetails.resourceLocation.type(),
+                    "partitionKey" to requestDetails.partitionKey
+            )
+
+            return QueryCacheKey(scope, canonicalGson.toJson(components))
+        }
+
+        /**
+         * Returns the scope of the queries whose results may include the resource at `altLink`,
+         * e.g. `dbs/db/colls/coll` for `dbs/db/colls/coll/docs/doc`.
+         */
+        fun scopeOfResource(altLink: String): String = altLink.trim('/').ancestorPath()
+
+        private fun String.sha256(): String =
+                MessageDigest.getInstance("SHA-256").digest(toByteArray(Charsets.UTF_8)).joinToString("") { String.format("%02x", it) }
+    }
+}
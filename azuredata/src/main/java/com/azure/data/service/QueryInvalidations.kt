@@ -0,0 +1,26 @@
+package com.azure.data.service
+
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+/**
+ * When the cached results of the queries of each scope were last invalidated: the results of the requests sent
+ * before then, including the ones still in flight when the scope was invalidated, are stale.
+ */
+internal class QueryInvalidations {
+
+    private val invalidations = ConcurrentHashMap<String, Long>()
+
+    fun invalidate(scope: String) {
+        invalidations[scope] = System.currentTimeMillis()
+    }
+
+    // whether results as of `time` (in milliseconds) are stale, the scope having been invalidated at or after it
+    fun isStale(scope: String, time: Long) = time <= (invalidations[scope] ?: 0L)
+
+    fun clear() = invalidations.clear()
+}
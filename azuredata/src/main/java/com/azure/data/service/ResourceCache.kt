@@ -4,16 +4,23 @@ import android.content.Context
 import com.azure.core.log.e
 import com.azure.core.util.ContextProvider
 import com.azure.data.model.*
+import com.azure.data.model.service.RequestDetails
 import com.azure.data.model.service.ResourceLocation
 import com.azure.data.model.service.ResourceType
 import com.azure.data.util.ResourceOracle
 import com.azure.data.util.json.gson
 import com.azure.data.util.lastPathComponent
+import com.google.gson.JsonElement
+import com.google.gson.JsonParser
 import java.io.File
 import java.lang.Exception
 import java.lang.reflect.Type
+import java.util.concurrent.ConcurrentHashMap
 import java.util.concurrent.ExecutorService
 import java.util.concurrent.Executors
+import java.util.concurrent.ScheduledExecutorService
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicBoolean
 
 /**
  * Copyright (c) Microsoft Corporation. All rights reserved.
@@ -24,6 +31,16 @@ internal class ResourceCache private constructor() {
 
     companion object {
         var shared: ResourceCache = ResourceCache()
+
+        private const val indexPersistDelay: Long = 1000
+
+        const val defaultQueryResultsTimeToLive: Long = 24 * 60 * 60
+
+        private const val evictionInterval: Long = 30
+
+        private const val dictionariesPath = "dictionaries"
+
+        private const val dictionaryFileName = "dictionary"
     }
 
     //region properties
@@ -32,8 +49,44 @@ internal class ResourceCache private constructor() {
 
     var resourceEncryptor: ResourceEncryptor? = null
 
+    // how long (in seconds) cached query results can be used to answer offline queries, 0 or less to keep them until invalidated
+    var queryResultsTimeToLive: Long = defaultQueryResultsTimeToLive
+
+    // limits enforced by the evictor, see ResourceCacheEvictor
+    var maxSize: Long = ResourceCacheEvictor.defaultMaxSize
+
+    var maxCollectionSize: Long = ResourceCacheEvictor.defaultMaxCollectionSize
+
+    var maxAge: Long = ResourceCacheEvictor.defaultMaxAge
+
     private var executor: ExecutorService = Executors.newCachedThreadPool()
 
+    private val indexCache = ResourceIndexCache()
+
+    // runs the index persistence and the cache eviction in the background
+    private val scheduler: ScheduledExecutorService = Executors.newSingleThreadScheduledExecutor()
+
+    private val isIndexPersistScheduled = AtomicBoolean(false)
+
+    // when the queries of each scope were last invalidated, so results returned to a request already in flight are ignored
+    private val queryInvalidations = QueryInvalidations()
+
+    // the etag of the version of each resource written to the cache, to skip rewriting unchanged resources
+    private val cachedEtags: MutableMap<String, String> = ConcurrentHashMap()
+
+    // the collections of the cached documents, keyed by the collection's cache directory
+    private val cachedCollections: MutableMap<String, DocumentCollection> = ConcurrentHashMap()
+
+    private val evictor by lazy { ResourceCacheEvictor(ContextProvider.appContext.azureDataCacheDir()) }
+
+    private val isEvictionScheduled = AtomicBoolean(false)
+
+    // the trained compression dictionaries, keyed by id (their Adler-32 checksum)
+    private val dictionaries: MutableMap<Int, ByteArray> = ConcurrentHashMap()
+
+    // the dictionaries being trained for the collections that don't have one yet, keyed by the collection's cache directory
+    private val trainers = ConcurrentHashMap<String, DictionaryTrainer>()
+
     //endregion
 
     //region cache
@@ -46,13 +99,7 @@ internal class ResourceCache private constructor() {
 
             executor.execute {
                 safeExecute {
-
-                    ContextProvider.appContext.resourceCacheFile(resource)?.let {
-
-                        it.bufferedWriter().use { writer ->
-                            writer.write(encrypt(gson.toJson(resource)))
-                        }
-                    }
+                    write(resource)
                 }
             }
         }
@@ -65,9 +112,10 @@ internal class ResourceCache private constructor() {
         resources.items.forEach { cache(it) }
     }
 
-    fun <T : Resource> cache(resources: ResourceList<T>, query: Query, contentPath: String) {
+    fun <T : Resource> cache(resources: ResourceList<T>, query: Query, requestDetails: RequestDetails) {
 
-        if (resources.count == 0) {
+        // results that aren't complete resources (e.g. projections) can't reference the cached resources
+        if (resources.count == 0 || resources.items.any { it.selfLink.isNullOrEmpty() }) {
             return
         }
 
@@ -75,29 +123,73 @@ internal class ResourceCache private constructor() {
 
         if (isEnabled) {
 
+            val queryKey = QueryCacheKey.from(query, requestDetails)
+            val contentPath = requestDetails.resourceLocation.link()
+            // as of when the request was sent: a write invalidating the scope while the query was in flight wins
+            val cachedAt = requestDetails.sentAt.takeIf { it > 0 } ?: System.currentTimeMillis()
+
+            if (queryInvalidations.isStale(queryKey.scope, cachedAt)) {
+                return
+            }
+
             executor.execute {
                 safeExecute {
 
-                    val metadata = ResourcesMetadata(resources.resourceId!!, contentPath)
-                    val metadataPath = ContextProvider.appContext.metadatafileUrl(query)
-
-                    metadataPath.bufferedWriter().use { writer ->
-                        writer.write(encrypt(gson.toJson(metadata)))
+                    if (queryInvalidations.isStale(queryKey.scope, cachedAt)) {
+                        return@safeExecute
                     }
 
-                    resources.items.forEach { resource ->
+                    // the results are stored once, with the other cached resources, and referenced from the query's metadata
+                    resources.items.forEach { write(it) }
 
-                        val file = ContextProvider.appContext.resourceCacheFile(resource, query)
+                    val results = resources.items.map { ResultReference(it.selfLink!!, it.etag) }
+                    val metadata = ResourcesMetadata(resources.resourceId!!, contentPath, queryKey.key, cachedAt, results)
+                    val metadataPath = ContextProvider.appContext.metadatafileUrl(queryKey)
 
-                        file.bufferedWriter().use { writer ->
-                            writer.write(encrypt(gson.toJson(resource)))
-                        }
-                    }
+                    writeEntry(metadataPath, gson.toJsonTree(metadata))
+
+                    val expiresAt = if (queryResultsTimeToLive > 0) cachedAt + TimeUnit.SECONDS.toMillis(queryResultsTimeToLive) else ResourceCacheEvictor.noExpiration
+
+                    evictor.recordWrite(metadataPath.parentFile, metadataPath.length(), expiresAt)
+                    scheduleEviction()
                 }
             }
         }
     }
 
+    // writes the resource's cache entry, unless the entry already holds this version of the resource
+    private fun <T : Resource> write(resource: T) {
+
+        ContextProvider.appContext.resourceCacheFile(resource)?.let { file ->
+
+            val selfLink = resource.selfLink
+            val etag = resource.etag
+
+            if (selfLink != null && etag != null && cachedEtags[selfLink] == etag && file.exists()) {
+                return
+            }
+
+            val json = gson.toJsonTree(resource)
+
+            // documents are compressed with the dictionary trained on their collection, once there is one
+            val dictionary = if (resource is Document) documentDictionary(file.parentFile.parentFile.parentFile, json) else CacheEncoding.baseDictionary
+
+            writeEntry(file, json, dictionary)
+
+            if (selfLink != null && etag != null) {
+                cachedEtags[selfLink] = etag
+            }
+
+            updateIndexes(resource, json)
+
+            if (resource is Document) {
+
+                evictor.recordWrite(file.parentFile, file.length(), expirationOf(resource, file.parentFile.parentFile.parentFile))
+                scheduleEviction()
+            }
+        }
+    }
+
     //endregion
 
 
@@ -105,9 +197,75 @@ internal class ResourceCache private constructor() {
 
     fun <T : Resource> replace(resource: T) {
 
-        remove(resource)
+        val selfLink = forget(resource)
 
-        cache(resource)
+        ResourceOracle.shared.storeLinks(resource)
+
+        if (isEnabled) {
+
+            // the previous entry is deleted by the task writing the new one: in a task of its own, running on another
+            // thread, the deletion could come after the write and remove the new entry from the cache and its indexes
+            executor.execute {
+                safeExecute {
+                    delete(resource, selfLink)
+                    write(resource)
+                }
+            }
+        }
+    }
+
+    //endregion
+
+    //region invalidate
+
+    /**
+     * Invalidates the cached results of the queries that could include the resource.
+     * This is done for us by `replace` and `remove`, it must be called when a new resource is created.
+     */
+    fun invalidateQueries(resource: Resource) {
+
+        ResourceOracle.shared.getAltLink(resource)?.let { invalidateQueries(QueryCacheKey.scopeOfResource(it)) }
+    }
+
+    private fun invalidateQueries(resourceLocation: ResourceLocation) {
+
+        val link = resourceLocation.link()
+
+        invalidateQueries(QueryCacheKey.scopeOfResource(link))
+
+        // queries over the children of the resource (e.g. the documents of a deleted collection)
+        invalidateQueries(link.trim('/'))
+    }
+
+    private fun invalidateQueries(scope: String) {
+
+        if (!isEnabled) {
+            return
+        }
+
+        // results cached before now are ignored from here on, the files can be removed in the background
+        queryInvalidations.invalidate(scope)
+
+        executor.execute {
+            safeExecute {
+
+                val directory = File(ContextProvider.appContext.azureDataCacheDir(), ResourceOracle.shared.getQueriesDirectoryPath(scope))
+
+                if (directory.exists()) {
+
+                    // remove the directory from view first, so results cached meanwhile aren't deleted with it
+                    val deleted = File(directory.parentFile, "${directory.name}${ResourceCacheEvictor.deletedDirectoryMarker}${System.nanoTime()}")
+
+                    if (directory.renameTo(deleted)) {
+                        deleted.deleteRecursively()
+                    } else {
+                        directory.deleteRecursively()
+                    }
+
+                    evictor.recordRemoval(directory)
+                }
+            }
+        }
     }
 
     //endregion
@@ -120,11 +278,15 @@ internal class ResourceCache private constructor() {
             return null
         }
 
+        scheduleEviction()
+
         return safe {
 
             ContextProvider.appContext.resourceCacheFile(location)?.let { file ->
 
-                file.bufferedReader().use { gson.fromJson<T>(decrypt(it.readText()), resourceType) }
+                evictor.recordAccess(file.parentFile)
+
+                gson.fromJson<T>(readEntry(file), resourceType)
             }
         }
     }
@@ -132,15 +294,16 @@ internal class ResourceCache private constructor() {
     fun <T : Resource> getResourcesAt(location: ResourceLocation, resourceType: Type): ResourceList<T>? {
 
         if (isEnabled) {
+
+            scheduleEviction()
+
             safeExecute {
 
                 val resources = ResourceList<T>()
 
                 resources.items = ContextProvider.appContext.resourceCacheFiles(location).map { file ->
 
-                    file.bufferedReader().use {
-                        gson.fromJson<T>(decrypt(it.readText()), resourceType)
-                    }
+                    gson.fromJson<T>(readEntry(file), resourceType)
                 }
 
                 resources.count = resources.items.count()
@@ -152,32 +315,117 @@ internal class ResourceCache private constructor() {
         return null
     }
 
-    fun <T : Resource> getResourcesForQuery(query: Query, resourceType: Type): ResourceList<T>? {
+    fun <T : Resource> getResourcesForQuery(query: Query, requestDetails: RequestDetails, resourceType: Type): ResourceList<T>? {
 
-        if (isEnabled) {
-            safeExecute {
+        if (!isEnabled) {
+            return null
+        }
 
-                val resources = ResourceList<T>()
-                val metadataPath = ContextProvider.appContext.metadatafileUrl(query)
+        scheduleEviction()
+
+        return getCachedQueryResults(QueryCacheKey.from(query, requestDetails), resourceType) ?: getIndexedResources(query, requestDetails.resourceLocation, requestDetails.partitionKey, resourceType)
+    }
+
+    private fun <T : Resource> getCachedQueryResults(queryKey: QueryCacheKey, resourceType: Type): ResourceList<T>? {
+
+        safeExecute {
+
+            val resources = ResourceList<T>()
+            val metadataPath = ContextProvider.appContext.metadatafileUrl(queryKey)
 
-                val metadata = metadataPath.bufferedReader().use {
-                    gson.fromJson<ResourcesMetadata>(decrypt(it.readText()), ResourcesMetadata::class.java)
+            if (!metadataPath.exists()) {
+                return null
+            }
+
+            val metadata = gson.fromJson(readEntry(metadataPath), ResourcesMetadata::class.java)
+
+            // results cached by a previous version of the cache, or for a different query with the same hash
+            if (metadata.key != queryKey.key || queryInvalidations.isStale(queryKey.scope, metadata.cachedAt)) {
+                return null
+            }
+
+            if (queryResultsTimeToLive > 0 && System.currentTimeMillis() - metadata.cachedAt > TimeUnit.SECONDS.toMillis(queryResultsTimeToLive)) {
+
+                executor.execute { safeExecute { ContextProvider.appContext.resourceCacheDir(queryKey).deleteRecursively() } }
+                return null
+            }
+
+            evictor.recordAccess(metadataPath.parentFile)
+
+            resources.resourceId = metadata.resourceId
+
+            // if one of the results is no longer cached, or was cached again in another version that may not match
+            // the query anymore, the result set can't be used
+            resources.items = metadata.results?.map { result ->
+
+                val file = ContextProvider.appContext.resourceCacheFile(result.selfLink)?.takeIf { it.exists() } ?: return null
+
+                evictor.recordAccess(file.parentFile)
+
+                val resource = gson.fromJson<T>(readEntry(file), resourceType)
+
+                if (result.etag != null && resource.etag != result.etag) {
+                    return null
                 }
 
-                resources.resourceId = metadata.resourceId
+                resource
+            } ?: return null
 
-                resources.items = ContextProvider.appContext.resourceCacheFiles(query)?.map { file ->
+            resources.count = resources.items.count()
+            resources.setAltContentLink(ResourceType.fromType(resourceType).path, metadata.contentPath)
 
-                    file.bufferedReader().use {
-                        gson.fromJson<T>(decrypt(it.readText()), resourceType)
-                    }
-                } ?: emptyList()
+            return resources
+        }
 
-                resources.count = resources.items.count()
-                resources.setAltContentLink(ResourceType.fromType(resourceType).path, metadata.contentPath)
+        return null
+    }
 
-                return resources
+    // answers a document query from the local indexes of the collection, when the query's constraints allow it
+    private fun <T : Resource> getIndexedResources(query: Query, resourceLocation: ResourceLocation, partitionKey: List<String>?, resourceType: Type): ResourceList<T>? {
+
+        if (!query.isLocallyEvaluable || (query.predicates.isEmpty() && query.spatialPredicates.isEmpty()) || resourceLocation.resourceType != ResourceType.Document) {
+            return null
+        }
+
+        // a value the indexes can't compare would fail every candidate, an empty result wouldn't be the service's answer
+        if (query.predicates.any { IndexKey.from(it.value) == null }) {
+            return null
+        }
+
+        safeExecute {
+
+            val collectionSelfLink = ResourceOracle.shared.getSelfLink(resourceLocation.link()) ?: return null
+
+            // a query scoped to a partition only gets its documents, which takes the collection's partition key paths
+            val partition = partitionKey?.let { values ->
+
+                val paths = cachedCollection(File(ContextProvider.appContext.azureDataCacheDir(), collectionSelfLink))?.partitionKey?.paths
+
+                paths?.takeIf { it.size == values.size }?.map { it.trim('/').replace('/', '.') }?.zip(values) ?: return null
+            }
+
+            val selfLinks = collectionIndex(collectionSelfLink)?.find(query.predicates, query.spatialPredicates) ?: return null
+
+            // the indexes narrow down the candidates, every predicate is then checked against the cached document
+            var documents = selfLinks
+                    .mapNotNull { readCachedJson(it) }
+                    .filter { json -> partition?.let { json.isInPartition(it) } ?: true }
+                    .filter { json -> query.predicates.all { json.matches(it) } && query.spatialPredicates.all { json.matches(it) } }
+
+            query.orderByProperty?.let { property ->
+
+                val comparator = compareBy<JsonElement, IndexKey?>(nullsFirst()) { IndexKey.from(it.valueAt(property)) }
+
+                documents = documents.sortedWith(if (query.orderByDescending) comparator.reversed() else comparator)
             }
+
+            val resources = ResourceList<T>()
+
+            resources.items = documents.map { gson.fromJson<T>(it, resourceType) }
+            resources.count = resources.items.count()
+            resources.setAltContentLink(ResourceType.fromType(resourceType).path, resourceLocation.link())
+
+            return resources
         }
 
         return null
@@ -189,27 +437,71 @@ internal class ResourceCache private constructor() {
 
     fun remove(resource: Resource) {
 
-        ResourceOracle.shared.removeLinks(resource)
+        val selfLink = forget(resource)
 
         if (isEnabled) {
 
-            safeExecute {
-                executor.execute {
-                    ContextProvider.appContext.resourceCacheDir(resource)?.deleteRecursively()
+            executor.execute {
+                safeExecute {
+                    delete(resource, selfLink)
                 }
             }
         }
     }
 
+    // drops the links and etag of the resource, and the results of the queries that could include it, returning its self link
+    private fun forget(resource: Resource): String? {
+
+        val selfLink = ResourceOracle.shared.getSelfLink(resource)
+
+        selfLink?.let { cachedEtags.remove(it) }
+
+        invalidateQueries(resource)
+
+        ResourceOracle.shared.getAltLink(resource)?.let { invalidateQueries(it.trim('/')) }
+
+        ResourceOracle.shared.removeLinks(resource)
+
+        return selfLink
+    }
+
+    // deletes the cache entry of the resource and its children, and its entries in the indexes
+    private fun delete(resource: Resource, selfLink: String?) {
+
+        ContextProvider.appContext.resourceCacheDir(resource)?.let {
+
+            it.deleteRecursively()
+            evictor.recordRemoval(it)
+            cachedCollections.remove(it.absolutePath)
+        }
+
+        selfLink?.let { removeFromIndexes(ResourceType.fromType(resource::class.java), it) }
+    }
+
     fun remove(resourceLocation: ResourceLocation) {
 
+        val selfLink = ResourceOracle.shared.getSelfLink(resourceLocation)
+
+        selfLink?.let { cachedEtags.remove(it) }
+
+        if (!resourceLocation.isFeed) {
+            invalidateQueries(resourceLocation)
+        }
+
         ResourceOracle.shared.removeLinks(resourceLocation)
 
         if (isEnabled && !resourceLocation.isFeed) {
 
             safeExecute {
                 executor.execute {
-                    ContextProvider.appContext.resourceCacheDir(resourceLocation)?.deleteRecursively()
+                    ContextProvider.appContext.resourceCacheDir(resourceLocation)?.let {
+
+                        it.deleteRecursively()
+                        evictor.recordRemoval(it)
+                        cachedCollections.remove(it.absolutePath)
+                    }
+
+                    selfLink?.let { removeFromIndexes(resourceLocation.resourceType, it) }
                 }
             }
         }
@@ -224,10 +516,18 @@ internal class ResourceCache private constructor() {
         safeExecute {
 
             ResourceOracle.shared.purge()
+            indexCache.purge()
+            queryInvalidations.clear()
+            cachedEtags.clear()
+            cachedCollections.clear()
+            dictionaries.clear()
+            trainers.clear()
+            evictor.clear()
 
             val databasesDir = File(ContextProvider.appContext.azureDataCacheDir(), "dbs")
             val offersDir = File(ContextProvider.appContext.azureDataCacheDir(), "offers")
             val queriesDir = File(ContextProvider.appContext.azureDataCacheDir(), "queries")
+            val dictionariesDir = File(ContextProvider.appContext.azureDataCacheDir(), dictionariesPath)
 
             if (databasesDir.exists() && databasesDir.isDirectory) {
                 databasesDir.deleteRecursively()
@@ -240,27 +540,287 @@ internal class ResourceCache private constructor() {
             if (queriesDir.exists() && queriesDir.isDirectory) {
                 queriesDir.deleteRecursively()
             }
+
+            if (dictionariesDir.exists() && dictionariesDir.isDirectory) {
+                dictionariesDir.deleteRecursively()
+            }
+        }
+    }
+
+    //endregion
+
+    //region Indexes
+
+    private fun <T : Resource> updateIndexes(resource: T, json: JsonElement) {
+
+        when (resource) {
+
+            is DocumentCollection -> ContextProvider.appContext.resourceCacheDir(resource)?.let { directory ->
+
+                cachedCollections[directory.absolutePath] = resource
+
+                val index = indexCache.register(resource, directory)
+
+                // build the indexes from the documents we already have cached the first time we see the collection
+                if (!index.isEmpty && index.needsRebuild) {
+                    rebuildIndex(index, directory)
+                }
+            }
+
+            is Document -> ResourceOracle.shared.getSelfLink(resource)?.let { selfLink ->
+
+                collectionIndex(selfLink.ancestorSelfLink())?.let {
+
+                    it.put(selfLink, json)
+                    scheduleIndexPersist()
+                }
+            }
+        }
+    }
+
+    private fun removeFromIndexes(resourceType: ResourceType, selfLink: String) {
+
+        when (resourceType) {
+
+            ResourceType.Collection -> indexCache.remove(File(ContextProvider.appContext.azureDataCacheDir(), selfLink))
+
+            ResourceType.Document -> collectionIndex(selfLink.ancestorSelfLink())?.let {
+
+                it.remove(selfLink)
+                scheduleIndexPersist()
+            }
+
+            else -> { }
+        }
+    }
+
+    private fun collectionIndex(collectionSelfLink: String): CollectionIndex? {
+
+        val directory = File(ContextProvider.appContext.azureDataCacheDir(), collectionSelfLink)
+
+        return indexCache.get(directory) { cachedCollection(directory) }
+    }
+
+    private fun cachedCollection(directory: File): DocumentCollection? {
+
+        cachedCollections[directory.absolutePath]?.let { return it }
+
+        return safe {
+            File(directory, "${directory.name}.json").takeIf { it.exists() }?.let {
+                gson.fromJson(readEntry(it), DocumentCollection::class.java)
+            }
+        }?.also {
+            cachedCollections[directory.absolutePath] = it
+        }
+    }
+
+    private fun rebuildIndex(index: CollectionIndex, collectionDirectory: File) {
+
+        File(collectionDirectory, ResourceType.Document.path).listFiles()?.forEach { documentDirectory ->
+
+            safeExecute {
+                File(documentDirectory, "${documentDirectory.name}.json").takeIf { it.exists() }?.let { file ->
+
+                    val json = JsonParser().parse(readEntry(file))
+
+                    json.asJsonObject.get(Resource.Companion.Keys.selfLinkKey)?.asString?.let { index.put(it, json) }
+                }
+            }
+        }
+
+        scheduleIndexPersist()
+    }
+
+    private fun scheduleIndexPersist() {
+
+        // coalesce bursts of index updates into a single write
+        if (isIndexPersistScheduled.compareAndSet(false, true)) {
+
+            scheduler.schedule({
+
+                isIndexPersistScheduled.set(false)
+                indexCache.persist()
+
+            }, indexPersistDelay, TimeUnit.MILLISECONDS)
+        }
+    }
+
+    private fun readCachedJson(selfLink: String): JsonElement? {
+
+        return safe {
+            ContextProvider.appContext.resourceCacheFile(selfLink)?.takeIf { it.exists() }?.let { file ->
+
+                evictor.recordAccess(file.parentFile)
+
+                JsonParser().parse(readEntry(file))
+            }
+        }
+    }
+
+    private fun JsonElement.matches(predicate: QueryPredicate): Boolean {
+
+        val value = IndexKey.from(predicate.value) ?: return false
+
+        return IndexKey.from(valueAt(predicate.property))?.matches(predicate.operator, value) ?: false
+    }
+
+    // whether the document's partition key values are the partition's, by property
+    private fun JsonElement.isInPartition(partition: List<Pair<String, String>>): Boolean =
+            partition.all { (property, value) ->
+                valueAt(property)?.takeIf { it.isJsonPrimitive && it.asJsonPrimitive.isString }?.asString == value
+            }
+
+    private fun JsonElement.matches(predicate: SpatialPredicate): Boolean =
+            valueAt(predicate.property)?.toSpatialObject()?.let { predicate.matches(it) } ?: false
+
+    private fun String.ancestorSelfLink(): String =
+            trimEnd('/').split('/').dropLast(2).joinToString("/").plus('/')
+
+    //endregion
+
+    //region Eviction
+
+    // started by the first read or write of the cache, so the limits are also enforced in sessions that only read
+    private fun scheduleEviction() {
+
+        if (isEvictionScheduled.compareAndSet(false, true)) {
+            scheduler.scheduleWithFixedDelay({ safeExecute { evict() } }, evictionInterval, evictionInterval, TimeUnit.SECONDS)
+        }
+    }
+
+    private fun evict() {
+
+        if (!isEnabled) {
+            return
+        }
+
+        evictor.maxSize = maxSize
+        evictor.maxCollectionSize = maxCollectionSize
+        evictor.maxAge = maxAge
+
+        val root = ContextProvider.appContext.azureDataCacheDir()
+
+        evictor.step().forEach { path ->
+
+            File(root, path).deleteRecursively()
+
+            // evicted documents must leave the indexes too, their cache directory is their self link
+            if (!path.startsWith("queries/")) {
+
+                val selfLink = "$path/"
+
+                cachedEtags.remove(selfLink)
+                removeFromIndexes(ResourceType.Document, selfLink)
+            }
+        }
+
+        evictor.persist()
+    }
+
+    // follows the service's rules: documents only expire when time to live is enabled on their collection, -1 meaning never
+    private fun expirationOf(document: Document, collectionDirectory: File): Long {
+
+        val collection = cachedCollection(collectionDirectory)
+        val timeToLive = if (collection == null) document.timeToLive else collection.defaultTimeToLive?.let { document.timeToLive ?: it }
+
+        if (timeToLive == null || timeToLive <= 0) {
+            return ResourceCacheEvictor.noExpiration
         }
+
+        return (document.timestamp?.time ?: System.currentTimeMillis()) + TimeUnit.SECONDS.toMillis(timeToLive.toLong())
     }
 
     //endregion
 
-    //region
+    //region Encoding
+
+    // entries are compressed, then encrypted by stream encryptors, string encryptors get the json text
+    private fun writeEntry(file: File, json: JsonElement, dictionary: ByteArray = CacheEncoding.baseDictionary) {
+
+        when (val encryptor = resourceEncryptor) {
 
-    private fun encrypt(data: String): String {
-        resourceEncryptor?.let { return it.encrypt(data) }
-        return data
+            null -> file.outputStream().buffered().use { CacheEncoding.encode(json, dictionary, it) }
+
+            is ResourceStreamEncryptor -> encryptor.encrypt(file.outputStream().buffered()).use { CacheEncoding.encode(json, dictionary, it) }
+
+            else -> file.writeText(encryptor.encrypt(CacheEncoding.compact(json)))
+        }
     }
 
-    private fun decrypt(data: String): String {
-        resourceEncryptor?.let { return it.decrypt(data) }
-        return data
+    private fun readEntry(file: File): String {
+
+        val encryptor = resourceEncryptor
+
+        // entries written before encryption was enabled are read as they are
+        if (encryptor == null || CacheEncoding.isEncoded(file)) {
+            return CacheEncoding.decodeToString(file.readBytes()) { dictionary(it) }
+        }
+
+        if (encryptor is ResourceStreamEncryptor) {
+            return CacheEncoding.decodeToString(encryptor.decrypt(file.inputStream().buffered()).use { it.readBytes() }) { dictionary(it) }
+        }
+
+        return encryptor.decrypt(file.readText())
+    }
+
+    private fun dictionary(id: Int): ByteArray? {
+
+        dictionaries[id]?.let { return it }
+
+        return safe {
+            File(ContextProvider.appContext.azureDataCacheDir(), "$dictionariesPath/${Integer.toHexString(id)}").takeIf { it.exists() }?.readBytes()
+        }?.also {
+            dictionaries[id] = it
+        }
+    }
+
+    // returns the dictionary of the collection's documents, training one from the first documents cached if needed
+    private fun documentDictionary(collectionDirectory: File, json: JsonElement): ByteArray {
+
+        val pointer = File(collectionDirectory, dictionaryFileName)
+
+        if (pointer.exists()) {
+
+            safe { pointer.readText().toLong(16).toInt() }?.let { id -> dictionary(id)?.let { return it } }
+        }
+
+        // documents of the collection are written concurrently, they must all be sampled by the same trainer
+        val trainer = trainers.getOrPut(collectionDirectory.absolutePath) { DictionaryTrainer() }
+
+        trainer.add(json)?.let { dictionary ->
+
+            safeExecute {
+
+                val id = CacheEncoding.idOf(dictionary)
+                val directory = File(ContextProvider.appContext.azureDataCacheDir(), dictionariesPath)
+
+                directory.mkdirs()
+                File(directory, Integer.toHexString(id)).writeBytes(dictionary)
+                dictionaries[id] = dictionary
+
+                // written last, so the pointer never references a missing dictionary
+                pointer.writeText(Integer.toHexString(id))
+                trainers.remove(collectionDirectory.absolutePath)
+
+                return dictionary
+            }
+        }
+
+        return CacheEncoding.baseDictionary
     }
 
     //endregion
     private data class ResourcesMetadata(
             val resourceId: String,
-            val contentPath: String
+            val contentPath: String,
+            val key: String?,
+            val cachedAt: Long,
+            val results: List<ResultReference>?
+    )
+
+    private data class ResultReference(
+            val selfLink: String,
+            val etag: String?
     )
 }
 
@@ -367,9 +927,9 @@ internal fun createEmptyChildDirectoriesIfNecessary(parent: File, resourceType:
     }
 }
 
-internal fun Context.resourceCacheDir(query: Query) : File {
+internal fun Context.resourceCacheDir(queryKey: QueryCacheKey) : File {
 
-    val queryPath = ResourceOracle.shared.getDirectoryPath(query)
+    val queryPath = ResourceOracle.shared.getDirectoryPath(queryKey)
     val directory = File(azureDataCacheDir(), queryPath)
 
     if (!directory.exists()) {
@@ -379,38 +939,20 @@ internal fun Context.resourceCacheDir(query: Query) : File {
     return directory
 }
 
-internal fun Context.metadatafileUrl(query: Query) : File {
+internal fun Context.metadatafileUrl(queryKey: QueryCacheKey) : File {
 
-    val dir = this.resourceCacheDir(query)
+    val dir = this.resourceCacheDir(queryKey)
 
     return File(dir, "metadata.json")
 }
 
-internal fun Context.resultsCacheDir(query: Query) : File {
-
-    val dir = this.resourceCacheDir(query)
-    val resultsDir = File(dir, "results")
+internal fun Context.resourceCacheFile(selfLink: String) : File? {
 
-    if (!resultsDir.exists()) {
-        resultsDir.mkdirs()
+    if (selfLink.isBlank()) {
+        return null
     }
 
-    return resultsDir
-}
-
-internal fun Context.resourceCacheFile(resource: Resource, query: Query) : File {
-
-    val filename = "${resource.selfLink?.lastPathComponent() ?: resource.resourceId}.json"
-    val resultsPath = this.resultsCacheDir(query)
-
-    return File(resultsPath, filename)
-}
-
-internal fun Context.resourceCacheFiles(query: Query) : Array<File>? {
-
-    val resultsPath = this.resultsCacheDir(query)
-
-    return resultsPath.listFiles()
+    return File(File(azureDataCacheDir(), selfLink), "${selfLink.lastPathComponent()}.json")
 }
 
 //endregion
@@ -0,0 +1,464 @@
+package com.azure.data.service
+
+import com.azure.data.util.json.gson
+import com.google.gson.reflect.TypeToken
+import java.io.File
+import java.util.*
+
+/**
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+/**
+ * Keeps the offline cache within its size and age limits.
+ *
+ * The evictor tracks the size, last use and expiration of every cached document and query result in an inventory
+ * that's updated as the cache is written and read, and persisted next to the cache so it survives restarts.
+ * The cache directory is only walked once per process to reconcile the inventory with what's on disk, and that
+ * walk, like the evictions, is done a bounded amount at a time by `step`, which `ResourceCache` runs in the background.
+ */
+internal class ResourceCacheEvictor(private val root: File, private val clock: () -> Long = { System.currentTimeMillis() }) {
+
+    //region properties
+
+    // the maximum size of the cache in bytes, 0 or less for no limit
+    var maxSize: Long = defaultMaxSize
+
+    // the maximum size of the documents cached for a single collection in bytes, 0 or less for no limit
+    var maxCollectionSize: Long = defaultMaxCollectionSize
+
+    // how long (in seconds) an entry can go unused before it's evicted, 0 or less for no limit
+    var maxAge: Long = defaultMaxAge
+
+    private class Entry(val path: String, val collection: String?, var size: Long, var lastUsed: Long, var expiresAt: Long) {
+
+        var generation = 0
+    }
+
+    private val entries: MutableMap<String, Entry> = HashMap()
+
+    private val collectionSizes: MutableMap<String, Long> = HashMap()
+
+    var totalSize: Long = 0
+        private set
+
+    // directories left to visit by the current reconciliation walk
+    private val pendingDirectories: Deque<File> = ArrayDeque()
+
+    private var generation = 0
+
+    private var isWalking = false
+
+    private var isLoaded = false
+
+    private var isDirty = false
+
+    private val inventoryFile: File
+        get() = File(root, inventoryFileName)
+
+    //endregion
+
+    //region tracking
+
+    @Synchronized
+    fun recordWrite(directory: File, size: Long, expiresAt: Long = noExpiration) {
+
+        val path = relativePath(directory) ?: return
+
+        if (!isEvictable(path)) {
+            return
+        }
+
+        val entry = entries[path]
+
+        if (entry == null) {
+            add(Entry(path, collectionOf(path), size, clock(), expiresAt).also { it.generation = generation })
+        } else {
+            resize(entry, size)
+            entry.lastUsed = clock()
+            entry.expiresAt = expiresAt
+            entry.generation = generation
+        }
+
+        isDirty = true
+    }
+
+    @Synchronized
+    fun recordAccess(directory: File) {
+
+        val path = relativePath(directory) ?: return
+
+        entries[path]?.let {
+            it.lastUsed = clock()
+            isDirty = true
+        }
+    }
+
+    /**
+     * Forgets the entry at `directory` and every entry inside it.
+     */
+    @Synchronized
+    fun recordRemoval(directory: File) {
+
+        val path = relativePath(directory) ?: return
+        val prefix = "$path/"
+
+        entries.keys.filter { it == path || it.startsWith(prefix) || path.isEmpty() }.forEach { remove(it) }
+
+        isDirty = true
+    }
+
+    @Synchronized
+    fun clear() {
+
+        entries.clear()
+        collectionSizes.clear()
+        pendingDirectories.clear()
+        totalSize = 0
+        isWalking = false
+        isLoaded = true
+        isDirty = false
+
+        inventoryFile.delete()
+    }
+
+    //endregion
+
+    //region eviction
+
+    /**
+     * Does a bounded amount of work: continues the reconciliation walk of the cache directory, then
+     * selects up to `maxEvictionsPerStep` entries to evict and removes them from the inventory.
+     *
+     * Returns the paths (relative to the cache directory) of the evicted entries, to be deleted by the caller.
+     *
+     * The disk is read outside of the evictor's lock, so the cache reads recording their accesses don't wait on it.
+     */
+    fun step(): List<String> {
+
+        loadIfNeeded()
+
+        walk(maxDirectoriesPerStep)
+
+        return synchronized(this) { selectVictims() }
+    }
+
+    private fun selectVictims(): List<String> {
+
+        val now = clock()
+        val victims = LinkedHashSet<Entry>()
+
+        // expired (time to live) and stale (max age) entries first
+        entries.values.filter { it.expiresAt <= now || (maxAge > 0 && now - it.lastUsed > maxAge * 1000) }
+                .take(maxEvictionsPerStep)
+                .forEach { victims.add(it) }
+
+        // then the least recently used entries of the collections over their budget
+        if (maxCollectionSize > 0) {
+
+            collectionSizes.filter { it.value > maxCollectionSize }.keys.forEach { collection ->
+
+                var excess = collectionSizes.getValue(collection) - maxCollectionSize - victims.filter { it.collection == collection }.sumByLong { it.size }
+
+                entries.values.filter { it.collection == collection && !victims.contains(it) }.sortedBy { it.lastUsed }.forEach {
+
+                    if (excess > 0 && victims.size < maxEvictionsPerStep) {
+                        victims.add(it)
+                        excess -= it.size
+                    }
+                }
+            }
+        }
+
+        // and the least recently used entries overall if the cache is still too large
+        if (maxSize > 0) {
+
+            var excess = totalSize - maxSize - victims.sumByLong { it.size }
+
+            if (excess > 0) {
+
+                entries.values.filter { !victims.contains(it) }.sortedBy { it.lastUsed }.forEach {
+
+                    if (excess > 0 && victims.size < maxEvictionsPerStep) {
+                        victims.add(it)
+                        excess -= it.size
+                    }
+                }
+            }
+        }
+
+        victims.forEach { remove(it.path) }
+
+        if (victims.isNotEmpty()) {
+            isDirty = true
+        }
+
+        return victims.map { it.path }
+    }
+
+    /**
+     * Writes the inventory to disk if it changed since it was last persisted.
+     */
+    fun persist() {
+
+        val snapshot = synchronized(this) {
+
+            if (!isDirty) {
+                return
+            }
+
+            isDirty = false
+
+            entries.values.map { PersistedEntry(it.path, it.size, it.lastUsed, it.expiresAt) }
+        }
+
+        safeExecute {
+
+            val tmp = File(root, "$inventoryFileName.tmp")
+
+            tmp.bufferedWriter().use { gson.toJson(snapshot, it) }
+            tmp.renameTo(inventoryFile)
+        }
+    }
+
+    //endregion
+
+    //region walk
+
+    private fun loadIfNeeded() {
+
+        if (synchronized(this) { isLoaded }) {
+            return
+        }
+
+        val persisted = if (inventoryFile.exists()) safe {
+            inventoryFile.bufferedReader().use { gson.fromJson<List<PersistedEntry>>(it, object : TypeToken<List<PersistedEntry>>() {}.type) }
+        } else null
+
+        synchronized(this) {
+
+            if (isLoaded) {
+                return
+            }
+
+            isLoaded = true
+
+            // the entries recorded while the inventory was being read are more recent
+            persisted?.filter { !entries.containsKey(it.path) }?.forEach {
+                add(Entry(it.path, collectionOf(it.path), it.size, it.lastUsed, it.expiresAt))
+            }
+
+            // entries not found by the walk are dropped from the inventory once it completes
+            generation++
+            isWalking = true
+            pendingDirectories.add(root)
+        }
+    }
+
+    private class Visit(val directory: File, val path: String, val size: Long, val lastModified: Long)
+
+    private fun walk(budget: Int) {
+
+        var remaining = budget
+
+        while (remaining > 0) {
+
+            val visited = walkPending(remaining)
+
+            if (visited == 0) {
+                return
+            }
+
+            remaining -= visited
+        }
+    }
+
+    // visits the directories pending so far, up to `budget`, and returns how many were visited
+    private fun walkPending(budget: Int): Int {
+
+        val (directories, walkGeneration) = synchronized(this) {
+
+            if (!isWalking) {
+                return 0
+            }
+
+            (0 until Math.min(budget, pendingDirectories.size)).mapNotNull { pendingDirectories.pollFirst() } to generation
+        }
+
+        val visits = ArrayList<Visit>()
+        val children = ArrayList<File>()
+
+        directories.forEach { directory ->
+
+            val path = relativePath(directory) ?: return@forEach
+
+            if (isEvictable(path)) {
+                visits.add(Visit(directory, path, directory.sizeOnDisk(), directory.lastModified()))
+                return@forEach
+            }
+
+            directory.listFiles()?.forEach { child ->
+
+                when {
+                    // leftovers of invalidated queries that weren't deleted
+                    child.name.contains(deletedDirectoryMarker) -> child.deleteRecursively()
+                    child.isDirectory && isWalkable(relativePath(child)) -> children.add(child)
+                }
+            }
+        }
+
+        synchronized(this) {
+
+            // cleared while the disk was being read
+            if (!isWalking || generation != walkGeneration) {
+                return 0
+            }
+
+            visits.forEach { visit ->
+
+                val entry = entries[visit.path]
+
+                if (entry == null) {
+                    add(Entry(visit.path, collectionOf(visit.path), visit.size, visit.lastModified, noExpiration).also { it.generation = generation })
+                    isDirty = true
+                } else {
+                    entry.generation = generation
+                }
+            }
+
+            pendingDirectories.addAll(children)
+
+            if (pendingDirectories.isEmpty()) {
+
+                isWalking = false
+
+                entries.values.filter { it.generation != generation }.map { it.path }.forEach { remove(it) }
+                isDirty = true
+
+                return 0
+            }
+        }
+
+        return directories.size
+    }
+
+    //endregion
+
+    //region helpers
+
+    private fun add(entry: Entry) {
+
+        entries.put(entry.path, entry)?.let { subtract(it) }
+
+        totalSize += entry.size
+
+        entry.collection?.let { collectionSizes[it] = (collectionSizes[it] ?: 0) + entry.size }
+    }
+
+    private fun remove(path: String) {
+
+        entries.remove(path)?.let { subtract(it) }
+    }
+
+    private fun resize(entry: Entry, size: Long) {
+
+        subtract(entry)
+        entry.size = size
+        totalSize += size
+        entry.collection?.let { collectionSizes[it] = (collectionSizes[it] ?: 0) + size }
+    }
+
+    private fun subtract(entry: Entry) {
+
+        totalSize -= entry.size
+
+        entry.collection?.let {
+
+            val size = (collectionSizes[it] ?: 0) - entry.size
+
+            if (size > 0) collectionSizes[it] = size else collectionSizes.remove(it)
+        }
+    }
+
+    private fun relativePath(directory: File): String? {
+
+        val rootPath = root.absolutePath
+        val path = directory.absolutePath
+
+        if (!path.startsWith(rootPath)) {
+            return null
+        }
+
+        return path.substring(rootPath.length).trim(File.separatorChar).replace(File.separatorChar, '/')
+    }
+
+    private fun File.sizeOnDisk(): Long = walkTopDown().filter { it.isFile }.sumByLong { it.length() }
+
+    private inline fun <T> Iterable<T>.sumByLong(selector: (T) -> Long): Long {
+
+        var sum = 0L
+
+        for (element in this) {
+            sum += selector(element)
+        }
+
+        return sum
+    }
+
+    private inline fun <T> Sequence<T>.sumByLong(selector: (T) -> Long): Long = asIterable().sumByLong(selector)
+
+    //endregion
+
+    private class PersistedEntry(val path: String, val size: Long, val lastUsed: Long, val expiresAt: Long)
+
+    companion object {
+
+        const val defaultMaxSize: Long = 50L * 1024 * 1024
+
+        const val defaultMaxCollectionSize: Long = 25L * 1024 * 1024
+
+        const val defaultMaxAge: Long = 30L * 24 * 60 * 60
+
+        const val noExpiration = Long.MAX_VALUE
+
+        const val deletedDirectoryMarker = ".deleted."
+
+        private const val inventoryFileName = "inventory.json"
+
+        private const val maxDirectoriesPerStep = 256
+
+        private const val maxEvictionsPerStep = 200
+
+        /**
+         * Documents (`dbs/{db}/colls/{coll}/docs/{doc}`) and query results (`queries/{scope}/{query}`)
+         * are evicted, other resources are small and needed to make sense of them.
+         */
+        fun isEvictable(path: String): Boolean {
+
+            val segments = path.split('/')
+
+            return (segments.size == 6 && segments[0] == "dbs" && segments[2] == "colls" && segments[4] == "docs")
+                    || (segments.size == 3 && segments[0] == "queries")
+        }
+
+        // only the directories that lead to evictable entries are walked
+        private fun isWalkable(path: String?): Boolean {
+
+            val segments = path?.split('/') ?: return false
+
+            return when (segments[0]) {
+                "dbs" -> segments.size <= 6 && (segments.size < 3 || segments[2] == "colls") && (segments.size < 5 || segments[4] == "docs")
+                "queries" -> segments.size <= 3
+                else -> false
+            }
+        }
+
+        private fun collectionOf(path: String): String? {
+
+            val segments = path.split('/')
+
+            return if (segments.size == 6 && segments[0] == "dbs") segments.take(4).joinToString("/") else null
+        }
+    }
+}
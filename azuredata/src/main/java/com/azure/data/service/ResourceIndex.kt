@@ -0,0 +1,474 @@
+package com.azure.data.service
+
+import com.azure.data.model.DocumentCollection
+import com.azure.data.model.QueryPredicate
+import com.azure.data.model.SpatialPredicate
+import com.azure.data.model.indexing.IndexKind
+import com.azure.data.model.indexing.IndexingPolicy
+import com.azure.data.util.json.gson
+import com.google.gson.JsonElement
+import com.google.gson.JsonPrimitive
+import java.io.File
+import java.util.*
+
+/**
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+/**
+ * A value stored in a local index, ordered the way Cosmos DB orders values of mixed types:
+ * null < booleans < numbers < strings.
+ */
+internal data class IndexKey(val rank: Int, val number: Double = 0.0, val string: String? = null) : Comparable<IndexKey> {
+
+    override fun compareTo(other: IndexKey): Int {
+
+        if (rank != other.rank) {
+            return rank.compareTo(other.rank)
+        }
+
+        return if (rank == stringRank) (string ?: "").compareTo(other.string ?: "") else number.compareTo(other.number)
+    }
+
+    /**
+     * Evaluates `this operator value`; only values of the same type compare, as in the service, where comparing
+     * values of different types is undefined and matches nothing (`!=` included).
+     */
+    fun matches(operator: String, value: IndexKey): Boolean = when (operator) {
+
+        "="  -> this == value
+        "!=" -> rank == value.rank && this != value
+        ">"  -> rank == value.rank && this > value
+        ">=" -> rank == value.rank && this >= value
+        "<"  -> rank == value.rank && this < value
+        "<=" -> rank == value.rank && this <= value
+        else -> false
+    }
+
+    companion object {
+
+        const val nullRank = 0
+        const val booleanRank = 1
+        const val numberRank = 2
+        const val stringRank = 3
+
+        /**
+         * Returns the key for a json value, or null for undefined (missing) and non scalar values.
+         */
+        fun from(element: JsonElement?): IndexKey? {
+
+            if (element == null) {
+                return null
+            }
+
+            if (element.isJsonNull) {
+                return IndexKey(nullRank)
+            }
+
+            if (!element.isJsonPrimitive) {
+                return null
+            }
+
+            return from(element.asJsonPrimitive)
+        }
+
+        fun from(primitive: JsonPrimitive): IndexKey = when {
+
+            primitive.isBoolean -> IndexKey(booleanRank, if (primitive.asBoolean) 1.0 else 0.0)
+            primitive.isNumber  -> IndexKey(numberRank, primitive.asDouble)
+            else                -> IndexKey(stringRank, string = primitive.asString)
+        }
+
+        fun from(value: Any?): IndexKey? = when (value) {
+
+            null -> IndexKey(nullRank)
+            is Boolean -> IndexKey(booleanRank, if (value) 1.0 else 0.0)
+            is Number -> IndexKey(numberRank, value.toDouble())
+            is String -> IndexKey(stringRank, string = value)
+            else -> null
+        }
+    }
+}
+
+/**
+ * Returns the value found at the dotted `property` path (e.g. `address.city`) of this json element.
+ */
+internal fun JsonElement.valueAt(property: String): JsonElement? {
+
+    var element: JsonElement? = this
+
+    for (segment in property.split('.')) {
+
+        if (element == null || !element.isJsonObject) {
+            return null
+        }
+
+        element = element.asJsonObject.get(segment)
+    }
+
+    return element
+}
+
+/**
+ * A local index over a single scalar property path of the documents cached for a collection.
+ *
+ * Range indexes keep their keys sorted so that inequality filters can be answered with a range scan,
+ * hash indexes only answer equality filters.
+ */
+internal class PathIndex(val property: String, val kind: IndexKind) {
+
+    private val entries: MutableMap<IndexKey, MutableSet<String>> = if (kind == IndexKind.Range) TreeMap() else HashMap()
+
+    // reverse lookup so we can remove/update a document without knowing its previous value
+    private val keys: MutableMap<String, IndexKey> = HashMap()
+
+    val supportsRanges: Boolean
+        get() = kind == IndexKind.Range
+
+    fun put(selfLink: String, key: IndexKey?) {
+
+        remove(selfLink)
+
+        key?.let {
+            entries.getOrPut(it) { mutableSetOf() }.add(selfLink)
+            keys[selfLink] = it
+        }
+    }
+
+    fun remove(selfLink: String) {
+
+        keys.remove(selfLink)?.let { key ->
+
+            entries[key]?.let {
+
+                it.remove(selfLink)
+
+                if (it.isEmpty()) {
+                    entries.remove(key)
+                }
+            }
+        }
+    }
+
+    fun supports(operator: String): Boolean = when (operator) {
+
+        "=" -> true
+        ">", ">=", "<", "<=" -> supportsRanges
+        else -> false
+    }
+
+    /**
+     * Returns the self links of the documents matching `property operator value`,
+     * or null if this index can't answer the predicate.
+     */
+    fun find(operator: String, value: IndexKey): Set<String>? {
+
+        if (!supports(operator)) {
+            return null
+        }
+
+        if (operator == "=") {
+            return entries[value] ?: emptySet()
+        }
+
+        val sorted = entries as TreeMap<IndexKey, MutableSet<String>>
+
+        val range = when (operator) {
+            ">"  -> sorted.tailMap(value, false)
+            ">=" -> sorted.tailMap(value, true)
+            "<"  -> sorted.headMap(value, false).descendingMap()
+            else -> sorted.headMap(value, true).descendingMap()
+        }
+
+        val results = mutableSetOf<String>()
+
+        // keys are ordered by type first, so we can stop as soon as we leave the value's type
+        for ((key, links) in range) {
+
+            if (key.rank != value.rank) {
+                break
+            }
+
+            results.addAll(links)
+        }
+
+        return results
+    }
+
+    fun toPersisted(): PersistedIndex =
+            PersistedIndex(property, kind, entries.map { PersistedIndexEntry(it.key, it.value.toList()) })
+
+    companion object {
+
+        fun fromPersisted(persisted: PersistedIndex): PathIndex {
+
+            val index = PathIndex(persisted.property, persisted.kind)
+
+            persisted.entries.forEach { entry ->
+                entry.links.forEach { index.put(it, entry.key) }
+            }
+
+            return index
+        }
+    }
+}
+
+internal class PersistedIndex(val property: String, val kind: IndexKind, val entries: List<PersistedIndexEntry>)
+
+internal class PersistedIndexEntry(val key: IndexKey, val links: List<String>)
+
+/**
+ * The set of local indexes for one cached collection, built from the paths declared in the collection's `IndexingPolicy`.
+ */
+internal class CollectionIndex(private val directory: File, val paths: Map<String, IndexKind>, val spatialPaths: Set<String> = emptySet()) {
+
+    private val indexes: Map<String, PathIndex> = paths.mapValues { (property, kind) -> load(property, kind) }
+
+    private val spatialIndexes: Map<String, SpatialPathIndex> = spatialPaths.associate { it to loadSpatial(it) }
+
+    private var isDirty = false
+
+    val isEmpty: Boolean
+        get() = indexes.isEmpty() && spatialIndexes.isEmpty()
+
+    val needsRebuild: Boolean
+        get() = indexes.keys.any { !indexFile(it).exists() } || spatialIndexes.keys.any { !spatialIndexFile(it).exists() }
+
+    @Synchronized
+    fun put(selfLink: String, json: JsonElement) {
+
+        if (isEmpty) {
+            return
+        }
+
+        indexes.values.forEach { it.put(selfLink, IndexKey.from(json.valueAt(it.property))) }
+        spatialIndexes.values.forEach { it.put(selfLink, json.valueAt(it.property)) }
+
+        isDirty = true
+    }
+
+    @Synchronized
+    fun remove(selfLink: String) {
+
+        indexes.values.forEach { it.remove(selfLink) }
+        spatialIndexes.values.forEach { it.remove(selfLink) }
+
+        isDirty = true
+    }
+
+    /**
+     * Returns the self links of the documents that may match all of the predicates, intersecting the results
+     * of every predicate an index can answer, or null if none of the predicates are backed by an index.
+     */
+    @Synchronized
+    fun find(predicates: List<QueryPredicate>, spatialPredicates: List<SpatialPredicate> = emptyList()): Set<String>? {
+
+        var results: MutableSet<String>? = null
+
+        val matchesPerPredicate = predicates.asSequence().map { predicate ->
+            IndexKey.from(predicate.value)?.let { indexes[predicate.property]?.find(predicate.operator, it) }
+        } + spatialPredicates.asSequence().map { spatialIndexes[it.property]?.find(it) }
+
+        for (matches in matchesPerPredicate) {
+
+            if (matches == null) {
+                continue
+            }
+
+            results = results?.apply { retainAll(matches) } ?: matches.toMutableSet()
+
+            if (results.isEmpty()) {
+                break
+            }
+        }
+
+        return results
+    }
+
+    @Synchronized
+    fun persist() {
+
+        if (!isDirty) {
+            return
+        }
+
+        val indexesDir = File(directory, indexesDirectoryName)
+
+        if (!indexesDir.exists()) {
+            indexesDir.mkdirs()
+        }
+
+        indexes.values.forEach { index ->
+            indexFile(index.property).bufferedWriter().use { it.write(gson.toJson(index.toPersisted())) }
+        }
+
+        spatialIndexes.values.forEach { index ->
+            spatialIndexFile(index.property).bufferedWriter().use { it.write(gson.toJson(index.toPersisted())) }
+        }
+
+        isDirty = false
+    }
+
+    private fun load(property: String, kind: IndexKind): PathIndex {
+
+        val file = indexFile(property)
+
+        if (file.exists()) {
+
+            safe {
+                file.bufferedReader().use { gson.fromJson(it, PersistedIndex::class.java) }
+            }?.let {
+                if (it.kind == kind) {
+                    return PathIndex.fromPersisted(it)
+                }
+            }
+        }
+
+        return PathIndex(property, kind)
+    }
+
+    private fun loadSpatial(property: String): SpatialPathIndex {
+
+        val file = spatialIndexFile(property)
+
+        if (file.exists()) {
+
+            safe {
+                file.bufferedReader().use { gson.fromJson(it, PersistedSpatialIndex::class.java) }
+            }?.let {
+                return SpatialPathIndex.fromPersisted(it)
+            }
+        }
+
+        return SpatialPathIndex(property)
+    }
+
+    private fun indexFile(property: String): File =
+            File(File(directory, indexesDirectoryName), "${property.replace(unsafeFileCharacters, "_")}.${property.hashCode().toString(16)}.json")
+
+    private fun spatialIndexFile(property: String): File =
+            File(File(directory, indexesDirectoryName), "${property.replace(unsafeFileCharacters, "_")}.${property.hashCode().toString(16)}.spatial.json")
+
+    companion object {
+
+        const val indexesDirectoryName = "indexes"
+
+        private val unsafeFileCharacters = Regex("[^A-Za-z0-9_.-]")
+
+        /**
+         * Maps the scalar paths included by the policy (e.g. `/address/city/?`) to their dotted
+         * property name (`address.city`) and the kind of local index to maintain for them.
+         * Wildcard and array paths aren't indexed locally.
+         */
+        fun indexedPaths(policy: IndexingPolicy?): Map<String, IndexKind> {
+
+            val paths = mutableMapOf<String, IndexKind>()
+
+            forEachScalarPath(policy) { property, kinds ->
+
+                when {
+                    // Cosmos DB treats paths without explicit indexes as range indexed
+                    kinds.isEmpty() || kinds.contains(IndexKind.Range) -> paths[property] = IndexKind.Range
+                    kinds.contains(IndexKind.Hash) -> paths[property] = IndexKind.Hash
+                }
+            }
+
+            return paths
+        }
+
+        /**
+         * Returns the dotted property names of the paths the policy has spatial indexes on.
+         */
+        fun spatialPaths(policy: IndexingPolicy?): Set<String> {
+
+            val paths = mutableSetOf<String>()
+
+            forEachScalarPath(policy) { property, kinds ->
+
+                if (kinds.contains(IndexKind.Spatial)) {
+                    paths.add(property)
+                }
+            }
+
+            return paths
+        }
+
+        private fun forEachScalarPath(policy: IndexingPolicy?, action: (String, List<IndexKind>) -> Unit) {
+
+            policy?.includedPaths?.forEach { includedPath ->
+
+                val path = includedPath.path ?: return@forEach
+
+                if (!path.endsWith("/?") || path.contains('*') || path.contains("[]")) {
+                    return@forEach
+                }
+
+                val property = path.removeSuffix("/?").trim('/').replace('/', '.')
+
+                if (property.isEmpty()) {
+                    return@forEach
+                }
+
+                action(property, includedPath.indexes?.mapNotNull { it.kind } ?: emptyList())
+            }
+        }
+    }
+}
+
+/**
+ * Keeps the local indexes of every cached collection, keyed by the collection's self link.
+ */
+internal class ResourceIndexCache {
+
+    private val collectionIndexes: MutableMap<String, CollectionIndex> = mutableMapOf()
+
+    @Synchronized
+    fun register(collection: DocumentCollection, directory: File): CollectionIndex {
+
+        val paths = CollectionIndex.indexedPaths(collection.indexingPolicy)
+        val spatialPaths = CollectionIndex.spatialPaths(collection.indexingPolicy)
+
+        collectionIndexes[directory.absolutePath]?.let { existing ->
+
+            if (existing.paths == paths && existing.spatialPaths == spatialPaths) {
+                return existing
+            }
+
+            safeExecute { existing.persist() }
+        }
+
+        val index = CollectionIndex(directory, paths, spatialPaths)
+
+        collectionIndexes[directory.absolutePath] = index
+
+        return index
+    }
+
+    @Synchronized
+    fun get(directory: File, loadCollection: () -> DocumentCollection?): CollectionIndex? {
+
+        collectionIndexes[directory.absolutePath]?.let { return it }
+
+        return loadCollection()?.let { register(it, directory) }
+    }
+
+    @Synchronized
+    fun remove(directory: File) {
+
+        collectionIndexes.remove(directory.absolutePath)
+    }
+
+    @Synchronized
+    fun purge() {
+
+        collectionIndexes.clear()
+    }
+
+    fun persist() {
+
+        val indexes = synchronized(this) { collectionIndexes.values.toList() }
+
+        indexes.forEach { safeExecute { it.persist() } }
+    }
+}
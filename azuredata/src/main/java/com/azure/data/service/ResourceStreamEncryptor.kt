@@ -0,0 +1,42 @@
+package com.azure.data.service
+
+import android.util.Base64
+import java.io.ByteArrayOutputStream
+import java.io.InputStream
+import java.io.OutputStream
+
+/**
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+/**
+ * A ResourceEncryptor that encrypts the cache entries as they're streamed to and from disk.
+ *
+ * Unlike with a string based ResourceEncryptor, the entries are compressed before being encrypted
+ * and never held in memory as (Base64) strings.
+ */
+interface ResourceStreamEncryptor : ResourceEncryptor {
+
+    /**
+     * Returns a stream that encrypts what's written to it to `output`. Closing it closes `output`.
+     */
+    fun encrypt(output: OutputStream): OutputStream
+
+    /**
+     * Returns a stream of the decrypted content of `input`. Closing it closes `input`.
+     */
+    fun decrypt(input: InputStream): InputStream
+
+    override fun encrypt(data: String): String {
+
+        val output = ByteArrayOutputStream()
+
+        encrypt(output).use { it.write(data.toByteArray(Charsets.UTF_8)) }
+
+        return Base64.encodeToString(output.toByteArray(), Base64.NO_WRAP)
+    }
+
+    override fun decrypt(data: String): String =
+            decrypt(Base64.decode(data, Base64.NO_WRAP).inputStream()).use { String(it.readBytes(), Charsets.UTF_8) }
+}
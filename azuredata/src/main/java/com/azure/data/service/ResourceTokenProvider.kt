@@ -14,12 +14,28 @@ import java.util.*
  * Licensed under the MIT License.
  */
 
-class ResourceTokenProvider(private val masterKey: String, private val permissionMode: PermissionMode) {
+class ResourceTokenProvider internal constructor(
+        private val masterKey: String,
+        private val permissionMode: PermissionMode,
+        private val clock: () -> Long
+) {
+
+    constructor(masterKey: String, permissionMode: PermissionMode) : this(masterKey, permissionMode, { System.currentTimeMillis() })
 
     private val tokenVersion = "1.0"
 
     private val dateFormatter = DateUtil.getDateFromatter(DateUtil.Format.Rfc1123Format)
 
+    // the x-ms-date of the current second and the tokens signed with it: a token only depends on the
+    // verb, resource and date, so repeated requests within the same second reuse it
+    private class Second(val time: Long, val dateString: String) {
+
+        val tokens: MutableMap<String, ResourceToken> = HashMap()
+    }
+
+    @Volatile
+    private var second: Second? = null
+
     // https://docs.microsoft.com/en-us/rest/api/documentdb/access-control-on-documentdb-resources#constructkeytoken
     fun getToken(resourceLocation: ResourceLocation, method: HttpMethod) : ResourceToken? {
 
@@ -27,18 +43,59 @@ class ResourceTokenProvider(private val masterKey: String, private val permissio
             return null
         }
 
-        val dateString = String.format("%s %s", dateFormatter.format(Date()), "GMT")
+        val second = currentSecond()
+        val verb = method.name.toLowerCase(Locale.ROOT)
+        val resourceType = resourceLocation.type().toLowerCase(Locale.ROOT)
+        val resourceLink = resourceLocation.link()
+        val key = "$verb\n$resourceType\n$resourceLink"
+
+        synchronized(second) {
+            second.tokens[key]?.let { return it }
+        }
 
         val payload = String.format("%s\n%s\n%s\n%s\n\n",
-                method.name.toLowerCase(Locale.ROOT),
-                resourceLocation.type().toLowerCase(Locale.ROOT),
-                resourceLocation.link(),
-                dateString.toLowerCase(Locale.ROOT))
+                verb,
+                resourceType,
+                resourceLink,
+                second.dateString.toLowerCase(Locale.ROOT))
 
         val signature = CryptoProvider.hmacEncrypt(payload, masterKey)
 
         val authStringEncoded = String.format("type=master&ver=%s&sig=%s", tokenVersion, signature).urlEncode()
 
-        return ResourceToken(authStringEncoded, dateString)
+        val token = ResourceToken(authStringEncoded, second.dateString)
+
+        synchronized(second) {
+
+            if (second.tokens.size < maxCachedTokens) {
+                second.tokens[key] = token
+            }
+        }
+
+        return token
+    }
+
+    private fun currentSecond(): Second {
+
+        val time = clock() / 1000
+
+        second?.let {
+            if (it.time == time) return it
+        }
+
+        // the formatter isn't thread safe
+        synchronized(this) {
+
+            second?.let {
+                if (it.time == time) return it
+            }
+
+            return Second(time, String.format("%s %s", dateFormatter.format(Date(time * 1000)), "GMT")).also { second = it }
+        }
+    }
+
+    companion object {
+
+        internal const val maxCachedTokens = 64
     }
-}
\ No newline at end of file
+}
@@ -123,6 +123,12 @@ class ResourceWriteOperationQueue {
 
     //region
 
+    // waits for the pending writes to be loaded: the load is the first task of the executor
+    internal fun awaitLoad() {
+
+        executor.submit { }.get()
+    }
+
     private fun load() {
 
         safeExecute {
@@ -130,7 +136,7 @@ class ResourceWriteOperationQueue {
             executor.execute {
 
                 writes = ContextProvider.appContext.pendingWritesFiles()
-                        .map { it.bufferedReader().use { reader -> gson.fromJson(reader.readText(), ResourceWriteOperation::class.java) } }
+                        .map { gson.fromJson(CacheEncoding.decodeToString(it.readBytes()), ResourceWriteOperation::class.java) }
                         .toMutableList()
             }
         }
@@ -297,6 +303,7 @@ class ResourceWriteOperationQueue {
             ResourceOracle.shared.storeLinks(selfLink, altLink)
             resource.altLink = altLink
             ResourceCache.shared.cache(resource)
+            ResourceCache.shared.invalidateQueries(resource)
 
             val request = okhttp3.Request.Builder()
                     .url("https://localhost/$selfLink")
@@ -362,7 +369,7 @@ class ResourceWriteOperationQueue {
         safeExecute {
             ContextProvider.appContext
                     .resourceWriteOperationFile(write)
-                    .bufferedWriter().use { it.write(gson.toJson(write)) }
+                    .writeBytes(CacheEncoding.encode(gson.toJsonTree(write)))
         }
     }
 
@@ -0,0 +1,89 @@
+package com.azure.data.service
+
+import com.azure.data.model.service.ResourceLocation
+import com.azure.data.model.service.ResourceType
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+/**
+ * Keeps the latest session token of each collection's partition key ranges, as returned in the `x-ms-session-token`
+ * header, so they can be sent back with the following requests to the collection: with session consistency,
+ * reads then see the writes made before them.
+ *
+ * A token is a list of `<partition key range id>:<session>` separated by commas, where the session is the range's
+ * logical sequence number (LSN), or `<version>#<LSN>#...` in newer versions. The token with the highest LSN is kept for each range.
+ */
+internal class SessionContainer private constructor() {
+
+    companion object {
+        val shared = SessionContainer()
+    }
+
+    // typed as ConcurrentHashMap so putIfAbsent is its own rather than the Map default added in API 24
+    private val sessions = ConcurrentHashMap<String, ConcurrentHashMap<String, String>>()
+
+    fun setSessionToken(location: ResourceLocation, sessionToken: String) {
+
+        val link = collectionLink(location) ?: return
+        val ranges = sessions[link] ?: ConcurrentHashMap<String, String>().let { sessions.putIfAbsent(link, it) ?: it }
+
+        sessionToken.split(',').forEach { token ->
+
+            val separator = token.indexOf(':')
+
+            if (separator > 0) {
+
+                val rangeId = token.substring(0, separator)
+
+                synchronized(ranges) {
+
+                    val current = ranges[rangeId]
+
+                    if (current == null || lsn(token) > lsn(current)) {
+                        ranges[rangeId] = token
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the session token to send with a request to `location`: only the range's if `partitionKeyRangeId` is given,
+     * otherwise all the collection's.
+     */
+    fun getSessionToken(location: ResourceLocation, partitionKeyRangeId: String? = null): String? {
+
+        val ranges = collectionLink(location)?.let { sessions[it] } ?: return null
+
+        if (partitionKeyRangeId != null) {
+            return ranges[partitionKeyRangeId]
+        }
+
+        return ranges.values.joinToString(",").takeIf { it.isNotEmpty() }
+    }
+
+    fun clear() = sessions.clear()
+
+    private fun lsn(token: String): Long {
+
+        val session = token.substringAfter(':').split('#')
+
+        return (if (session.size > 1) session[1] else session[0]).toLongOrNull() ?: -1
+    }
+
+    private fun collectionLink(location: ResourceLocation): String? {
+
+        val ancestorIds = location.ancestorIds()
+        val databaseId = ancestorIds[ResourceType.Database] ?: return null
+
+        val collectionId = ancestorIds[ResourceType.Collection]
+                ?: location.id().takeIf { location.resourceType == ResourceType.Collection }
+                ?: return null
+
+        return "dbs/$databaseId/colls/$collectionId"
+    }
+}
@@ -0,0 +1,403 @@
+package com.azure.data.service
+
+import com.azure.data.model.SpatialFunction
+import com.azure.data.model.SpatialPredicate
+import com.azure.data.model.spatial.LineSegmentObject
+import com.azure.data.model.spatial.LineString
+import com.azure.data.model.spatial.Point
+import com.azure.data.model.spatial.Polygon
+import com.azure.data.model.spatial.SpatialObject
+import com.azure.data.util.GeoMath
+import com.azure.data.util.json.gson
+import com.google.gson.JsonElement
+import kotlin.math.abs
+import kotlin.math.ceil
+import kotlin.math.cos
+import kotlin.math.max
+import kotlin.math.min
+import kotlin.math.sqrt
+
+/**
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+/**
+ * A longitude/latitude bounding box.
+ */
+internal data class GeoBounds(val minLongitude: Double, val minLatitude: Double, val maxLongitude: Double, val maxLatitude: Double) {
+
+    val area: Double
+        get() = (maxLongitude - minLongitude) * (maxLatitude - minLatitude)
+
+    val centerLongitude: Double
+        get() = (minLongitude + maxLongitude) / 2
+
+    val centerLatitude: Double
+        get() = (minLatitude + maxLatitude) / 2
+
+    fun intersects(other: GeoBounds): Boolean =
+            minLongitude <= other.maxLongitude && other.minLongitude <= maxLongitude &&
+            minLatitude <= other.maxLatitude && other.minLatitude <= maxLatitude
+
+    fun union(other: GeoBounds): GeoBounds =
+            GeoBounds(min(minLongitude, other.minLongitude), min(minLatitude, other.minLatitude),
+                      max(maxLongitude, other.maxLongitude), max(maxLatitude, other.maxLatitude))
+
+    fun enlargement(other: GeoBounds): Double = union(other).area - area
+
+    /**
+     * Returns a box containing every location within `meters` of this box. The box is widened to every
+     * longitude when it gets close to a pole or crosses the antimeridian.
+     */
+    fun expandedBy(meters: Double): GeoBounds {
+
+        val latitudeDelta = Math.toDegrees(meters / GeoMath.earthRadius)
+        val minLat = max(-90.0, minLatitude - latitudeDelta)
+        val maxLat = min(90.0, maxLatitude + latitudeDelta)
+        val widestLatitude = max(abs(minLat), abs(maxLat))
+
+        if (widestLatitude >= 89.0) {
+            return GeoBounds(-180.0, minLat, 180.0, maxLat)
+        }
+
+        val longitudeDelta = latitudeDelta / cos(Math.toRadians(widestLatitude))
+
+        if (minLongitude - longitudeDelta < -180.0 || maxLongitude + longitudeDelta > 180.0) {
+            return GeoBounds(-180.0, minLat, 180.0, maxLat)
+        }
+
+        return GeoBounds(minLongitude - longitudeDelta, minLat, maxLongitude + longitudeDelta, maxLat)
+    }
+
+    companion object {
+
+        fun of(spatial: SpatialObject): GeoBounds? = when (spatial) {
+
+            is Point -> GeoBounds(spatial.longitude, spatial.latitude, spatial.longitude, spatial.latitude)
+            is LineSegmentObject -> spatial.coordinates.takeIf { it.isNotEmpty() }?.let { coordinates ->
+                GeoBounds(coordinates.map { it[0] }.min()!!, coordinates.map { it[1] }.min()!!,
+                          coordinates.map { it[0] }.max()!!, coordinates.map { it[1] }.max()!!)
+            }
+            else -> null
+        }
+    }
+}
+
+/**
+ * Decodes the GeoJSON Point, LineString or Polygon stored in this json element.
+ */
+internal fun JsonElement.toSpatialObject(): SpatialObject? {
+
+    if (!isJsonObject) {
+        return null
+    }
+
+    return safe {
+        when (asJsonObject.get("type")?.asString) {
+            "Point" -> gson.fromJson(this, Point::class.java)
+            "Polygon" -> gson.fromJson(this, Polygon::class.java)
+            "LineString" -> gson.fromJson(this, LineString::class.java)
+            else -> null
+        }
+    }
+}
+
+/**
+ * Returns true if the spatial value of this document satisfies the predicate.
+ */
+internal fun SpatialPredicate.matches(value: SpatialObject): Boolean = when (function) {
+
+    SpatialFunction.Intersects -> GeoMath.intersects(value, spatial)
+    SpatialFunction.Within -> GeoMath.within(value, spatial)
+    SpatialFunction.Distance -> {
+
+        val actual = GeoMath.distance(value, spatial)
+        val expected = distance ?: 0.0
+
+        when (operator) {
+            "=" -> actual == expected
+            ">" -> actual > expected
+            ">=" -> actual >= expected
+            "<" -> actual < expected
+            "<=" -> actual <= expected
+            else -> false
+        }
+    }
+}
+
+/**
+ * Returns the area the spatial values matching the predicate must overlap,
+ * or null if the predicate can't be answered from bounding boxes (e.g. `ST_DISTANCE(...) > x`).
+ */
+internal fun SpatialPredicate.searchBounds(): GeoBounds? {
+
+    val bounds = GeoBounds.of(spatial) ?: return null
+
+    return when (function) {
+
+        SpatialFunction.Intersects, SpatialFunction.Within -> bounds
+        SpatialFunction.Distance -> when (operator) {
+            "=", "<", "<=" -> bounds.expandedBy(distance ?: 0.0)
+            else -> null
+        }
+    }
+}
+
+internal class RTreeEntry(val link: String, val bounds: GeoBounds)
+
+/**
+ * An in-memory R-tree of bounding boxes. It's bulk loaded with the Sort-Tile-Recursive algorithm when
+ * restored from disk, and kept up to date with incremental inserts and removals as documents are cached.
+ */
+internal class RTree(private val maxEntries: Int = defaultMaxEntries) {
+
+    private class Node(val isLeaf: Boolean) {
+
+        var bounds: GeoBounds? = null
+
+        val children: MutableList<Node> = mutableListOf()
+
+        val entries: MutableList<RTreeEntry> = mutableListOf()
+
+        val size: Int
+            get() = if (isLeaf) entries.size else children.size
+
+        fun recalculateBounds() {
+
+            val all = if (isLeaf) entries.map { it.bounds } else children.mapNotNull { it.bounds }
+
+            bounds = if (all.isEmpty()) null else all.reduce { acc, bounds -> acc.union(bounds) }
+        }
+    }
+
+    private var root = Node(true)
+
+    var count = 0
+        private set
+
+    fun search(area: GeoBounds): List<String> {
+
+        val results = mutableListOf<String>()
+        val stack = mutableListOf(root)
+
+        while (stack.isNotEmpty()) {
+
+            val node = stack.removeAt(stack.size - 1)
+
+            if (node.bounds?.intersects(area) != true) {
+                continue
+            }
+
+            if (node.isLeaf) {
+                node.entries.forEach { if (it.bounds.intersects(area)) results.add(it.link) }
+            } else {
+                stack.addAll(node.children)
+            }
+        }
+
+        return results
+    }
+
+    fun insert(entry: RTreeEntry) {
+
+        insert(root, entry)?.let { sibling ->
+
+            val newRoot = Node(false)
+
+            newRoot.children.add(root)
+            newRoot.children.add(sibling)
+            newRoot.recalculateBounds()
+
+            root = newRoot
+        }
+
+        count++
+    }
+
+    fun remove(link: String, bounds: GeoBounds) {
+
+        if (remove(root, link, bounds)) {
+
+            count--
+
+            // collapse the tree when the root is left with a single child
+            while (!root.isLeaf && root.children.size == 1) {
+                root = root.children[0]
+            }
+
+            if (!root.isLeaf && root.children.isEmpty()) {
+                root = Node(true)
+            }
+        }
+    }
+
+    // returns the new sibling of the node when it had to be split
+    private fun insert(node: Node, entry: RTreeEntry): Node? {
+
+        node.bounds = node.bounds?.union(entry.bounds) ?: entry.bounds
+
+        if (node.isLeaf) {
+            node.entries.add(entry)
+        } else {
+
+            val child = node.children.minWith(compareBy<Node>({ it.bounds!!.enlargement(entry.bounds) }, { it.bounds!!.area }))!!
+
+            insert(child, entry)?.let { node.children.add(it) }
+        }
+
+        return if (node.size > maxEntries) split(node) else null
+    }
+
+    // moves the upper half of the node, sorted along its longest axis, to a new sibling
+    private fun split(node: Node): Node {
+
+        val bounds = node.bounds!!
+        val byLongitude = bounds.maxLongitude - bounds.minLongitude >= bounds.maxLatitude - bounds.minLatitude
+        val sibling = Node(node.isLeaf)
+
+        if (node.isLeaf) {
+
+            val sorted = node.entries.sortedBy { if (byLongitude) it.bounds.centerLongitude else it.bounds.centerLatitude }
+
+            node.entries.clear()
+            node.entries.addAll(sorted.subList(0, sorted.size / 2))
+            sibling.entries.addAll(sorted.subList(sorted.size / 2, sorted.size))
+        } else {
+
+            val sorted = node.children.sortedBy { if (byLongitude) it.bounds!!.centerLongitude else it.bounds!!.centerLatitude }
+
+            node.children.clear()
+            node.children.addAll(sorted.subList(0, sorted.size / 2))
+            sibling.children.addAll(sorted.subList(sorted.size / 2, sorted.size))
+        }
+
+        node.recalculateBounds()
+        sibling.recalculateBounds()
+
+        return sibling
+    }
+
+    private fun remove(node: Node, link: String, bounds: GeoBounds): Boolean {
+
+        if (node.bounds?.intersects(bounds) != true) {
+            return false
+        }
+
+        val removed = if (node.isLeaf) {
+            node.entries.removeAll { it.link == link }
+        } else {
+
+            val child = node.children.firstOrNull { remove(it, link, bounds) }
+
+            if (child != null && child.size == 0) {
+                node.children.remove(child)
+            }
+
+            child != null
+        }
+
+        if (removed) {
+            node.recalculateBounds()
+        }
+
+        return removed
+    }
+
+    companion object {
+
+        const val defaultMaxEntries = 16
+
+        fun bulkLoad(entries: List<RTreeEntry>, maxEntries: Int = defaultMaxEntries): RTree {
+
+            val tree = RTree(maxEntries)
+
+            if (entries.isEmpty()) {
+                return tree
+            }
+
+            var level = pack(entries, maxEntries, { it.bounds }) { group ->
+                Node(true).apply {
+                    this.entries.addAll(group)
+                    recalculateBounds()
+                }
+            }
+
+            while (level.size > 1) {
+
+                level = pack(level, maxEntries, { it.bounds!! }) { group ->
+                    Node(false).apply {
+                        children.addAll(group)
+                        recalculateBounds()
+                    }
+                }
+            }
+
+            tree.root = level[0]
+            tree.count = entries.size
+
+            return tree
+        }
+
+        // Sort-Tile-Recursive: sort by longitude into vertical slices, then by latitude within each slice
+        private fun <T> pack(items: List<T>, maxEntries: Int, boundsOf: (T) -> GeoBounds, makeNode: (List<T>) -> Node): List<Node> {
+
+            val nodeCount = ceil(items.size.toDouble() / maxEntries)
+            val sliceCount = ceil(sqrt(nodeCount)).toInt()
+            val sliceSize = maxEntries * ceil(nodeCount / sliceCount).toInt()
+
+            return items
+                    .sortedBy { boundsOf(it).centerLongitude }
+                    .chunked(sliceSize)
+                    .flatMap { slice ->
+                        slice.sortedBy { boundsOf(it).centerLatitude }.chunked(maxEntries).map(makeNode)
+                    }
+        }
+    }
+}
+
+/**
+ * A local spatial index over a single property path of the documents cached for a collection.
+ */
+internal class SpatialPathIndex(val property: String, entries: List<RTreeEntry> = emptyList()) {
+
+    private val bounds: MutableMap<String, GeoBounds> = entries.associateTo(HashMap()) { it.link to it.bounds }
+
+    private var tree = RTree.bulkLoad(entries)
+
+    fun put(selfLink: String, value: JsonElement?) {
+
+        remove(selfLink)
+
+        value?.toSpatialObject()?.let { GeoBounds.of(it) }?.let {
+
+            bounds[selfLink] = it
+            tree.insert(RTreeEntry(selfLink, it))
+        }
+    }
+
+    fun remove(selfLink: String) {
+
+        bounds.remove(selfLink)?.let { tree.remove(selfLink, it) }
+    }
+
+    /**
+     * Returns the self links of the documents whose spatial value may satisfy the predicate,
+     * or null if this index can't narrow it down.
+     */
+    fun find(predicate: SpatialPredicate): Set<String>? =
+            predicate.searchBounds()?.let { tree.search(it).toSet() }
+
+    fun toPersisted(): PersistedSpatialIndex =
+            PersistedSpatialIndex(property, bounds.map { PersistedSpatialIndexEntry(it.key, it.value) })
+
+    companion object {
+
+        fun fromPersisted(persisted: PersistedSpatialIndex): SpatialPathIndex =
+                SpatialPathIndex(persisted.property, persisted.entries.map { RTreeEntry(it.link, it.bounds) })
+    }
+}
+
+internal class PersistedSpatialIndex(val property: String, val entries: List<PersistedSpatialIndexEntry>)
+
+internal class PersistedSpatialIndexEntry(val link: String, val bounds: GeoBounds)
@@ -0,0 +1,117 @@
+package com.azure.data.service
+
+import com.azure.core.log.d
+import com.azure.core.util.ContextProvider
+import com.azure.data.model.*
+import com.azure.data.util.ResourceOracle
+import com.azure.data.util.json.gson
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+
+/**
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+/**
+ * Loads the state persisted by the client (resource links, permissions, pending offline writes) in the background,
+ * in parallel, once it's configured, so configuring the client doesn't block on large caches.
+ *
+ * Requests don't wait for the warm-up: until a store is loaded, they run against what has been loaded so far.
+ */
+internal class WarmUp private constructor() {
+
+    companion object {
+        val shared = WarmUp()
+    }
+
+    private val executor: ExecutorService = Executors.newCachedThreadPool()
+
+    // not ready until a warm-up started and completed
+    private var latch = CountDownLatch(1)
+
+    private val readyCallbacks: MutableList<() -> Unit> = mutableListOf()
+
+    val isReady: Boolean
+        get() = latch.count == 0L
+
+    fun start() {
+
+        val tasks = listOf<() -> Unit>(
+                { ResourceOracle.shared.load(ContextProvider.appContext) },
+                { PermissionCache.shared.restore(ContextProvider.appContext) },
+                { ResourceWriteOperationQueue.shared.awaitLoad() },
+                { warmUpSerialization() }
+        )
+
+        val latch = CountDownLatch(tasks.size)
+        val start = System.currentTimeMillis()
+
+        synchronized(this) {
+            this.latch = latch
+        }
+
+        tasks.forEach { task ->
+
+            executor.execute {
+
+                safeExecute { task() }
+
+                latch.countDown()
+
+                if (latch.count == 0L) {
+
+                    d { "Warm-up completed in ${System.currentTimeMillis() - start} ms" }
+                    notifyReady(latch)
+                }
+            }
+        }
+    }
+
+    /**
+     * Calls `callback` once the warm-up completes, on the thread that completes it, or right away if it's already completed.
+     */
+    fun onReady(callback: () -> Unit) {
+
+        synchronized(this) {
+
+            if (!isReady) {
+                readyCallbacks.add(callback)
+                return
+            }
+        }
+
+        callback()
+    }
+
+    /**
+     * Waits for the warm-up to complete, returns false if it didn't within the timeout.
+     */
+    fun await(timeout: Long, unit: TimeUnit): Boolean = latch.await(timeout, unit)
+
+    private fun notifyReady(latch: CountDownLatch) {
+
+        val callbacks = synchronized(this) {
+
+            // a newer warm-up started in the meantime, its callbacks wait for it
+            if (latch !== this.latch) {
+                return
+            }
+
+            readyCallbacks.toList().also { readyCallbacks.clear() }
+        }
+
+        callbacks.forEach { safeExecute { it() } }
+    }
+
+    // gson builds the (reflective) type adapters of a type the first time it's used
+    private fun warmUpSerialization() {
+
+        listOf(Database::class.java, DocumentCollection::class.java, Document::class.java, Permission::class.java,
+                User::class.java, Attachment::class.java, Offer::class.java).forEach {
+            gson.getAdapter(it)
+        }
+    }
+}
@@ -0,0 +1,233 @@
+package com.azure.data.util
+
+import com.azure.data.model.spatial.LineSegmentObject
+import com.azure.data.model.spatial.Point
+import com.azure.data.model.spatial.Polygon
+import com.azure.data.model.spatial.SpatialObject
+import kotlin.math.asin
+import kotlin.math.cos
+import kotlin.math.max
+import kotlin.math.min
+import kotlin.math.sin
+import kotlin.math.sqrt
+
+/**
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+/**
+ * Geometry helpers used to evaluate spatial queries against locally cached documents.
+ *
+ * Distances are great-circle (haversine) distances in meters, like `ST_DISTANCE`. Polygon containment and
+ * edge intersections are computed in the longitude/latitude plane, which is accurate for the regions we
+ * query offline (a few kilometers) but ignores the curvature of long edges.
+ */
+internal object GeoMath {
+
+    // mean earth radius, in meters
+    const val earthRadius = 6371008.8
+
+    // tolerance used when comparing coordinates, ~1cm at the equator
+    private const val epsilon = 1e-7
+
+    fun distance(fromLongitude: Double, fromLatitude: Double, toLongitude: Double, toLatitude: Double): Double {
+
+        val lat1 = Math.toRadians(fromLatitude)
+        val lat2 = Math.toRadians(toLatitude)
+        val dLat = lat2 - lat1
+        val dLon = Math.toRadians(toLongitude - fromLongitude)
+
+        val h = sin(dLat / 2) * sin(dLat / 2) + cos(lat1) * cos(lat2) * sin(dLon / 2) * sin(dLon / 2)
+
+        return 2 * earthRadius * asin(min(1.0, sqrt(h)))
+    }
+
+    fun distance(from: SpatialObject, to: SpatialObject): Double = when {
+
+        from is Point && to is Point -> distance(from.longitude, from.latitude, to.longitude, to.latitude)
+        from is Point && to is LineSegmentObject -> distance(from, to)
+        from is LineSegmentObject && to is Point -> distance(to, from)
+        from is LineSegmentObject && to is LineSegmentObject -> {
+
+            if (intersects(from, to)) 0.0 else min(from.coordinates.map { distance(it.toPoint(), to) }.min() ?: Double.MAX_VALUE,
+                                                   to.coordinates.map { distance(it.toPoint(), from) }.min() ?: Double.MAX_VALUE)
+        }
+        else -> Double.MAX_VALUE
+    }
+
+    /**
+     * Returns the distance from the point to the closest point of the line string or polygon (0 if inside the polygon).
+     */
+    fun distance(point: Point, shape: LineSegmentObject): Double {
+
+        if (shape is Polygon && contains(shape, point)) {
+            return 0.0
+        }
+
+        val coordinates = shape.coordinates
+
+        if (coordinates.size == 1) {
+            return distance(point, coordinates[0].toPoint())
+        }
+
+        var closest = Double.MAX_VALUE
+
+        for (i in 0 until coordinates.size - 1) {
+            closest = min(closest, segmentDistance(point, coordinates[i], coordinates[i + 1]))
+        }
+
+        return closest
+    }
+
+    fun intersects(first: SpatialObject, second: SpatialObject): Boolean = when {
+
+        first is Point && second is Point -> samePoint(first.longitude, first.latitude, second.longitude, second.latitude)
+        first is Point && second is Polygon -> contains(second, first) || onBoundary(first, second)
+        first is Polygon && second is Point -> intersects(second, first)
+        first is Point && second is LineSegmentObject -> onBoundary(first, second)
+        first is LineSegmentObject && second is Point -> onBoundary(second, first)
+        first is LineSegmentObject && second is LineSegmentObject -> {
+
+            edgesCross(first, second)
+                    || (second is Polygon && first.coordinates.any { contains(second, it.toPoint()) })
+                    || (first is Polygon && second.coordinates.any { contains(first, it.toPoint()) })
+        }
+        else -> false
+    }
+
+    /**
+     * Returns true if `inner` lies completely inside the `outer` polygon.
+     */
+    fun within(inner: SpatialObject, outer: SpatialObject): Boolean = when {
+
+        outer is Point -> inner is Point && intersects(inner, outer)
+        outer !is Polygon -> false
+        inner is Point -> contains(outer, inner)
+        inner is LineSegmentObject -> inner.coordinates.all { contains(outer, it.toPoint()) } && !edgesCross(inner, outer)
+        else -> false
+    }
+
+    /**
+     * Ray casting point-in-polygon test.
+     */
+    fun contains(polygon: Polygon, point: Point): Boolean {
+
+        val ring = polygon.coordinates
+        val x = point.longitude
+        val y = point.latitude
+
+        var inside = false
+        var j = ring.size - 1
+
+        for (i in ring.indices) {
+
+            val xi = ring[i][0]
+            val yi = ring[i][1]
+            val xj = ring[j][0]
+            val yj = ring[j][1]
+
+            if ((yi > y) != (yj > y) && x < (xj - xi) * (y - yi) / (yj - yi) + xi) {
+                inside = !inside
+            }
+
+            j = i
+        }
+
+        return inside
+    }
+
+    // distance from the point to the closest point of the segment, projecting both into a local plane around the point
+    private fun segmentDistance(point: Point, start: DoubleArray, end: DoubleArray): Double {
+
+        val scale = cos(Math.toRadians(point.latitude))
+
+        val ax = (start[0] - point.longitude) * scale
+        val ay = start[1] - point.latitude
+        val bx = (end[0] - point.longitude) * scale
+        val by = end[1] - point.latitude
+
+        val dx = bx - ax
+        val dy = by - ay
+        val lengthSquared = dx * dx + dy * dy
+
+        val t = if (lengthSquared == 0.0) 0.0 else max(0.0, min(1.0, -(ax * dx + ay * dy) / lengthSquared))
+
+        val longitude = start[0] + t * (end[0] - start[0])
+        val latitude = start[1] + t * (end[1] - start[1])
+
+        return distance(point.longitude, point.latitude, longitude, latitude)
+    }
+
+    private fun onBoundary(point: Point, shape: LineSegmentObject): Boolean {
+
+        val coordinates = shape.coordinates
+
+        if (coordinates.size == 1) {
+            return samePoint(point.longitude, point.latitude, coordinates[0][0], coordinates[0][1])
+        }
+
+        for (i in 0 until coordinates.size - 1) {
+
+            if (orientation(coordinates[i], coordinates[i + 1], point.longitude, point.latitude) == 0 && inBox(coordinates[i], coordinates[i + 1], point.longitude, point.latitude)) {
+                return true
+            }
+        }
+
+        return false
+    }
+
+    private fun edgesCross(first: LineSegmentObject, second: LineSegmentObject): Boolean {
+
+        val a = first.coordinates
+        val b = second.coordinates
+
+        for (i in 0 until a.size - 1) {
+            for (j in 0 until b.size - 1) {
+                if (segmentsIntersect(a[i], a[i + 1], b[j], b[j + 1])) {
+                    return true
+                }
+            }
+        }
+
+        return false
+    }
+
+    private fun segmentsIntersect(p1: DoubleArray, p2: DoubleArray, q1: DoubleArray, q2: DoubleArray): Boolean {
+
+        val o1 = orientation(p1, p2, q1[0], q1[1])
+        val o2 = orientation(p1, p2, q2[0], q2[1])
+        val o3 = orientation(q1, q2, p1[0], p1[1])
+        val o4 = orientation(q1, q2, p2[0], p2[1])
+
+        if (o1 != o2 && o3 != o4) {
+            return true
+        }
+
+        return (o1 == 0 && inBox(p1, p2, q1[0], q1[1]))
+                || (o2 == 0 && inBox(p1, p2, q2[0], q2[1]))
+                || (o3 == 0 && inBox(q1, q2, p1[0], p1[1]))
+                || (o4 == 0 && inBox(q1, q2, p2[0], p2[1]))
+    }
+
+    private fun orientation(start: DoubleArray, end: DoubleArray, x: Double, y: Double): Int {
+
+        val cross = (end[0] - start[0]) * (y - start[1]) - (end[1] - start[1]) * (x - start[0])
+
+        return when {
+            cross > epsilon -> 1
+            cross < -epsilon -> -1
+            else -> 0
+        }
+    }
+
+    private fun inBox(start: DoubleArray, end: DoubleArray, x: Double, y: Double): Boolean =
+            x >= min(start[0], end[0]) - epsilon && x <= max(start[0], end[0]) + epsilon &&
+            y >= min(start[1], end[1]) - epsilon && y <= max(start[1], end[1]) + epsilon
+
+    private fun samePoint(x1: Double, y1: Double, x2: Double, y2: Double): Boolean =
+            Math.abs(x1 - x2) <= epsilon && Math.abs(y1 - y2) <= epsilon
+
+    // coordinates are stored longitude first, per the GeoJSON spec
+    private fun DoubleArray.toPoint(): Point = Point(this[0], this[1])
+}
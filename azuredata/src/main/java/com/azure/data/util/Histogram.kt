@@ -0,0 +1,119 @@
+package com.azure.data.util
+
+import java.util.concurrent.atomic.AtomicLong
+import java.util.concurrent.atomic.AtomicLongArray
+
+/**
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+/**
+ * A lock-free histogram of non-negative values, in buckets whose width grows with the values (as in HdrHistogram):
+ * values below 64 are counted exactly, larger ones within about 3%, up to `maxValue`.
+ *
+ * Recording is a few atomic increments, so it can be done from any thread on the request path.
+ */
+class Histogram(val maxValue: Long = Long.MAX_VALUE) {
+
+    private val counts = AtomicLongArray(index(maxValue) + 1)
+
+    private val total = AtomicLong()
+
+    private val sum = AtomicLong()
+
+    private val max = AtomicLong()
+
+    val count: Long
+        get() = total.get()
+
+    val mean: Double
+        get() = count.let { if (it > 0) sum.get().toDouble() / it else 0.0 }
+
+    val maximum: Long
+        get() = max.get()
+
+    fun record(value: Long) {
+
+        val recorded = Math.min(Math.max(value, 0), maxValue)
+
+        counts.incrementAndGet(index(recorded))
+        total.incrementAndGet()
+        sum.addAndGet(recorded)
+
+        var current = max.get()
+
+        while (recorded > current && !max.compareAndSet(current, recorded)) {
+            current = max.get()
+        }
+    }
+
+    /**
+     * Returns the value `percentile` (between 0 and 100) of the recorded values are at or below,
+     * as the upper bound of its bucket.
+     */
+    fun percentile(percentile: Double): Long {
+
+        val count = this.count
+
+        if (count == 0L) {
+            return 0
+        }
+
+        val target = Math.max(1, Math.ceil(percentile / 100 * count).toLong())
+        var seen = 0L
+
+        for (i in 0 until counts.length()) {
+
+            seen += counts.get(i)
+
+            if (seen >= target) {
+                return Math.min(highestValue(i), maximum)
+            }
+        }
+
+        return maximum
+    }
+
+    fun reset() {
+
+        for (i in 0 until counts.length()) {
+            counts.set(i, 0)
+        }
+
+        total.set(0)
+        sum.set(0)
+        max.set(0)
+    }
+
+    companion object {
+
+        // values are kept to `subBuckets` significant steps: each power of two above it is split in `subBuckets` buckets
+        private const val subBucketBits = 5
+
+        private const val subBuckets = 1 shl subBucketBits
+
+        internal fun index(value: Long): Int {
+
+            if (value < subBuckets * 2) {
+                return value.toInt()
+            }
+
+            val shift = 63 - java.lang.Long.numberOfLeadingZeros(value) - subBucketBits
+
+            return shift * subBuckets + (value ushr shift).toInt()
+        }
+
+        internal fun highestValue(index: Int): Long {
+
+            if (index < subBuckets * 2) {
+                return index.toLong()
+            }
+
+            val shift = index / subBuckets - 1
+            val subBucket = (index - shift * subBuckets).toLong()
+
+            return ((subBucket + 1) shl shift) - 1
+        }
+    }
+}
@@ -0,0 +1,497 @@
+package com.azure.data.util
+
+import com.azure.data.service.safeExecute
+import java.io.*
+import java.util.concurrent.Executors
+import java.util.concurrent.ScheduledExecutorService
+import java.util.concurrent.TimeUnit
+
+/**
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+/**
+ * Maps the alt links of resources (`dbs/{db}/colls/{coll}`) to their self links (`dbs/{rid}/colls/{rid}/`) and back.
+ *
+ * Links are kept in a trie of path segments, one node per resource, so the ancestors shared by many resources are
+ * stored once and the links of every ancestor of a stored resource are known too.
+ *
+ * Changes are recorded in an append-only log: `commit` makes the changes so far durable and they're written to `file`
+ * in batches, in the background. The log is compacted when it grows well past the size of the index.
+ */
+internal class LinkIndex(private val file: File, private val flushDelay: Long = defaultFlushDelay) {
+
+    private class Node(val parent: Node?, val type: String, val id: String, val resourceId: String) {
+
+        // children by type, then by id or resource id
+        var ids: MutableMap<String, MutableMap<String, Node>>? = null
+        var resourceIds: MutableMap<String, MutableMap<String, Node>>? = null
+
+        // whether the node was stored since the index was restored, rather than loaded from the log
+        var isStored = false
+
+        val isLeaf: Boolean
+            get() = ids.isNullOrEmpty()
+    }
+
+    private var root = Node(null, "", "", "")
+
+    private var nodeCount = 0
+
+    // incremented when a node is added or removed, so storing links that are already known isn't logged
+    private var modifications = 0
+
+    // the records in the log, written or pending
+    private var recordCount = 0
+
+    private val pending = ByteArrayOutputStream()
+
+    private val pendingOutput = DataOutputStream(pending)
+
+    // the pending records up to that length are committed and will be flushed
+    private var committedLength = 0
+
+    private var isFlushScheduled = false
+
+    private var isReplaying = false
+
+    // while the log is loaded, the trie doesn't hold all its links yet and can't replace it
+    private var isLoading = false
+
+    // incremented by `purge` and `restore`, so a load that started before stops replaying the previous log
+    private var loadGeneration = 0
+
+    val exists: Boolean
+        get() = file.exists()
+
+    //region links
+
+    @Synchronized
+    fun store(selfLink: String, altLink: String) {
+
+        store(selfLink, altLink, true)
+    }
+
+    // returns whether the links were stored; when `replace` is false, links that conflict with the ones stored since the index was restored are ignored
+    private fun store(selfLink: String, altLink: String, replace: Boolean): Boolean {
+
+        val selfSegments = selfLink.trim('/').split('/')
+        val altSegments = altLink.trim('/').split('/')
+
+        if (selfSegments.size != altSegments.size || altSegments.size % 2 != 0) {
+            return false
+        }
+
+        val modificationsBefore = modifications
+        var node = root
+
+        for (i in altSegments.indices step 2) {
+
+            if (selfSegments[i] != altSegments[i]) {
+                return false
+            }
+
+            node = child(node, altSegments[i], altSegments[i + 1], selfSegments[i + 1], replace) ?: return false
+        }
+
+        if (modifications != modificationsBefore) {
+            record(storeRecord, selfLink, altLink)
+        }
+
+        return true
+    }
+
+    @Synchronized
+    fun selfLink(altLink: String): String? = find(altLink) { it.ids }?.selfLink()
+
+    @Synchronized
+    fun altLink(selfLink: String): String? = find(selfLink) { it.resourceIds }?.altLink()
+
+    /**
+     * Removes the resource at `selfLink`, and every resource it contains.
+     */
+    @Synchronized
+    fun removeSelfLink(selfLink: String) {
+
+        find(selfLink) { it.resourceIds }?.let {
+
+            detach(it)
+            record(removeRecord, selfLink.trim('/'))
+        }
+    }
+
+    /**
+     * Removes the resource at `altLink`, and every resource it contains.
+     */
+    @Synchronized
+    fun removeAltLink(altLink: String) {
+
+        find(altLink) { it.ids }?.let {
+
+            detach(it)
+            record(removeRecord, it.selfLink().trim('/'))
+        }
+    }
+
+    //endregion
+
+    //region persistence
+
+    /**
+     * Makes the changes so far durable, they're written to disk shortly after.
+     */
+    @Synchronized
+    fun commit() {
+
+        committedLength = pending.size()
+
+        if (committedLength > 0 && !isFlushScheduled) {
+
+            isFlushScheduled = true
+
+            scheduler.schedule({ flush() }, flushDelay, TimeUnit.MILLISECONDS)
+        }
+    }
+
+    /**
+     * Writes the committed changes to disk, compacting the log if needed.
+     */
+    @Synchronized
+    fun flush() {
+
+        isFlushScheduled = false
+
+        if (committedLength == 0) {
+            return
+        }
+
+        safeExecute {
+
+            val bytes = pending.toByteArray()
+
+            // the trie also holds the uncommitted changes, it's only written out when there are none
+            if (!isLoading && committedLength == bytes.size && recordCount > minCompactionRecords && recordCount > 2 * nodeCount) {
+                compact()
+            } else {
+                FileOutputStream(file, true).use { it.write(bytes, 0, committedLength) }
+            }
+
+            // keep the uncommitted changes pending
+            pending.reset()
+            pending.write(bytes, committedLength, bytes.size - committedLength)
+            committedLength = 0
+        }
+    }
+
+    /**
+     * Reloads the index from disk, after writing the committed changes; uncommitted changes are discarded.
+     */
+    fun restore() {
+
+        synchronized(this) {
+
+            flush()
+
+            pending.reset()
+            committedLength = 0
+            root = Node(null, "", "", "")
+            nodeCount = 0
+            recordCount = 0
+            loadGeneration++
+        }
+
+        load()
+    }
+
+    /**
+     * Adds the links in the log to the index. They're added in batches, so the index can be used while it's
+     * loading, and links stored meanwhile take precedence over the ones loaded.
+     */
+    fun load() {
+
+        val generation = synchronized(this) {
+
+            if (!file.exists()) {
+                return
+            }
+
+            isLoading = true
+            loadGeneration
+        }
+
+        val batch = ArrayList<Array<String>>(loadBatchSize)
+        var isTruncated = false
+        var isCurrent = true
+
+        safeExecute {
+            DataInputStream(BufferedInputStream(FileInputStream(file))).use { input ->
+
+                while (true) {
+
+                    val op = input.read()
+
+                    if (op < 0) {
+                        break
+                    }
+
+                    try {
+                        when (op) {
+                            storeRecord -> batch.add(arrayOf(input.readUTF(), input.readUTF()))
+                            removeRecord -> batch.add(arrayOf(input.readUTF()))
+                            else -> throw IOException("unknown link record $op")
+                        }
+                    } catch (ex: IOException) {
+                        // the end of a log whose last write was interrupted
+                        isTruncated = true
+                        break
+                    }
+
+                    if (batch.size == loadBatchSize) {
+
+                        // the index was purged or restored meanwhile, the rest of this log no longer applies
+                        if (!replay(batch, generation)) {
+                            isCurrent = false
+                            break
+                        }
+
+                        batch.clear()
+                    }
+                }
+            }
+        }
+
+        if (isCurrent && !replay(batch, generation)) {
+            isCurrent = false
+        }
+
+        synchronized(this) {
+
+            // a newer load, or none, is in charge of the index now
+            if (!isCurrent || generation != loadGeneration) {
+                return
+            }
+
+            isLoading = false
+
+            if (isTruncated || (recordCount > minCompactionRecords && recordCount > 2 * nodeCount)) {
+
+                if (committedLength == pending.size()) {
+                    safeExecute { compact() }
+                }
+            }
+        }
+    }
+
+    // returns false, without replaying them, if the records are from a log that was purged or restored since
+    @Synchronized
+    private fun replay(records: List<Array<String>>, generation: Int): Boolean {
+
+        if (generation != loadGeneration) {
+            return false
+        }
+
+        // the records are already in the log
+        isReplaying = true
+
+        try {
+            for (record in records) {
+
+                if (record.size == 2) {
+                    store(record[0], record[1], false)
+                } else {
+                    // links stored since the index was restored take precedence over a removal in the log
+                    find(record[0]) { it.resourceIds }?.takeIf { !hasStored(it) }?.let { detach(it) }
+                }
+            }
+        } finally {
+            isReplaying = false
+        }
+
+        recordCount += records.size
+
+        return true
+    }
+
+    @Synchronized
+    fun purge() {
+
+        pending.reset()
+        committedLength = 0
+        root = Node(null, "", "", "")
+        nodeCount = 0
+        recordCount = 0
+        isLoading = false
+        loadGeneration++
+
+        file.delete()
+    }
+
+    // rewrites the log with a single record per leaf of the trie, the other resources are their ancestors
+    private fun compact() {
+
+        val tmp = File(file.parentFile, "${file.name}.tmp")
+        var count = 0
+
+        DataOutputStream(BufferedOutputStream(FileOutputStream(tmp))).use { output ->
+
+            forEachLeaf(root) {
+
+                output.write(storeRecord)
+                output.writeUTF(it.selfLink())
+                output.writeUTF(it.altLink())
+                count++
+            }
+        }
+
+        if (!tmp.renameTo(file)) {
+            file.delete()
+            tmp.renameTo(file)
+        }
+
+        recordCount = count
+    }
+
+    private fun record(op: Int, vararg values: String) {
+
+        if (isReplaying) {
+            return
+        }
+
+        pendingOutput.write(op)
+        values.forEach { pendingOutput.writeUTF(it) }
+        recordCount++
+    }
+
+    //endregion
+
+    //region trie
+
+    private fun child(parent: Node, type: String, id: String, resourceId: String, replace: Boolean): Node? {
+
+        val ids = parent.ids ?: HashMap<String, MutableMap<String, Node>>().also { parent.ids = it }
+        val resourceIds = parent.resourceIds ?: HashMap<String, MutableMap<String, Node>>().also { parent.resourceIds = it }
+        val idsOfType = ids[type] ?: HashMap<String, Node>().also { ids[type] = it }
+        val resourceIdsOfType = resourceIds[type] ?: HashMap<String, Node>().also { resourceIds[type] = it }
+
+        val existing = idsOfType[id]
+
+        if (existing != null && existing.resourceId == resourceId) {
+
+            if (!isReplaying) {
+                existing.isStored = true
+            }
+
+            return existing
+        }
+
+        if (!replace && (existing?.isStored == true || resourceIdsOfType[resourceId]?.isStored == true)) {
+            return null
+        }
+
+        // the id now names another resource (e.g. it was deleted and created again): forget the previous one
+        existing?.let { detach(it) }
+        resourceIdsOfType[resourceId]?.let { detach(it) }
+
+        val node = Node(parent, type, id, resourceId)
+
+        node.isStored = !isReplaying
+
+        idsOfType[id] = node
+        resourceIdsOfType[resourceId] = node
+        nodeCount++
+        modifications++
+
+        return node
+    }
+
+    private fun detach(node: Node) {
+
+        val parent = node.parent ?: return
+
+        parent.ids?.get(node.type)?.remove(node.id)
+        parent.resourceIds?.get(node.type)?.remove(node.resourceId)
+
+        nodeCount -= count(node)
+        modifications++
+    }
+
+    private inline fun find(link: String, children: (Node) -> Map<String, Map<String, Node>>?): Node? {
+
+        val segments = link.trim('/').split('/')
+
+        if (segments.size % 2 != 0 || segments[0].isEmpty()) {
+            return null
+        }
+
+        var node = root
+
+        for (i in segments.indices step 2) {
+            node = children(node)?.get(segments[i])?.get(segments[i + 1]) ?: return null
+        }
+
+        return node
+    }
+
+    private fun hasStored(node: Node): Boolean =
+            node.isStored || node.ids?.values?.any { nodes -> nodes.values.any { hasStored(it) } } == true
+
+    private fun count(node: Node): Int = 1 + (node.ids?.values?.sumBy { nodes -> nodes.values.sumBy { count(it) } } ?: 0)
+
+    private fun forEachLeaf(node: Node, action: (Node) -> Unit) {
+
+        if (node.isLeaf && node !== root) {
+            action(node)
+            return
+        }
+
+        node.ids?.values?.forEach { nodes -> nodes.values.forEach { forEachLeaf(it, action) } }
+    }
+
+    // self links come back from Cosmos DB with a trailing slash, so they're returned with one
+    private fun Node.selfLink(): String = path { it.resourceId }.plus('/')
+
+    private fun Node.altLink(): String = path { it.id }
+
+    private inline fun Node.path(id: (Node) -> String): String {
+
+        val nodes = ArrayList<Node>()
+        var node: Node? = this
+
+        while (node?.parent != null) {
+            nodes.add(node)
+            node = node.parent
+        }
+
+        val builder = StringBuilder()
+
+        for (i in nodes.indices.reversed()) {
+
+            if (builder.isNotEmpty()) {
+                builder.append('/')
+            }
+
+            builder.append(nodes[i].type).append('/').append(id(nodes[i]))
+        }
+
+        return builder.toString()
+    }
+
+    //endregion
+
+    companion object {
+
+        const val defaultFlushDelay: Long = 500
+
+        private const val storeRecord = 1
+
+        private const val removeRecord = 2
+
+        private const val minCompactionRecords = 1024
+
+        private const val loadBatchSize = 256
+
+        // flushes the logs of every index in the background
+        private val scheduler: ScheduledExecutorService = Executors.newSingleThreadScheduledExecutor()
+    }
+}
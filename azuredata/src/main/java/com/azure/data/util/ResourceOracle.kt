@@ -1,65 +1,78 @@
 package com.azure.data.util
 
-import android.annotation.SuppressLint
 import android.content.Context
-import android.content.SharedPreferences
-import com.azure.core.util.MapCompat
 import com.azure.data.model.*
 import com.azure.data.model.service.ResourceLocation
+import com.azure.data.service.QueryCacheKey
+import java.io.File
 
 /**
  * Copyright (c) Microsoft Corporation. All rights reserved.
  * Licensed under the MIT License.
  */
 
-@SuppressLint("CommitPrefEdits")
+// the persisted links are loaded by `load`, which the client's warm-up runs in the background
 internal class ResourceOracle private constructor (appContext: Context, host: String) {
 
+    // links used to be stored in these shared preferences, they're migrated to the link index
     private val altLinkLookupStorageKey = "com.azure.data.lookup.altlink.$host"
     private val selfLinkLookupStorageKey = "com.azure.data.lookup.selflink.$host"
 
-    private lateinit var altLinkPrefsEditor: SharedPreferences.Editor
-    private lateinit var selfLinkPrefsEditor: SharedPreferences.Editor
-    private lateinit var altLinkLookup: MutableMap<String, String>
-    private lateinit var selfLinkLookup: MutableMap<String, String>
+    private val links = LinkIndex(File(appContext.filesDir, "com.azure.data.links.$host"))
 
     private val slashString: String = "/"
     private val slashCharacter: Char = '/'
 
-    init {
-        restore(appContext)
+    fun restore(appCtx: Context) {
+
+        links.restore()
+
+        if (!links.exists) {
+            migrate(appCtx)
+        }
     }
 
-    fun restore(appCtx: Context) {
+    /**
+     * Loads the persisted links; the oracle can be used while they're loading.
+     */
+    fun load(appCtx: Context) {
+
+        links.load()
+
+        if (!links.exists) {
+            migrate(appCtx)
+        }
+    }
+
+    private fun migrate(appCtx: Context) {
 
         val altLinkPrefs = appCtx.getSharedPreferences(altLinkLookupStorageKey, Context.MODE_PRIVATE)
         val selfLinkPrefs = appCtx.getSharedPreferences(selfLinkLookupStorageKey, Context.MODE_PRIVATE)
 
-        //copy prefs to maps
-        altLinkLookup = altLinkPrefs.all.mapValues { it.value.toString() }.toMutableMap()
-        selfLinkLookup = selfLinkPrefs.all.mapValues { it.value.toString() }.toMutableMap()
+        if (selfLinkPrefs.all.isEmpty()) {
+            return
+        }
 
-        // since we're only ever going to access/write to these pref objects in this class,
-        //  we'll cache the editor objects, hoping to mitigate potential threading issues with multiple editors
-        //  this is nonstandard but seems appropriate here in this use case
-        altLinkPrefsEditor = altLinkPrefs.edit()
-        selfLinkPrefsEditor = selfLinkPrefs.edit()
+        selfLinkPrefs.all.forEach { (altLink, selfLink) ->
+
+            (selfLink as? String)?.let { links.store(it, altLink) }
+        }
+
+        commit()
+        links.flush()
+
+        altLinkPrefs.edit().clear().apply()
+        selfLinkPrefs.edit().clear().apply()
     }
 
     fun purge() {
 
-        altLinkLookup.clear()
-        selfLinkLookup.clear()
-        altLinkPrefsEditor.clear()
-        selfLinkPrefsEditor.clear()
-
-        commit()
+        links.purge()
     }
 
     private fun commit() {
 
-        altLinkPrefsEditor.apply()
-        selfLinkPrefsEditor.apply()
+        links.commit()
     }
 
     private fun doStoreLinks(resource: Resource) {
@@ -72,27 +85,8 @@ internal class ResourceOracle private constructor (appContext: Context, host: St
         selfLink?.let {
             altLink?.let {
 
-                val altLinkSubstrings = altLink.split(slashCharacter)
-                val selfLinkSubstrings = selfLink.trimEnd('/').split(slashCharacter)
-
-                if (selfLinkSubstrings.size == altLinkSubstrings.size) {
-
-                    var i = 0
-
-                    while (i < selfLinkSubstrings.size) {
-
-                        val altLinkComponent = altLinkSubstrings.dropLast(i).joinToString(slashString)
-                        val selfLinkComponent = selfLinkSubstrings.dropLast(i).joinToString(slashString).plus(slashCharacter)
-
-                        altLinkLookup[selfLinkComponent] = altLinkComponent
-                        selfLinkLookup[altLinkComponent] = selfLinkComponent
-
-                        altLinkPrefsEditor.putString(selfLinkComponent, altLinkComponent)
-                        selfLinkPrefsEditor.putString(altLinkComponent, selfLinkComponent) //self links come back from Cosmos DB with trailing slash so we're trying to preserve that here
-
-                        i += 2
-                    }
-                }
+                // the links of the resource's ancestors are stored too
+                links.store(selfLink, altLink)
             }
         }
     }
@@ -119,30 +113,18 @@ internal class ResourceOracle private constructor (appContext: Context, host: St
 
     private fun doRemoveLinks(resource: Resource) {
 
-        getSelfLink(resource)?.let {
-
-            altLinkLookup.remove(it)
-            altLinkPrefsEditor.remove(it)
-        }
-
-        getAltLink(resource)?.let {
+        val selfLink = getSelfLink(resource)
 
-            selfLinkLookup.remove(it)
-            selfLinkPrefsEditor.remove(it)
+        if (selfLink != null) {
+            links.removeSelfLink(selfLink)
+        } else {
+            getAltLink(resource)?.let { links.removeAltLink(it) }
         }
     }
 
     private fun doRemoveLinks(resourceLocation: ResourceLocation) {
 
-        getSelfLink(resourceLocation)?.let { selfLink ->
-
-            altLinkLookup.remove(selfLink)?.let { altLink ->
-                selfLinkLookup.remove(altLink)
-                selfLinkPrefsEditor.remove(altLink)
-            }
-
-            altLinkPrefsEditor.remove(selfLink)
-        }
+        getSelfLink(resourceLocation)?.let { links.removeSelfLink(it) }
     }
 
     fun removeLinks(resource: Resource, commit: Boolean = true) {
@@ -200,7 +182,7 @@ internal class ResourceOracle private constructor (appContext: Context, host: St
         if (altLink.isNullOrEmpty()) {
             resource.selfLink?.let {
 
-                altLink = MapCompat.getOrDefault(altLinkLookup, it, null)
+                altLink = links.altLink(it)
             }
         }
 
@@ -214,7 +196,7 @@ internal class ResourceOracle private constructor (appContext: Context, host: St
         if (selfLink.isNullOrEmpty()) {
             resource.altLink?.trim(slashCharacter)?.let {
 
-                selfLink = MapCompat.getOrDefault(selfLinkLookup, it, null)
+                selfLink = links.selfLink(it)
             }
         }
 
@@ -225,21 +207,18 @@ internal class ResourceOracle private constructor (appContext: Context, host: St
 
         val altLink = resourceLocation.link()
 
-        selfLinkLookup[altLink]?.let {
-
-            if (it.isNotEmpty()) {
-                return it
-            }
+        if (altLink.isEmpty()) {
+            return null
         }
 
-        return null
+        return links.selfLink(altLink)
     }
 
     fun getAltLink(selfLink: String): String? {
 
         if (selfLink.isNotEmpty()) {
 
-            val altLink = MapCompat.getOrDefault(altLinkLookup, selfLink, null)
+            val altLink = links.altLink(selfLink)
 
             if (altLink?.isEmpty() == false) {
 
@@ -256,7 +235,7 @@ internal class ResourceOracle private constructor (appContext: Context, host: St
 
         if (trimmedLink.isNotEmpty()) {
 
-            val selfLink = MapCompat.getOrDefault(selfLinkLookup, trimmedLink, null)
+            val selfLink = links.selfLink(trimmedLink)
 
             if (selfLink?.isEmpty() == false) {
 
@@ -330,9 +309,14 @@ internal class ResourceOracle private constructor (appContext: Context, host: St
         return selfLink
     }
 
-    fun getDirectoryPath(query: Query): String {
+    fun getDirectoryPath(queryKey: QueryCacheKey): String {
+
+        return "${getQueriesDirectoryPath(queryKey.scope)}/${queryKey.hash}"
+    }
+
+    fun getQueriesDirectoryPath(scope: String): String {
 
-        return "queries/${query.hashCode()}"
+        return "queries/${QueryCacheKey(scope, "").scopeHash}"
     }
 
     companion object {
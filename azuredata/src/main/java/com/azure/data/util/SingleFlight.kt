@@ -0,0 +1,60 @@
+package com.azure.data.util
+
+/**
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+/**
+ * Coalesces concurrent asynchronous operations with the same key: the first caller starts the operation,
+ * callers arriving while it's in flight wait for its result instead of starting their own.
+ *
+ * `failure` maps an exception thrown by the operation to the result every waiting caller gets.
+ */
+internal class SingleFlight<K, T>(private val failure: (Exception) -> T) {
+
+    private val inFlight: MutableMap<K, MutableList<(T) -> Unit>> = HashMap()
+
+    /**
+     * Runs `operation` for `key`, unless one is already in flight, and calls `callback` with its result.
+     * Returns false if the call joined an operation already in flight.
+     */
+    fun execute(key: K, operation: ((T) -> Unit) -> Unit, callback: (T) -> Unit): Boolean {
+
+        val callbacks = synchronized(inFlight) {
+
+            inFlight[key]?.let {
+                it.add(callback)
+                return false
+            }
+
+            mutableListOf(callback).also { inFlight[key] = it }
+        }
+
+        try {
+            operation { complete(key, callbacks, it) }
+        } catch (ex: Exception) {
+            complete(key, callbacks, failure(ex))
+        }
+
+        return true
+    }
+
+    val size: Int
+        get() = synchronized(inFlight) { inFlight.size }
+
+    private fun complete(key: K, callbacks: MutableList<(T) -> Unit>, result: T) {
+
+        // an operation completing more than once only notifies its callers once, and never the callers of a newer flight
+        synchronized(inFlight) {
+
+            if (inFlight[key] !== callbacks) {
+                return
+            }
+
+            inFlight.remove(key)
+        }
+
+        callbacks.forEach { it(result) }
+    }
+}
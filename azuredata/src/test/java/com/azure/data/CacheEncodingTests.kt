@@ -0,0 +1,135 @@
+package com.azure.data
+
+/**
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+import com.azure.data.service.AesGcmResourceEncryptor
+import com.azure.data.service.CacheEncoding
+import com.azure.data.service.DictionaryTrainer
+import com.azure.data.util.json.gson
+import com.azure.data.util.json.gsonBuilder
+import com.google.gson.JsonParser
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNotNull
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Test
+import java.io.ByteArrayOutputStream
+import java.io.IOException
+import java.security.GeneralSecurityException
+import java.util.concurrent.ConcurrentLinkedQueue
+import java.util.concurrent.CountDownLatch
+import java.util.zip.DataFormatException
+import kotlin.concurrent.thread
+
+class CacheEncodingTests {
+
+    @Before
+    fun before() {
+        gson = gsonBuilder.create()
+    }
+
+    private fun document(index: Int) = JsonParser().parse("""
+        {
+          "id": "doc$index",
+          "_rid": "AbCdEfGhIjK$index=",
+          "_self": "dbs/AbCdEA==/colls/AbCdEfGhIjK=/docs/AbCdEfGhIjK$index=/",
+          "_etag": "\"0000d986-0000-0000-0000-5a1b2c3d0000\"",
+          "firstName": "First $index",
+          "lastName": "Last $index",
+          "birthCity": "Seattle",
+          "_attachments": "attachments/",
+          "_ts": 1511731234
+        }
+        """)
+
+    @Test
+    fun encodedEntriesRoundTripAndAreSmaller() {
+
+        val json = document(1)
+        val encoded = CacheEncoding.encode(json)
+
+        assertTrue(CacheEncoding.isEncoded(encoded))
+        assertTrue(encoded.size < CacheEncoding.compact(json).length)
+        assertEquals(json, JsonParser().parse(CacheEncoding.decodeToString(encoded)))
+    }
+
+    @Test
+    fun plainTextEntriesAreStillReadable() {
+
+        val text = CacheEncoding.compact(document(1))
+
+        assertEquals(text, CacheEncoding.decodeToString(text.toByteArray(Charsets.UTF_8)))
+    }
+
+    @Test
+    fun trainedDictionariesAreFoundById() {
+
+        val trainer = DictionaryTrainer(sampleSize = 4)
+
+        (1..3).forEach { assertNull(trainer.add(document(it))) }
+
+        val dictionary = trainer.add(document(4))
+
+        assertNotNull(dictionary)
+
+        val encoded = CacheEncoding.encode(document(5), dictionary!!)
+        val id = CacheEncoding.idOf(dictionary)
+
+        assertEquals(document(5), JsonParser().parse(CacheEncoding.decodeToString(encoded) { if (it == id) dictionary else null }))
+
+        try {
+            CacheEncoding.decode(encoded)
+            throw AssertionError("decoding without the dictionary should fail")
+        } catch (e: DataFormatException) {
+        }
+    }
+
+    @Test
+    fun concurrentSamplesAreAllCounted() {
+
+        val trainer = DictionaryTrainer(sampleSize = 400)
+        val dictionaries = ConcurrentLinkedQueue<ByteArray>()
+        val start = CountDownLatch(1)
+
+        // the documents of a collection are cached on several threads at once
+        val threads = (0 until 4).map { index ->
+            thread {
+                start.await()
+                (1..100).forEach { trainer.add(document(index * 100 + it))?.let { dictionaries.add(it) } }
+            }
+        }
+
+        start.countDown()
+        threads.forEach { it.join() }
+
+        assertEquals(1, dictionaries.size)
+        assertTrue(trainer.isComplete)
+    }
+
+    @Test
+    fun encryptedEntriesRoundTripAndAreAuthenticated() {
+
+        val encryptor = AesGcmResourceEncryptor(AesGcmResourceEncryptor.generateKey())
+        val output = ByteArrayOutputStream()
+
+        encryptor.encrypt(output).use { CacheEncoding.encode(document(1), CacheEncoding.baseDictionary, it) }
+
+        val encrypted = output.toByteArray()
+        val decrypted = encryptor.decrypt(encrypted.inputStream()).use { it.readBytes() }
+
+        assertEquals(document(1), JsonParser().parse(CacheEncoding.decodeToString(decrypted)))
+
+        encrypted[encrypted.size - 1] = (encrypted[encrypted.size - 1] + 1).toByte()
+
+        try {
+            encryptor.decrypt(encrypted.inputStream())
+            throw AssertionError("a tampered entry should fail to decrypt")
+        } catch (e: IOException) {
+        } catch (e: GeneralSecurityException) {
+        }
+    }
+}
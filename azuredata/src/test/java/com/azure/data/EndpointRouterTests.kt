@@ -0,0 +1,116 @@
+package com.azure.data
+
+/**
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+import com.azure.data.service.EndpointRouter
+import okhttp3.*
+import okhttp3.HttpUrl.Companion.toHttpUrl
+import okhttp3.ResponseBody.Companion.toResponseBody
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import java.io.IOException
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+
+class EndpointRouterTests {
+
+    private val west = "https://account-westus.documents.azure.com/".toHttpUrl()
+    private val east = "https://account-eastus.documents.azure.com/".toHttpUrl()
+    private val europe = "https://account-westeurope.documents.azure.com/".toHttpUrl()
+
+    private var now = 0L
+
+    private fun router() = EndpointRouter(listOf(west, east, europe), failoverTime = 30, clock = { now })
+
+    // stands in for the regions, the unreachable ones fail to connect
+    private fun regions(vararg unreachable: HttpUrl) = OkHttpClient.Builder()
+            .addInterceptor { chain ->
+
+                val host = chain.request().url.host
+
+                if (unreachable.any { it.host == host }) {
+                    throw IOException("Failed to connect to $host")
+                }
+
+                Response.Builder()
+                        .request(chain.request())
+                        .protocol(Protocol.HTTP_1_1)
+                        .code(200)
+                        .message("OK")
+                        .body(host.toResponseBody())
+                        .build()
+            }
+            .build()
+
+    private fun read(router: EndpointRouter, client: OkHttpClient, isRead: Boolean = true): String? {
+
+        val latch = CountDownLatch(1)
+        var body: String? = null
+
+        val url = router.endpoint(isRead)!!.newBuilder().addPathSegment("dbs").build()
+
+        router.enqueue(Request.Builder().url(url).build(), isRead, { request, callback -> client.newCall(request).enqueue(callback) }, object : Callback {
+
+            override fun onFailure(call: Call, e: IOException) = latch.countDown()
+
+            override fun onResponse(call: Call, response: okhttp3.Response) {
+                body = response.body?.string()
+                latch.countDown()
+            }
+        })
+
+        assertTrue(latch.await(5, TimeUnit.SECONDS))
+
+        return body
+    }
+
+    @Test
+    fun readsGoToTheFastestRegion() {
+
+        val router = router()
+
+        assertEquals(west, router.endpoint(true))
+
+        router.recordLatency(west, 120)
+        router.recordLatency(east, 40)
+        router.recordLatency(europe, 200)
+
+        assertEquals(east, router.endpoint(true))
+        assertEquals(west, router.endpoint(false))
+    }
+
+    @Test
+    fun readsFailOverToTheNextRegion() {
+
+        val router = router()
+
+        router.recordLatency(west, 120)
+        router.recordLatency(east, 40)
+
+        assertEquals(west.host, read(router, regions(east)))
+
+        // east is skipped until the failover time passes, even once a probe reaches it again
+        assertEquals(west, router.endpoint(true))
+
+        now += TimeUnit.SECONDS.toMillis(10)
+        router.recordLatency(east, 40)
+
+        assertEquals(west, router.endpoint(true))
+
+        now += TimeUnit.SECONDS.toMillis(21)
+
+        assertEquals(east, router.endpoint(true))
+    }
+
+    @Test
+    fun writesDoNotFailOver() {
+
+        val router = router()
+
+        assertEquals(null, read(router, regions(west), isRead = false))
+    }
+}
@@ -0,0 +1,172 @@
+package com.azure.data
+
+/**
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+import com.azure.core.http.HttpMethod
+import com.azure.data.model.service.RequestDetails
+import com.azure.data.model.service.ResourceLocation
+import com.azure.data.model.service.ResponseDiagnostics
+import com.azure.data.service.HedgingPolicy
+import com.azure.data.service.NetworkTimingsListener
+import okhttp3.*
+import okhttp3.ResponseBody.Companion.toResponseBody
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNotNull
+import org.junit.Assert.assertNotSame
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertSame
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import java.io.IOException
+import java.util.Collections
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+
+class HedgingPolicyTests {
+
+    // answers locally, the first call after `slowDelay` milliseconds
+    private fun client(slowDelay: Long, calls: AtomicInteger) = OkHttpClient.Builder()
+            .addInterceptor { chain ->
+
+                val call = calls.incrementAndGet()
+
+                if (call == 1) {
+                    Thread.sleep(slowDelay)
+                }
+
+                Response.Builder()
+                        .request(chain.request())
+                        .protocol(Protocol.HTTP_1_1)
+                        .code(200)
+                        .message("OK")
+                        .body("call $call".toResponseBody())
+                        .build()
+            }
+            .build()
+
+    private fun read(policy: HedgingPolicy, client: OkHttpClient): String? {
+
+        val latch = CountDownLatch(1)
+        var body: String? = null
+
+        policy.enqueue(client, Request.Builder().url("https://account.documents.azure.com/dbs").build(), object : Callback {
+
+            override fun onFailure(call: Call, e: IOException) = latch.countDown()
+
+            override fun onResponse(call: Call, response: okhttp3.Response) {
+                body = response.body?.string()
+                latch.countDown()
+            }
+        })
+
+        assertTrue(latch.await(5, TimeUnit.SECONDS))
+
+        return body
+    }
+
+    @Test
+    fun slowReadIsHedged() {
+
+        val policy = HedgingPolicy(delay = 50)
+        val calls = AtomicInteger()
+
+        assertEquals("call 2", read(policy, client(1000, calls)))
+        assertEquals(1, policy.requestCount)
+        assertEquals(1, policy.hedgeCount)
+        assertEquals(1, policy.hedgeWinCount)
+    }
+
+    @Test
+    fun fastReadIsNotHedged() {
+
+        val policy = HedgingPolicy(delay = 500)
+        val calls = AtomicInteger()
+
+        assertEquals("call 1", read(policy, client(0, calls)))
+
+        Thread.sleep(600)
+
+        assertEquals(1, calls.get())
+        assertEquals(0, policy.hedgeCount)
+        assertEquals(0.0, policy.hedgeRate, 0.0)
+    }
+
+    @Test
+    fun onlyTheWinnerIsTimedInTheDiagnostics() {
+
+        val server = LocalServer()
+        val requests = Collections.synchronizedList(mutableListOf<Request>())
+
+        // the first call is held back until the hedge wins, and then cancelled
+        val client = OkHttpClient.Builder()
+                .eventListenerFactory(NetworkTimingsListener.factory)
+                .addInterceptor { chain ->
+
+                    requests.add(chain.request())
+
+                    if (requests.size == 1) {
+                        Thread.sleep(500)
+                    }
+
+                    chain.proceed(chain.request())
+                }
+                .build()
+
+        val requestDetails = RequestDetails(ResourceLocation.Document("db", "coll", "doc"))
+        requestDetails.method = HttpMethod.Get
+
+        val request = requestDetails.buildRequest(server.url, Headers.Builder())
+        val latch = CountDownLatch(1)
+        var received: okhttp3.Response? = null
+
+        HedgingPolicy(delay = 50).enqueue(client, request, object : Callback {
+
+            override fun onFailure(call: Call, e: IOException) = latch.countDown()
+
+            override fun onResponse(call: Call, response: okhttp3.Response) {
+                response.body?.string()
+                received = response
+                latch.countDown()
+            }
+        })
+
+        try {
+            assertTrue(latch.await(5, TimeUnit.SECONDS))
+
+            Thread.sleep(600)
+        } finally {
+            server.close()
+        }
+
+        val (slow, hedge) = requests.map { it.tag(ResponseDiagnostics::class.java)!! }
+
+        assertSame(request, received!!.request)
+        assertNotSame(requestDetails.diagnostics, slow)
+        assertNotSame(requestDetails.diagnostics, hedge)
+        assertNotSame(slow, hedge)
+        assertNull(slow.networkTimings)
+        assertNotNull(hedge.networkTimings)
+        assertSame(hedge.networkTimings, requestDetails.diagnostics.networkTimings)
+        assertEquals(hedge.queueWait, requestDetails.diagnostics.queueWait)
+    }
+
+    @Test
+    fun adaptiveDelayFollowsLatencies() {
+
+        val policy = HedgingPolicy(percentile = 0.9, minDelay = 5, maxDelay = 1000)
+
+        assertEquals(1000, policy.currentDelay)
+
+        (1..96L).forEach { policy.recordLatency(it) }
+
+        assertEquals(87, policy.currentDelay)
+
+        (1..200).forEach { policy.recordLatency(1) }
+
+        assertEquals(5, policy.currentDelay)
+    }
+}
@@ -0,0 +1,151 @@
+package com.azure.data
+
+/**
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+import com.azure.data.util.LinkIndex
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Test
+import java.io.File
+import java.nio.file.Files
+
+class LinkIndexTests {
+
+    private lateinit var directory: File
+
+    private val file: File
+        get() = File(directory, "links")
+
+    @Before
+    fun before() {
+        directory = Files.createTempDirectory("links").toFile()
+    }
+
+    @After
+    fun after() {
+        directory.deleteRecursively()
+    }
+
+    @Test
+    fun storesLinksAndTheLinksOfAncestors() {
+
+        val index = LinkIndex(file)
+
+        index.store("dbs/dbRid/colls/collRid/docs/docRid/", "dbs/db/colls/coll/docs/doc")
+
+        assertEquals("dbs/dbRid/colls/collRid/docs/docRid/", index.selfLink("dbs/db/colls/coll/docs/doc"))
+        assertEquals("dbs/dbRid/colls/collRid/", index.selfLink("/dbs/db/colls/coll/"))
+        assertEquals("dbs/db/colls/coll/docs/doc", index.altLink("dbs/dbRid/colls/collRid/docs/docRid/"))
+        assertEquals("dbs/db", index.altLink("dbs/dbRid"))
+        assertNull(index.selfLink("dbs/db/users/coll"))
+
+        index.removeAltLink("dbs/db/colls/coll")
+
+        assertNull(index.selfLink("dbs/db/colls/coll/docs/doc"))
+        assertEquals("dbs/dbRid/", index.selfLink("dbs/db"))
+    }
+
+    @Test
+    fun recreatedResourcesReplaceTheirPreviousLinks() {
+
+        val index = LinkIndex(file)
+
+        index.store("dbs/dbRid/colls/oldRid/", "dbs/db/colls/coll")
+        index.store("dbs/dbRid/colls/newRid/", "dbs/db/colls/coll")
+
+        assertEquals("dbs/dbRid/colls/newRid/", index.selfLink("dbs/db/colls/coll"))
+        assertNull(index.altLink("dbs/dbRid/colls/oldRid/"))
+    }
+
+    @Test
+    fun restoresCommittedChangesOnly() {
+
+        val index = LinkIndex(file)
+
+        index.store("dbs/dbRid/colls/collRid/docs/doc1Rid/", "dbs/db/colls/coll/docs/doc1")
+        index.store("dbs/dbRid/colls/collRid/docs/doc2Rid/", "dbs/db/colls/coll/docs/doc2")
+        index.removeSelfLink("dbs/dbRid/colls/collRid/docs/doc1Rid/")
+        index.commit()
+
+        index.removeSelfLink("dbs/dbRid/colls/collRid/docs/doc2Rid/")
+        index.restore()
+
+        assertNull(index.selfLink("dbs/db/colls/coll/docs/doc1"))
+        assertEquals("dbs/dbRid/colls/collRid/docs/doc2Rid/", index.selfLink("dbs/db/colls/coll/docs/doc2"))
+
+        val restored = LinkIndex(file)
+
+        restored.restore()
+
+        assertEquals("dbs/db/colls/coll/docs/doc2", restored.altLink("dbs/dbRid/colls/collRid/docs/doc2Rid/"))
+        assertNull(restored.altLink("dbs/dbRid/colls/collRid/docs/doc1Rid/"))
+    }
+
+    @Test
+    fun compactsTheLog() {
+
+        val index = LinkIndex(file)
+
+        for (i in 0 until 2000) {
+            index.store("dbs/dbRid/colls/collRid/docs/rid$i/", "dbs/db/colls/coll/docs/doc$i")
+            index.removeSelfLink("dbs/dbRid/colls/collRid/docs/rid$i/")
+        }
+
+        index.store("dbs/dbRid/colls/collRid/docs/rid/", "dbs/db/colls/coll/docs/doc")
+        index.commit()
+        index.flush()
+
+        // a single record is left for the remaining document, which also holds the links of its ancestors
+        assertTrue(file.length() < 100)
+
+        val restored = LinkIndex(file)
+
+        restored.restore()
+
+        assertEquals("dbs/dbRid/colls/collRid/docs/rid/", restored.selfLink("dbs/db/colls/coll/docs/doc"))
+    }
+
+    @Test
+    fun linksStoredWhileLoadingTakePrecedence() {
+
+        val index = LinkIndex(file)
+
+        index.store("dbs/dbRid/colls/oldRid/", "dbs/db/colls/coll")
+        index.store("dbs/dbRid/colls/newRid/", "dbs/db/colls/coll")
+        index.store("dbs/dbRid/colls/otherRid/", "dbs/db/colls/other")
+        index.commit()
+        index.flush()
+
+        val loading = LinkIndex(file)
+
+        loading.store("dbs/dbRid/colls/recreatedRid/", "dbs/db/colls/other")
+        loading.load()
+
+        assertEquals("dbs/dbRid/colls/newRid/", loading.selfLink("dbs/db/colls/coll"))
+        assertEquals("dbs/dbRid/colls/recreatedRid/", loading.selfLink("dbs/db/colls/other"))
+    }
+
+    @Test
+    fun removalsInTheLogDoNotUndoLinksStoredWhileLoading() {
+
+        val index = LinkIndex(file)
+
+        index.store("dbs/dbRid/colls/collRid/docs/docRid/", "dbs/db/colls/coll/docs/doc")
+        index.removeSelfLink("dbs/dbRid/colls/collRid/")
+        index.commit()
+        index.flush()
+
+        val loading = LinkIndex(file)
+
+        loading.store("dbs/dbRid/colls/collRid/docs/docRid/", "dbs/db/colls/coll/docs/doc")
+        loading.load()
+
+        assertEquals("dbs/dbRid/colls/collRid/docs/docRid/", loading.selfLink("dbs/db/colls/coll/docs/doc"))
+    }
+}
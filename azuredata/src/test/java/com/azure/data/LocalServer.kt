@@ -0,0 +1,99 @@
+package com.azure.data
+
+/**
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+import okhttp3.HttpUrl
+import okhttp3.HttpUrl.Companion.toHttpUrl
+import java.io.Closeable
+import java.io.InputStream
+import java.net.InetAddress
+import java.net.ServerSocket
+import java.net.Socket
+import java.net.SocketException
+import java.util.concurrent.atomic.AtomicInteger
+import kotlin.concurrent.thread
+
+/**
+ * A minimal HTTP/1.1 server on the loopback interface, answering every request with `body` and `headers`
+ * and keeping its connections alive. Calls answered by an interceptor never reach the network, so they
+ * don't go through the events the network timings are made of.
+ */
+class LocalServer(private val headers: Map<String, String> = emptyMap(), private val body: String = "{}") : Closeable {
+
+    private val serverSocket = ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"))
+
+    val url: HttpUrl = "http://127.0.0.1:${serverSocket.localPort}/".toHttpUrl()
+
+    val connectionCount = AtomicInteger()
+
+    val requestCount = AtomicInteger()
+
+    init {
+        thread(isDaemon = true, name = "LocalServer") {
+
+            try {
+                while (true) {
+
+                    val socket = serverSocket.accept()
+
+                    connectionCount.incrementAndGet()
+
+                    thread(isDaemon = true) { serve(socket) }
+                }
+            } catch (e: SocketException) {
+                // closed
+            }
+        }
+    }
+
+    private fun serve(socket: Socket) = socket.use {
+
+        val input = socket.getInputStream().buffered()
+        val output = socket.getOutputStream()
+        val bytes = body.toByteArray()
+
+        while (true) {
+
+            val requestHeaders = generateSequence { input.readLine() }.takeWhile { it.isNotEmpty() }.toList()
+
+            if (requestHeaders.isEmpty()) {
+                return
+            }
+
+            requestHeaders.firstOrNull { it.startsWith("Content-Length:", ignoreCase = true) }?.let {
+                repeat(it.substringAfter(':').trim().toInt()) { input.read() }
+            }
+
+            requestCount.incrementAndGet()
+
+            val response = StringBuilder("HTTP/1.1 200 OK\r\n")
+                    .append("Content-Type: application/json\r\n")
+                    .append("Content-Length: ${bytes.size}\r\n")
+
+            headers.forEach { (name, value) -> response.append("$name: $value\r\n") }
+
+            output.write(response.append("\r\n").toString().toByteArray())
+            output.write(bytes)
+            output.flush()
+        }
+    }
+
+    // a line of the request head, null at the end of the stream
+    private fun InputStream.readLine(): String? {
+
+        val line = StringBuilder()
+
+        while (true) {
+            when (val c = read()) {
+                -1 -> return if (line.isEmpty()) null else line.toString()
+                '\n'.toInt() -> return line.toString().trimEnd('\r')
+                else -> line.append(c.toChar())
+            }
+        }
+    }
+
+    override fun close() = serverSocket.close()
+}
@@ -0,0 +1,79 @@
+package com.azure.data
+
+/**
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+import com.azure.data.model.service.ResourceType
+import com.azure.data.service.MetricsAggregator
+import com.azure.data.service.OperationMetrics
+import com.azure.data.service.OperationType
+import com.azure.data.util.Histogram
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+class MetricsAggregatorTests {
+
+    @Test
+    fun histogramPercentiles() {
+
+        val histogram = Histogram()
+
+        (1..1000L).forEach { histogram.record(it) }
+
+        assertEquals(1000, histogram.count)
+        assertEquals(500.5, histogram.mean, 0.0)
+        assertEquals(1000, histogram.maximum)
+
+        // within the histogram's precision
+        assertEquals(500.0, histogram.percentile(50.0).toDouble(), 500 * 0.035)
+        assertEquals(990.0, histogram.percentile(99.0).toDouble(), 990 * 0.035)
+        assertEquals(1000, histogram.percentile(100.0))
+        assertEquals(1, histogram.percentile(0.0))
+    }
+
+    @Test
+    fun histogramBucketsCoverEveryValue() {
+
+        var value = 0L
+
+        while (value in 0..(Long.MAX_VALUE / 2)) {
+
+            val index = Histogram.index(value)
+
+            assertTrue(Histogram.highestValue(index) >= value)
+            assertTrue(index == 0 || Histogram.highestValue(index - 1) < value)
+
+            value = value * 2 + 1
+        }
+    }
+
+    @Test
+    fun operationsAreAggregatedPerType() {
+
+        val aggregator = MetricsAggregator()
+
+        fun metrics(statusCode: Int?, latency: Long, charge: Double, fromCache: Boolean = false) =
+                OperationMetrics(OperationType.Read, ResourceType.Document, statusCode, latency, charge, 0, 512, fromCache, 0)
+
+        aggregator.onOperation(metrics(200, 1000, 1.0))
+        aggregator.onOperation(metrics(200, 3000, 1.5))
+        aggregator.onOperation(metrics(null, 20000, 0.0, fromCache = true))
+        aggregator.onOperation(OperationMetrics(OperationType.Query, ResourceType.Document, 200, 5000, 2.83, 120, 2048, false, 1))
+
+        val reads = aggregator.stats(OperationType.Read, ResourceType.Document)!!
+
+        assertEquals(3, reads.count)
+        assertEquals(1, reads.errorCount)
+        assertEquals(1, reads.fromCacheCount)
+        assertEquals(2.5, reads.requestCharge, 0.0001)
+        assertEquals(1536, reads.bytesReceived)
+        assertEquals(20000.0, reads.latency.percentile(99.0).toDouble(), 20000 * 0.035)
+
+        assertEquals(5.33, aggregator.requestCharge, 0.0001)
+        assertNull(aggregator.stats(OperationType.Create, ResourceType.Document))
+    }
+}
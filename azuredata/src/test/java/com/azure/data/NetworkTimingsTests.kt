@@ -0,0 +1,87 @@
+package com.azure.data
+
+/**
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+import com.azure.core.http.HttpMethod
+import com.azure.data.constants.MSHttpHeader
+import com.azure.data.model.service.RequestDetails
+import com.azure.data.model.service.ResourceLocation
+import com.azure.data.model.service.Response
+import com.azure.data.model.service.Result
+import com.azure.data.service.NetworkTimingsListener
+import com.azure.data.service.OperationMetrics
+import com.azure.data.service.OperationType
+import okhttp3.Headers
+import okhttp3.OkHttpClient
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNotNull
+import org.junit.Assert.assertSame
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+class NetworkTimingsTests {
+
+    private val body = "{\"id\":\"doc\"}"
+
+    private val server = LocalServer(mapOf(MSHttpHeader.MSActivityId.value to "activity", MSHttpHeader.MSRequestCharge.value to "2.5"), body)
+
+    private val client = OkHttpClient.Builder()
+            .eventListenerFactory(NetworkTimingsListener.factory)
+            .build()
+
+    @After
+    fun after() = server.close()
+
+    // reads the document as DocumentClient does, the timings are recorded once the body is read
+    private fun read(requestDetails: RequestDetails = RequestDetails(ResourceLocation.Document("db", "coll", "doc"))): Response<String> {
+
+        requestDetails.method = HttpMethod.Get
+
+        val request = requestDetails.buildRequest(server.url, Headers.Builder())
+        val response = client.newCall(request).execute()
+        val json = response.body!!.string()
+
+        return Response(request, response, json, Result(json))
+    }
+
+    @Test
+    fun timingsReachTheResponseAndTheMetrics() {
+
+        val requestDetails = RequestDetails(ResourceLocation.Document("db", "coll", "doc"))
+        val response = read(requestDetails)
+        val timings = response.networkTimings
+
+        assertNotNull(timings!!)
+        assertSame(requestDetails.diagnostics, response.diagnostics)
+        assertTrue(timings.connect > 0)
+        assertTrue(timings.total >= timings.connect + timings.timeToFirstByte)
+        assertEquals(body.length.toLong(), timings.bytesReceived)
+        assertEquals("activity", timings.activityId)
+
+        val metrics = OperationMetrics.from(requestDetails, response, 1000)
+
+        assertSame(timings, metrics.networkTimings)
+        assertEquals(OperationType.Read, metrics.operationType)
+        assertEquals(200, metrics.statusCode)
+        assertEquals(2.5, metrics.requestCharge, 0.0)
+        assertEquals(body.length.toLong(), metrics.bytesReceived)
+    }
+
+    @Test
+    fun reusedConnectionsAreFlagged() {
+
+        val first = read().networkTimings!!
+        val second = read().networkTimings!!
+
+        assertEquals(1, server.connectionCount.get())
+        assertEquals(false, first.connectionReused)
+        assertEquals(true, second.connectionReused)
+        assertEquals(0, second.connect)
+        assertEquals(0, second.dns)
+        assertTrue(second.total > 0)
+    }
+}
@@ -0,0 +1,192 @@
+package com.azure.data
+
+/**
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+import android.content.SharedPreferences
+import com.azure.data.model.Permission
+import com.azure.data.model.PermissionMode
+import com.azure.data.model.service.ResourceLocation
+import com.azure.data.service.PermissionCache
+import com.azure.data.util.json.gson
+import com.azure.data.util.json.gsonBuilder
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Test
+import java.io.File
+import java.nio.file.Files
+
+class PermissionCacheTests {
+
+    private val host = "test.documents.azure.com"
+
+    private val collectionLink = "dbs/db/colls/coll"
+    private val documentLink = "dbs/db/colls/coll/docs/doc"
+
+    private lateinit var directory: File
+
+    private val file: File
+        get() = File(directory, "com.azure.data.permissions.$host")
+
+    // the shared preferences permissions used to be stored in
+    private class Preferences(values: Map<String, String>) : SharedPreferences, SharedPreferences.Editor {
+
+        val values = HashMap<String, Any?>(values)
+
+        override fun getAll(): Map<String, *> = HashMap(values)
+        override fun getString(key: String, defValue: String?) = values[key] as? String ?: defValue
+        override fun getStringSet(key: String, defValues: MutableSet<String>?) = defValues
+        override fun getInt(key: String, defValue: Int) = defValue
+        override fun getLong(key: String, defValue: Long) = defValue
+        override fun getFloat(key: String, defValue: Float) = defValue
+        override fun getBoolean(key: String, defValue: Boolean) = defValue
+        override fun contains(key: String) = values.containsKey(key)
+        override fun edit(): SharedPreferences.Editor = this
+        override fun registerOnSharedPreferenceChangeListener(listener: SharedPreferences.OnSharedPreferenceChangeListener?) {}
+        override fun unregisterOnSharedPreferenceChangeListener(listener: SharedPreferences.OnSharedPreferenceChangeListener?) {}
+
+        override fun putString(key: String, value: String?) = apply { values[key] = value }
+        override fun putStringSet(key: String, values: MutableSet<String>?) = this
+        override fun putInt(key: String, value: Int) = this
+        override fun putLong(key: String, value: Long) = this
+        override fun putFloat(key: String, value: Float) = this
+        override fun putBoolean(key: String, value: Boolean) = this
+        override fun remove(key: String) = apply { values.remove(key) }
+        override fun clear() = apply { values.clear() }
+        override fun commit() = true
+        override fun apply() {}
+    }
+
+    private fun permission(id: String, mode: PermissionMode = PermissionMode.Read) = Permission().apply {
+        this.id = id
+        permissionMode = mode
+        token = "type=resource&ver=1&sig=$id"
+    }
+
+    private fun cache() = PermissionCache(host) { directory }
+
+    // waits for the write behind, which happens a second after the last change
+    private fun awaitFlush(modified: Long) {
+
+        val deadline = System.currentTimeMillis() + 5000
+
+        while ((!file.exists() || file.lastModified() == modified) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20)
+        }
+    }
+
+    @Before
+    fun before() {
+        gson = gsonBuilder.create()
+        directory = Files.createTempDirectory("permissions").toFile()
+    }
+
+    @After
+    fun after() {
+        directory.deleteRecursively()
+    }
+
+    @Test
+    fun permissionsAreMigratedFlushedAndRestored() {
+
+        val preferences = Preferences(mapOf(collectionLink to gson.toJson(permission("collectionPermission"))))
+
+        // the permissions are moved from the preferences to the file
+        val migrated = cache()
+
+        migrated.restore { preferences }
+
+        assertEquals("collectionPermission", migrated.getPermission(collectionLink)?.id)
+        assertTrue(preferences.values.isEmpty())
+        assertTrue(file.exists())
+
+        val modified = file.lastModified()
+
+        Thread.sleep(1000)
+
+        migrated.setPermission(permission("documentPermission"), documentLink)
+
+        awaitFlush(modified)
+
+        // a new cache reads both permissions back, without going to the preferences
+        val restored = cache()
+
+        restored.restore { throw IllegalStateException("the permissions were already migrated") }
+
+        assertEquals("collectionPermission", restored.getPermission(collectionLink)?.id)
+        assertEquals(PermissionMode.Read, restored.getPermission(collectionLink)?.permissionMode)
+        assertEquals("documentPermission", restored.getPermission(documentLink)?.id)
+        assertEquals("type=resource&ver=1&sig=documentPermission", restored.getPermission(documentLink)?.token)
+    }
+
+    @Test
+    fun purgedPermissionsAreNotWrittenBack() {
+
+        val cache = cache()
+
+        cache.restore { Preferences(emptyMap()) }
+        cache.setPermission(permission("collectionPermission"), collectionLink)
+
+        // the write scheduled by the change is dropped
+        cache.purge()
+
+        Thread.sleep(1500)
+
+        assertNull(cache.getPermission(collectionLink))
+        assertTrue(!file.exists())
+
+        val restored = cache()
+
+        restored.restore { Preferences(emptyMap()) }
+
+        assertNull(restored.getPermission(collectionLink))
+    }
+
+    @Test
+    fun ancestorPermissionsAreReused() {
+
+        val cache = cache()
+        val attachment = ResourceLocation.Attachment("db", "coll", "doc", "attachment")
+
+        cache.restore { Preferences(emptyMap()) }
+
+        assertNull(cache.getPermission(attachment, PermissionMode.Read) { true })
+
+        // the attachment's own permission is used until a wider one is cached
+        cache.setPermission(permission("attachmentPermission"), attachment.link())
+
+        assertEquals("attachmentPermission", cache.getPermission(attachment, PermissionMode.Read) { true }?.second?.id)
+
+        // the document's permission covers its attachments
+        cache.setPermission(permission("documentPermission"), documentLink)
+
+        cache.getPermission(attachment, PermissionMode.Read) { true }!!.let { (scope, permission) ->
+            assertEquals(documentLink, scope.link())
+            assertEquals("documentPermission", permission.id)
+        }
+
+        // and the collection's covers both
+        cache.setPermission(permission("collectionPermission"), collectionLink)
+
+        cache.getPermission(attachment, PermissionMode.Read) { true }!!.let { (scope, permission) ->
+            assertEquals(collectionLink, scope.link())
+            assertEquals("collectionPermission", permission.id)
+        }
+
+        // a read permission doesn't grant writes, an expiring one is skipped for the next scope
+        assertNull(cache.getPermission(attachment, PermissionMode.All) { true })
+        assertEquals("documentPermission", cache.getPermission(attachment, PermissionMode.Read) { it.id != "collectionPermission" }?.second?.id)
+
+        cache.setPermission(permission("allPermission", PermissionMode.All), documentLink)
+
+        assertEquals("allPermission", cache.getPermission(attachment, PermissionMode.All) { true }?.second?.id)
+        assertEquals("collectionPermission", cache.getPermission(attachment, PermissionMode.Read) { true }?.second?.id)
+
+        cache.purge()
+    }
+}
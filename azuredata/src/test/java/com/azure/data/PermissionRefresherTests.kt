@@ -0,0 +1,145 @@
+package com.azure.data
+
+/**
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+import com.azure.data.model.Permission
+import com.azure.data.model.PermissionMode
+import com.azure.data.model.Timestamp
+import com.azure.data.model.service.DataError
+import com.azure.data.model.service.ResourceLocation
+import com.azure.data.model.service.Response
+import com.azure.data.service.PermissionProvider
+import com.azure.data.service.PermissionProviderConfiguration
+import com.azure.data.service.PermissionRefresher
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+
+class PermissionRefresherTests {
+
+    private var now = 10_000_000L
+
+    private val refresher = PermissionRefresher { now }
+
+    private val location = ResourceLocation.Collection("db", "coll")
+
+    private val config = PermissionProviderConfiguration().apply {
+        defaultTokenDuration = 3600
+        tokenRefreshThreshold = 600
+        backgroundRefreshLeadTime = 60
+        backgroundRefreshJitter = 120
+        backgroundRefreshIdleTime = 900
+    }
+
+    // a provider whose permissions can't be fetched
+    private class FailingProvider : PermissionProvider {
+
+        val calls = AtomicInteger()
+        val called = CountDownLatch(1)
+
+        override var configuration: PermissionProviderConfiguration? = null
+
+        private fun fail(completion: (Response<Permission>) -> Unit) {
+            calls.incrementAndGet()
+            completion(Response(DataError("unavailable")))
+            called.countDown()
+        }
+
+        override fun getPermissionForCollection(collectionId: String, databaseId: String, permissionMode: PermissionMode, completion: (Response<Permission>) -> Unit) = fail(completion)
+
+        override fun getPermissionForDocument(documentId: String, collectionId: String, databaseId: String, permissionMode: PermissionMode, completion: (Response<Permission>) -> Unit) = fail(completion)
+
+        override fun getPermissionForAttachment(attachmentId: String, documentId: String, collectionId: String, databaseId: String, permissionMode: PermissionMode, completion: (Response<Permission>) -> Unit) = fail(completion)
+
+        override fun getPermissionForStoredProcedure(storedProcedureId: String, collectionId: String, databaseId: String, permissionMode: PermissionMode, completion: (Response<Permission>) -> Unit) = fail(completion)
+
+        override fun getPermissionForUserDefinedFunction(functionId: String, collectionId: String, databaseId: String, permissionMode: PermissionMode, completion: (Response<Permission>) -> Unit) = fail(completion)
+
+        override fun getPermissionForTrigger(triggerId: String, collectionId: String, databaseId: String, permissionMode: PermissionMode, completion: (Response<Permission>) -> Unit) = fail(completion)
+    }
+
+    // a permission issued so its refresh is due `delay` milliseconds from now
+    private fun permission(delay: Long) = Permission().apply {
+        timestamp = Timestamp(now - TimeUnit.SECONDS.toMillis(3600 - 600 - 60) + delay)
+    }
+
+    private fun awaitEmpty(): Boolean {
+
+        val deadline = System.currentTimeMillis() + 5000
+
+        while (refresher.size > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5)
+        }
+
+        return refresher.size == 0
+    }
+
+    @Test
+    fun refreshDelayIsTheLeadTimeMinusSomeJitter() {
+
+        val noJitter = PermissionProviderConfiguration().apply { backgroundRefreshJitter = 0 }
+
+        assertEquals(TimeUnit.SECONDS.toMillis(3600 - 600 - 60), refresher.refreshDelay(noJitter))
+
+        repeat(100) {
+
+            val delay = refresher.refreshDelay(config)
+
+            assertTrue(delay in TimeUnit.SECONDS.toMillis(3600 - 600 - 60 - 120)..TimeUnit.SECONDS.toMillis(3600 - 600 - 60))
+        }
+    }
+
+    @Test
+    fun idleLinksAreDropped() {
+
+        config.backgroundRefreshJitter = 0
+
+        val provider = FailingProvider()
+
+        refresher.recordUse(provider, location, PermissionMode.Read, permission(200), config)
+
+        assertEquals(1, refresher.size)
+
+        // not used again before the refresh is due
+        now += TimeUnit.SECONDS.toMillis(901)
+
+        assertTrue(awaitEmpty())
+        assertEquals(0, provider.calls.get())
+    }
+
+    @Test
+    fun failedRefreshesAreDropped() {
+
+        config.backgroundRefreshJitter = 0
+
+        val provider = FailingProvider()
+
+        refresher.recordUse(provider, location, PermissionMode.Read, permission(0), config)
+
+        assertTrue(provider.called.await(5, TimeUnit.SECONDS))
+        assertTrue(awaitEmpty())
+        assertEquals(1, provider.calls.get())
+    }
+
+    @Test
+    fun clearedLinksAreNotRefreshed() {
+
+        config.backgroundRefreshJitter = 0
+
+        val provider = FailingProvider()
+
+        refresher.recordUse(provider, location, PermissionMode.Read, permission(200), config)
+        refresher.clear()
+
+        Thread.sleep(400)
+
+        assertEquals(0, refresher.size)
+        assertEquals(0, provider.calls.get())
+    }
+}
@@ -0,0 +1,84 @@
+package com.azure.data
+
+/**
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+import com.azure.core.http.HttpMethod
+import com.azure.data.model.Query
+import com.azure.data.model.service.RequestDetails
+import com.azure.data.model.service.ResourceLocation
+import com.azure.data.service.QueryCacheKey
+import com.azure.data.service.QueryInvalidations
+import okhttp3.Headers
+import okhttp3.HttpUrl.Companion.toHttpUrl
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertNotEquals
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+class QueryCacheKeyTests {
+
+    private fun query() = Query.select().from("Person").where("age", 30)
+
+    @Test
+    fun keyIncludesCollectionAndPartitionKey() {
+
+        val first = QueryCacheKey.from(query(), RequestDetails(ResourceLocation.Document("db", "coll1"), "pk"))
+        val second = QueryCacheKey.from(query(), RequestDetails(ResourceLocation.Document("db", "coll2"), "pk"))
+        val otherPartition = QueryCacheKey.from(query(), RequestDetails(ResourceLocation.Document("db", "coll1"), "pk2"))
+        val same = QueryCacheKey.from(query(), RequestDetails(ResourceLocation.Document("db", "coll1"), "pk"))
+
+        assertNotEquals(first.hash, second.hash)
+        assertNotEquals(first.hash, otherPartition.hash)
+        assertEquals(first, same)
+        assertEquals(first.hash, same.hash)
+    }
+
+    @Test
+    fun writesMapToTheScopeOfTheirFeed() {
+
+        val key = QueryCacheKey.from(query(), RequestDetails(ResourceLocation.Document("db", "coll1"), "pk"))
+
+        assertEquals("dbs/db/colls/coll1", key.scope)
+        assertEquals(key.scope, QueryCacheKey.scopeOfResource("dbs/db/colls/coll1/docs/doc1"))
+        assertEquals("", QueryCacheKey.scopeOfResource("dbs/db"))
+    }
+
+    // the query is built and sent as DocumentClient does
+    private fun send(requestDetails: RequestDetails) = requestDetails.apply {
+        method = HttpMethod.Post
+        isQuery = true
+        body = "{\"query\":\"SELECT * FROM Person p WHERE p.age = 30\",\"parameters\":[]}".toByteArray()
+        buildRequest("https://account.documents.azure.com/dbs/db/colls/coll1/docs".toHttpUrl(), Headers.Builder())
+    }
+
+    @Test
+    fun resultsOfQueriesInFlightAcrossAnInvalidationAreStale() {
+
+        val invalidations = QueryInvalidations()
+        val inFlight = send(RequestDetails(ResourceLocation.Document("db", "coll1"), "pk"))
+        val scope = QueryCacheKey.from(query(), inFlight).scope
+
+        assertFalse(invalidations.isStale(scope, inFlight.sentAt))
+
+        Thread.sleep(2)
+
+        // a write to the collection lands before the query's response
+        invalidations.invalidate(QueryCacheKey.scopeOfResource("dbs/db/colls/coll1/docs/doc1"))
+
+        assertTrue(invalidations.isStale(scope, inFlight.sentAt))
+
+        Thread.sleep(2)
+
+        // the same query sent after the write isn't
+        val sentAfter = send(RequestDetails(ResourceLocation.Document("db", "coll1"), "pk"))
+
+        assertFalse(invalidations.isStale(scope, sentAfter.sentAt))
+
+        // nor are the queries of other collections
+        assertFalse(invalidations.isStale("dbs/db/colls/coll2", inFlight.sentAt))
+    }
+}
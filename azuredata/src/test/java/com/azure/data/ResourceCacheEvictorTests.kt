@@ -0,0 +1,112 @@
+package com.azure.data
+
+/**
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+import com.azure.data.service.ResourceCacheEvictor
+import com.azure.data.util.json.gson
+import com.azure.data.util.json.gsonBuilder
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Test
+import java.io.File
+import java.nio.file.Files
+
+class ResourceCacheEvictorTests {
+
+    private lateinit var root: File
+
+    private var now = 1_000_000L
+
+    @Before
+    fun before() {
+        gson = gsonBuilder.create()
+        root = Files.createTempDirectory("cache").toFile()
+    }
+
+    @After
+    fun after() {
+        root.deleteRecursively()
+    }
+
+    private fun document(collection: String, id: String, size: Int): File {
+
+        val directory = File(root, "dbs/db/colls/$collection/docs/$id")
+
+        directory.mkdirs()
+        File(directory, "$id.json").writeBytes(ByteArray(size))
+
+        return directory
+    }
+
+    private fun evictor() = ResourceCacheEvictor(root) { now }.apply {
+        maxSize = 0
+        maxCollectionSize = 0
+        maxAge = 0
+    }
+
+    @Test
+    fun evictsLeastRecentlyUsedPastMaxSize() {
+
+        val evictor = evictor()
+
+        evictor.maxSize = 250
+
+        listOf("a", "b", "c").forEach {
+            evictor.recordWrite(document("coll", it, 100), 100)
+            now += 1000
+        }
+
+        evictor.recordAccess(File(root, "dbs/db/colls/coll/docs/a"))
+
+        assertEquals(listOf("dbs/db/colls/coll/docs/b"), evictor.step())
+        assertEquals(200, evictor.totalSize)
+    }
+
+    @Test
+    fun enforcesCollectionBudgetsAndTimeToLive() {
+
+        val evictor = evictor()
+
+        evictor.maxCollectionSize = 150
+
+        evictor.recordWrite(document("big", "a", 100), 100)
+        now += 1000
+        evictor.recordWrite(document("big", "b", 100), 100)
+        evictor.recordWrite(document("small", "c", 100), 100, expiresAt = now + 500)
+
+        assertEquals(listOf("dbs/db/colls/big/docs/a"), evictor.step())
+
+        now += 1000
+
+        assertEquals(listOf("dbs/db/colls/small/docs/c"), evictor.step())
+    }
+
+    @Test
+    fun walkFindsEntriesWrittenBeforeAndPersistsInventory() {
+
+        document("coll", "a", 100)
+        document("coll", "b", 50)
+        File(root, "queries/scope/hash.deleted.1").mkdirs()
+
+        val evictor = evictor()
+
+        evictor.step()
+
+        assertEquals(150, evictor.totalSize)
+        assertTrue(!File(root, "queries/scope/hash.deleted.1").exists())
+
+        evictor.persist()
+
+        val restored = evictor()
+
+        restored.maxSize = 100
+
+        assertEquals(1, restored.step().size)
+        assertTrue(restored.totalSize <= 100)
+    }
+}
@@ -0,0 +1,111 @@
+package com.azure.data
+
+/**
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+import com.azure.data.model.QueryPredicate
+import com.azure.data.model.indexing.IndexKind
+import com.azure.data.service.CollectionIndex
+import com.azure.data.service.IndexKey
+import com.azure.data.service.PathIndex
+import com.azure.data.util.json.gson
+import com.azure.data.util.json.gsonBuilder
+import com.google.gson.JsonParser
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Test
+import java.io.File
+import java.nio.file.Files
+
+class ResourceIndexTests {
+
+    @Before
+    fun before() {
+        gson = gsonBuilder.create()
+    }
+
+    private fun json(text: String) = JsonParser().parse(text)
+
+    @Test
+    fun indexKeysOrderMixedTypes() {
+
+        val keys = listOf(IndexKey.from("a"), IndexKey.from(2), IndexKey.from(true), IndexKey.from(null as Any?))
+
+        assertEquals(listOf(IndexKey.from(null as Any?), IndexKey.from(true), IndexKey.from(2), IndexKey.from("a")), keys.sortedBy { it })
+        assertTrue(IndexKey.from(2)!!.matches("=", IndexKey.from(2.0)!!))
+        assertFalse(IndexKey.from("3")!!.matches(">", IndexKey.from(2)!!))
+    }
+
+    @Test
+    fun inequalityOnlyMatchesValuesOfTheSameType() {
+
+        assertTrue(IndexKey.from(3)!!.matches("!=", IndexKey.from(2)!!))
+        assertFalse(IndexKey.from(2)!!.matches("!=", IndexKey.from(2.0)!!))
+        assertFalse(IndexKey.from("2")!!.matches("!=", IndexKey.from(2)!!))
+        assertFalse(IndexKey.from(true)!!.matches("!=", IndexKey.from(null as Any?)!!))
+    }
+
+    @Test
+    fun rangeIndexAnswersInequalities() {
+
+        val index = PathIndex("age", IndexKind.Range)
+
+        index.put("doc1", IndexKey.from(10))
+        index.put("doc2", IndexKey.from(20))
+        index.put("doc3", IndexKey.from(30))
+        index.put("doc4", IndexKey.from("40"))
+
+        assertEquals(setOf("doc2", "doc3"), index.find(">", IndexKey.from(15)!!))
+        assertEquals(setOf("doc1", "doc2"), index.find("<=", IndexKey.from(20)!!))
+        assertEquals(setOf("doc4"), index.find("=", IndexKey.from("40")!!))
+
+        index.put("doc2", IndexKey.from(5))
+
+        assertEquals(setOf("doc3"), index.find(">", IndexKey.from(15)!!))
+    }
+
+    @Test
+    fun hashIndexOnlyAnswersEquality() {
+
+        val index = PathIndex("city", IndexKind.Hash)
+
+        index.put("doc1", IndexKey.from("Seattle"))
+
+        assertEquals(setOf("doc1"), index.find("=", IndexKey.from("Seattle")!!))
+        assertNull(index.find(">", IndexKey.from("A")!!))
+    }
+
+    @Test
+    fun collectionIndexIntersectsPredicates() {
+
+        val directory = Files.createTempDirectory("index").toFile()
+
+        try {
+            val index = CollectionIndex(directory, mapOf("age" to IndexKind.Range, "address.city" to IndexKind.Hash))
+
+            index.put("doc1", json("""{ "age": 30, "address": { "city": "Seattle" } }"""))
+            index.put("doc2", json("""{ "age": 40, "address": { "city": "Redmond" } }"""))
+            index.put("doc3", json("""{ "age": 50, "address": { "city": "Seattle" } }"""))
+
+            val predicates = listOf(QueryPredicate("age", ">", 35), QueryPredicate("address.city", "=", "Seattle"))
+
+            assertEquals(setOf("doc3"), index.find(predicates))
+            assertNull(index.find(listOf(QueryPredicate("name", "=", "x"))))
+
+            index.persist()
+
+            val restored = CollectionIndex(directory, index.paths)
+
+            assertFalse(restored.needsRebuild)
+            assertEquals(setOf("doc3"), restored.find(predicates))
+            assertTrue(File(directory, CollectionIndex.indexesDirectoryName).exists())
+        } finally {
+            directory.deleteRecursively()
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package com.azure.data
+
+/**
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+import com.azure.core.http.HttpMethod
+import com.azure.data.model.PermissionMode
+import com.azure.data.model.service.ResourceLocation
+import com.azure.data.service.ResourceTokenProvider
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNotEquals
+import org.junit.Assert.assertNotSame
+import org.junit.Assert.assertSame
+import org.junit.Test
+
+class ResourceTokenProviderTests {
+
+    private val masterKey = "dGVzdCBtYXN0ZXIga2V5"
+
+    private var now = 1_500_000_000_000
+
+    private val provider = ResourceTokenProvider(masterKey, PermissionMode.All) { now }
+
+    private fun token(id: String = "doc", method: HttpMethod = HttpMethod.Get) =
+            provider.getToken(ResourceLocation.Document("db", "coll", id), method)!!
+
+    @Test
+    fun tokensAreReusedWithinTheSameSecond() {
+
+        val token = token()
+
+        now += 999
+
+        assertSame(token, token())
+        assertNotSame(token, token(method = HttpMethod.Delete))
+        assertNotSame(token, token("other"))
+    }
+
+    @Test
+    fun tokensAreSignedAgainTheNextSecond() {
+
+        val token = token()
+
+        now += 1000
+
+        val next = token()
+
+        assertNotEquals(token.date, next.date)
+        assertNotEquals(token.token, next.token)
+        assertSame(next, token())
+    }
+
+    @Test
+    fun onlyTheFirstTokensOfASecondAreKept() {
+
+        val tokens = (0 until ResourceTokenProvider.maxCachedTokens).map { token("doc$it") }
+
+        tokens.forEachIndexed { index, token -> assertSame(token, token("doc$index")) }
+
+        // past the cap the tokens are still signed, just not kept
+        val uncached = token("doc${tokens.size}")
+
+        assertEquals(uncached, token("doc${tokens.size}"))
+        assertNotSame(uncached, token("doc${tokens.size}"))
+    }
+}
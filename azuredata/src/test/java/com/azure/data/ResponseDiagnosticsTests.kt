@@ -0,0 +1,100 @@
+package com.azure.data
+
+/**
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+import com.azure.core.http.HttpMethod
+import com.azure.data.model.ResourceList
+import com.azure.data.model.partition.PartitionKeyRange
+import com.azure.data.model.service.RequestDetails
+import com.azure.data.model.service.ResourceLocation
+import com.azure.data.model.service.Response
+import com.azure.data.model.service.Result
+import com.azure.data.service.NetworkTimingsListener
+import com.azure.data.service.OperationMetrics
+import okhttp3.Headers
+import okhttp3.OkHttpClient
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNotNull
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertSame
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import java.util.concurrent.TimeUnit
+
+class ResponseDiagnosticsTests {
+
+    private val server = LocalServer(body = "{\"Documents\":[],\"_count\":0}")
+
+    private val client = OkHttpClient.Builder()
+            .eventListenerFactory(NetworkTimingsListener.factory)
+            .build()
+
+    @After
+    fun after() = server.close()
+
+    private fun query(requestDetails: RequestDetails, delay: Long = 0): Response<String> {
+
+        requestDetails.method = HttpMethod.Post
+        requestDetails.isQuery = true
+        requestDetails.body = "{\"query\":\"SELECT * FROM c\",\"parameters\":[]}".toByteArray()
+
+        val request = requestDetails.buildRequest(server.url, Headers.Builder())
+
+        // the request waits before it's sent
+        Thread.sleep(delay)
+
+        val response = client.newCall(request).execute()
+        val json = response.body!!.string()
+
+        return Response(request, response, json, Result(json))
+    }
+
+    @Test
+    fun diagnosticsAreFilledByTheRequestAndItsCall() {
+
+        val requestDetails = RequestDetails(ResourceLocation.Document("db", "coll"))
+
+        requestDetails.partitionKeyRange = ResourceList<PartitionKeyRange>().apply {
+            items = listOf(PartitionKeyRange().apply { id = "3" })
+        }
+
+        // as DocumentClient records them, before sending the request again with the partition key ranges
+        requestDetails.diagnostics.permissionCacheHit = true
+        requestDetails.diagnostics.retries++
+
+        val response = query(requestDetails, 50)
+        val diagnostics = response.diagnostics!!
+
+        assertSame(requestDetails.diagnostics, diagnostics)
+        assertTrue(diagnostics.queueWait >= TimeUnit.MILLISECONDS.toMicros(50))
+        assertNotNull(diagnostics.networkTimings)
+        assertTrue(diagnostics.networkTimings!!.requestSent > 0)
+        assertEquals(setOf("3"), diagnostics.partitionKeyRanges)
+        assertEquals(1, diagnostics.retries)
+        assertEquals(true, diagnostics.permissionCacheHit)
+
+        val metrics = OperationMetrics.from(requestDetails, response, 1000)
+
+        assertEquals(1, metrics.retries)
+        assertEquals(requestDetails.body!!.size.toLong(), metrics.bytesSent)
+        assertTrue(diagnostics.toString().contains("retries=1, partitionKeyRanges=[3]"))
+    }
+
+    @Test
+    fun diagnosticsAreEmptyWithoutACall() {
+
+        val requestDetails = RequestDetails(ResourceLocation.Document("db", "coll"))
+
+        assertEquals(0, requestDetails.diagnostics.queueWait)
+        assertNull(requestDetails.diagnostics.networkTimings)
+        assertNull(requestDetails.diagnostics.permissionCacheHit)
+        assertTrue(requestDetails.diagnostics.partitionKeyRanges.isEmpty())
+
+        // a response that never got a request, as for the errors found before sending it
+        assertNull(Response<String>("{}").diagnostics)
+    }
+}
@@ -0,0 +1,70 @@
+package com.azure.data
+
+/**
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+import com.azure.data.model.ConsistencyLevel
+import com.azure.data.model.service.RequestDetails
+import com.azure.data.model.service.ResourceLocation
+import com.azure.data.service.SessionContainer
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNotEquals
+import org.junit.Assert.assertNull
+import org.junit.Test
+
+class SessionContainerTests {
+
+    private val sessions = SessionContainer.shared
+
+    @After
+    fun tearDown() = sessions.clear()
+
+    @Test
+    fun tokensAreTrackedPerCollection() {
+
+        sessions.setSessionToken(ResourceLocation.Document("db", "coll1", "doc1"), "0:12")
+
+        assertEquals("0:12", sessions.getSessionToken(ResourceLocation.Document("db", "coll1")))
+        assertEquals("0:12", sessions.getSessionToken(ResourceLocation.Collection("db", "coll1")))
+        assertNull(sessions.getSessionToken(ResourceLocation.Document("db", "coll2")))
+        assertNull(sessions.getSessionToken(ResourceLocation.Database("db")))
+    }
+
+    @Test
+    fun latestTokenIsKeptForEachRange() {
+
+        val location = ResourceLocation.Document("db", "coll")
+
+        sessions.setSessionToken(location, "0:-1#40,1:-1#7")
+        sessions.setSessionToken(location, "0:-1#35")
+        sessions.setSessionToken(location, "1:-1#9")
+
+        assertEquals("0:-1#40", sessions.getSessionToken(location, "0"))
+        assertEquals("1:-1#9", sessions.getSessionToken(location, "1"))
+        assertEquals(setOf("0:-1#40", "1:-1#9"), sessions.getSessionToken(location)!!.split(",").toSet())
+    }
+
+    @Test
+    fun readsAfterWritesCarryTheNewerToken() {
+
+        val location = ResourceLocation.Document("db", "coll", "doc")
+        val read = RequestDetails(location)
+
+        sessions.setSessionToken(location, "0:-1#40")
+
+        val before = read.sessionToken
+
+        sessions.setSessionToken(location, "0:-1#41")
+
+        assertEquals("0:-1#40", before)
+        assertNotEquals(before, read.sessionToken)
+
+        // other consistency levels don't echo it
+        read.consistencyLevel = ConsistencyLevel.Eventual
+
+        assertNull(read.sessionToken)
+    }
+}
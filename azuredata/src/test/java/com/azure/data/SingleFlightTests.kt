@@ -0,0 +1,72 @@
+package com.azure.data
+
+/**
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+import com.azure.data.util.SingleFlight
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+class SingleFlightTests {
+
+    @Test
+    fun concurrentCallsShareOneOperation() {
+
+        val flights = SingleFlight<String, String> { "failed: ${it.message}" }
+        val pending = mutableListOf<(String) -> Unit>()
+        val results = mutableListOf<String>()
+
+        assertTrue(flights.execute("coll1", { pending.add(it) }) { results.add("a:$it") })
+        assertFalse(flights.execute("coll1", { pending.add(it) }) { results.add("b:$it") })
+        assertTrue(flights.execute("coll2", { pending.add(it) }) { results.add("c:$it") })
+
+        assertEquals(2, pending.size)
+
+        pending[0]("token1")
+        pending[0]("token1")
+        pending[1]("token2")
+
+        assertEquals(listOf("a:token1", "b:token1", "c:token2"), results)
+        assertEquals(0, flights.size)
+
+        // the next call starts a new operation
+        assertTrue(flights.execute("coll1", { it("token3") }) { results.add("d:$it") })
+        assertEquals("d:token3", results.last())
+    }
+
+    @Test
+    fun failuresCompleteEveryCaller() {
+
+        val flights = SingleFlight<String, String> { "failed: ${it.message}" }
+        var result: String? = null
+
+        flights.execute("coll1", { throw IllegalStateException("broker") }) { result = it }
+
+        assertEquals("failed: broker", result)
+        assertEquals(0, flights.size)
+    }
+
+    @Test
+    fun lateCompletionsDoNotReachNewerFlights() {
+
+        val flights = SingleFlight<String, String> { "failed: ${it.message}" }
+        val pending = mutableListOf<(String) -> Unit>()
+        val results = mutableListOf<String>()
+
+        flights.execute("coll1", { pending.add(it) }) { results.add("a:$it") }
+
+        pending[0]("token1")
+
+        flights.execute("coll1", { pending.add(it) }) { results.add("b:$it") }
+
+        // the first operation completes again while the second is in flight
+        pending[0]("stale")
+        pending[1]("token2")
+
+        assertEquals(listOf("a:token1", "b:token2"), results)
+    }
+}
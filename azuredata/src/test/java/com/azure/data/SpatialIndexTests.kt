@@ -0,0 +1,106 @@
+package com.azure.data
+
+/**
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+import com.azure.data.model.Query
+import com.azure.data.model.SpatialFunction
+import com.azure.data.model.SpatialPredicate
+import com.azure.data.model.spatial.Point
+import com.azure.data.model.spatial.Polygon
+import com.azure.data.service.GeoBounds
+import com.azure.data.service.RTree
+import com.azure.data.service.RTreeEntry
+import com.azure.data.service.SpatialPathIndex
+import com.azure.data.service.matches
+import com.azure.data.util.GeoMath
+import com.azure.data.util.json.gson
+import com.azure.data.util.json.gsonBuilder
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Test
+
+class SpatialIndexTests {
+
+    private val square = Polygon.start(0.0, 0.0).addCoordinate(1.0, 0.0).addCoordinate(1.0, 1.0).addCoordinate(0.0, 1.0).end()
+
+    @Before
+    fun before() {
+        gson = gsonBuilder.create()
+    }
+
+    @Test
+    fun haversineDistance() {
+
+        // Seattle to Portland is ~234km
+        val distance = GeoMath.distance(-122.3321, 47.6062, -122.6765, 45.5231)
+
+        assertEquals(233_900.0, distance, 1_000.0)
+        assertEquals(0.0, GeoMath.distance(Point(10, 10), Point(10, 10)), 0.0)
+    }
+
+    @Test
+    fun pointInPolygon() {
+
+        assertTrue(GeoMath.contains(square, Point(0.5, 0.5)))
+        assertFalse(GeoMath.contains(square, Point(1.5, 0.5)))
+        assertTrue(GeoMath.within(Point(0.25, 0.75), square))
+        assertTrue(GeoMath.intersects(Point(1.0, 0.5), square))
+        assertEquals(0.0, GeoMath.distance(Point(0.5, 0.5), square), 0.0)
+
+        // one degree of longitude at the equator is ~111km
+        assertEquals(111_195.0, GeoMath.distance(Point(2.0, 0.5), square), 500.0)
+    }
+
+    @Test
+    fun rTreeFindsIntersectingBoxes() {
+
+        val entries = (0 until 1000).map { RTreeEntry("doc$it", GeoBounds(it * 0.01, 0.0, it * 0.01, 0.0)) }
+
+        val bulkLoaded = RTree.bulkLoad(entries)
+        val inserted = RTree()
+
+        entries.forEach { inserted.insert(it) }
+
+        val area = GeoBounds(0.995, -1.0, 2.005, 1.0)
+        val expected = (100..200).map { "doc$it" }.toSet()
+
+        assertEquals(expected, bulkLoaded.search(area).toSet())
+        assertEquals(expected, inserted.search(area).toSet())
+
+        (100..150).forEach { inserted.remove("doc$it", GeoBounds(it * 0.01, 0.0, it * 0.01, 0.0)) }
+
+        assertEquals((151..200).map { "doc$it" }.toSet(), inserted.search(area).toSet())
+        assertEquals(949, inserted.count)
+    }
+
+    @Test
+    fun spatialIndexNarrowsDistanceQueries() {
+
+        val index = SpatialPathIndex("location")
+
+        index.put("near", gson.toJsonTree(Point(-122.3321, 47.6062)))
+        index.put("far", gson.toJsonTree(Point(-122.6765, 45.5231)))
+
+        val within5km = SpatialPredicate("location", SpatialFunction.Distance, Point(-122.35, 47.61), "<", 5000.0)
+        val candidates = index.find(within5km)!!
+
+        assertEquals(setOf("near"), candidates)
+        assertTrue(within5km.matches(Point(-122.3321, 47.6062)))
+        assertFalse(within5km.matches(Point(-122.6765, 45.5231)))
+    }
+
+    @Test
+    fun distanceEqualityIsLeftToTheService() {
+
+        val point = Point(-122.35, 47.61)
+
+        assertTrue(Query.select().from("Place").whereDistanceLessThan("location", point, 5000).isLocallyEvaluable)
+        assertFalse(Query.select().from("Place").whereDistanceEqualTo("location", point, 5000).isLocallyEvaluable)
+        assertFalse(Query.select().from("Place").whereDistanceLessThan("location", point, 5000).andWhereDistanceEqualTo("location", point, 10).isLocallyEvaluable)
+    }
+}
@@ -10,6 +10,7 @@ import com.azure.data.service.PermissionProviderConfiguration
 import com.azure.data.model.service.PermissionProviderError
 import com.azure.data.model.service.Response
 import com.azure.data.util.json.gson
+import com.google.gson.reflect.TypeToken
 import okhttp3.*
 import okhttp3.HttpUrl.Companion.toHttpUrlOrNull
 import okhttp3.MediaType.Companion.toMediaTypeOrNull
@@ -36,6 +37,28 @@ class DefaultPermissionProvider(private val baseUrl: HttpUrl, override var confi
     constructor(baseUrl: URL, configuration: PermissionProviderConfiguration? = PermissionProviderConfiguration.default, client: OkHttpClient = OkHttpClient.Builder().build())
             : this(baseUrl.toHttpUrlOrNull()!!, configuration, client)
 
+    // how long (in milliseconds) permission requests are gathered to be sent to the broker's
+    // batch endpoint (`api/data/permissions`) in a single call, 0 to send each request on its own
+    //
+    // default: 0, the broker must support the batch endpoint
+    @Volatile
+    var batchWindow: Long = 0
+        set(value) = synchronized(this) {
+            field = value
+            batcher = null
+        }
+
+    // the maximum number of permission requests sent in a single batch
+    @Volatile
+    var maxBatchSize: Int = 50
+        set(value) = synchronized(this) {
+            field = value
+            batcher = null
+        }
+
+    // guarded by this provider, so concurrent requests share the same batcher
+    private var batcher: PermissionBatcher? = null
+
     override fun getPermissionForCollection(collectionId: String, databaseId: String, permissionMode: PermissionMode, completion: (Response<Permission>) -> Unit) {
         val permissionRequest = PermissionRequest(databaseId, collectionId, null, null, configuration!!.defaultTokenDuration.toInt(), permissionMode)
         getPermission(permissionRequest, completion)
@@ -74,10 +97,114 @@ class DefaultPermissionProvider(private val baseUrl: HttpUrl, override var confi
     }
 
     private fun getPermission(permissionRequest: PermissionRequest, completion: (Response<Permission>) -> Unit) {
+
+        val batcher = synchronized(this) {
+
+            if (batchWindow <= 0) {
+                null
+            } else {
+                batcher ?: PermissionBatcher(batchWindow, maxBatchSize) { requests, callback -> sendPermissionRequests(requests, callback) }.also { batcher = it }
+            }
+        } ?: return sendPermissionRequest(permissionRequest, completion)
+
+        batcher.add(permissionRequest, completion)
+    }
+
+    private fun sendPermissionRequests(permissionRequests: List<PermissionRequest>, completion: (List<Response<Permission>>) -> Unit) {
+
+        // a batch of one is sent to the single permission endpoint
+        if (permissionRequests.size == 1) {
+            return sendPermissionRequest(permissionRequests[0]) { completion(listOf(it)) }
+        }
+
+        val failed = { error: DataError -> completion(permissionRequests.map { Response<Permission>(error) }) }
+
+        try {
+            val url = baseUrl
+                    .newBuilder()
+                    .addPathSegments(batchPermissionPath)
+                    .build()
+
+            val request = Request.Builder()
+                    .url(url)
+                    .addHeader("Content-Type", "application/json")
+                    .post(gson.toJson(permissionRequests).toRequestBody("application/json".toMediaTypeOrNull()))
+                    .build()
+
+            client.newCall(request)
+                    .enqueue(object : Callback {
+
+                        override fun onFailure(call: Call, e: IOException) {
+
+                            failed(DataError(e))
+                        }
+
+                        override fun onResponse(call: Call, response: okhttp3.Response) {
+
+                            try {
+                                // a broker without the batch endpoint: go back to sending the requests one by one
+                                if (response.code == 404) {
+
+                                    response.close()
+                                    batchWindow = 0
+
+                                    return sendEach(permissionRequests, completion)
+                                }
+
+                                val json = response.body?.string()
+
+                                if (!response.isSuccessful || json == null) {
+                                    return failed(DataError(PermissionProviderError.GetPermissionFailed))
+                                }
+
+                                val permissions = gson.fromJson<List<Permission?>>(json, object : TypeToken<List<Permission?>>() {}.type)
+
+                                if (permissions.size != permissionRequests.size) {
+                                    return failed(DataError(PermissionProviderError.GetPermissionFailed))
+                                }
+
+                                completion(permissions.map { permission ->
+                                    permission?.let { Response(it) } ?: Response<Permission>(DataError(PermissionProviderError.GetPermissionFailed))
+                                })
+
+                            } catch (ex: Exception) {
+
+                                failed(DataError(ex))
+                            }
+                        }
+                    })
+
+        } catch (ex: Exception) {
+            failed(DataError(PermissionProviderError.GetPermissionFailed))
+        }
+    }
+
+    private fun sendEach(permissionRequests: List<PermissionRequest>, completion: (List<Response<Permission>>) -> Unit) {
+
+        val responses = arrayOfNulls<Response<Permission>>(permissionRequests.size)
+        var remaining = permissionRequests.size
+
+        permissionRequests.forEachIndexed { i, permissionRequest ->
+
+            sendPermissionRequest(permissionRequest) { response ->
+
+                val isComplete = synchronized(responses) {
+                    responses[i] = response
+                    --remaining == 0
+                }
+
+                if (isComplete) {
+                    completion(responses.map { it!! })
+                }
+            }
+        }
+    }
+
+    private fun sendPermissionRequest(permissionRequest: PermissionRequest, completion: (Response<Permission>) -> Unit) {
         try {
             val url = baseUrl
                     .newBuilder()
-                    .addPathSegment("api/data/permission")
+                    .addPathSegment(permissionPath)
                     .build()
 
             val request = Request.Builder()
@@ -117,4 +244,11 @@ class DefaultPermissionProvider(private val baseUrl: HttpUrl, override var confi
             return completion(Response(DataError(PermissionProviderError.GetPermissionFailed)))
         }
     }
-}
\ No newline at end of file
+
+    companion object {
+
+        const val permissionPath = "api/data/permission"
+
+        const val batchPermissionPath = "api/data/permissions"
+    }
+}
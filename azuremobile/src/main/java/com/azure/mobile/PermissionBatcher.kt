@@ -0,0 +1,88 @@
+package com.azure.mobile
+
+import com.azure.data.model.Permission
+import com.azure.data.model.service.Response
+import java.util.concurrent.Executors
+import java.util.concurrent.ScheduledExecutorService
+import java.util.concurrent.TimeUnit
+
+/**
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+/**
+ * Gathers the permission requests made within `window` milliseconds of each other into batches of up to `maxSize`,
+ * which `send` gets the permissions for in a single call.
+ */
+internal class PermissionBatcher(
+        private val window: Long,
+        private val maxSize: Int,
+        private val send: (List<PermissionRequest>, (List<Response<Permission>>) -> Unit) -> Unit
+) {
+
+    private class Pending(val request: PermissionRequest, val completion: (Response<Permission>) -> Unit)
+
+    private var pending: MutableList<Pending> = mutableListOf()
+
+    private var isFlushScheduled = false
+
+    fun add(request: PermissionRequest, completion: (Response<Permission>) -> Unit) {
+
+        val batch = synchronized(this) {
+
+            pending.add(Pending(request, completion))
+
+            when {
+                pending.size >= maxSize -> takePending()
+
+                !isFlushScheduled -> {
+
+                    isFlushScheduled = true
+                    scheduler.schedule({ flush() }, window, TimeUnit.MILLISECONDS)
+                    null
+                }
+
+                else -> null
+            }
+        }
+
+        batch?.let { send(it) }
+    }
+
+    private fun flush() {
+
+        val batch = synchronized(this) {
+
+            isFlushScheduled = false
+            takePending()
+        }
+
+        if (batch.isNotEmpty()) {
+            send(batch)
+        }
+    }
+
+    private fun takePending(): List<Pending> {
+
+        val batch = pending
+
+        pending = mutableListOf()
+
+        return batch
+    }
+
+    private fun send(batch: List<Pending>) {
+
+        send(batch.map { it.request }) { responses ->
+
+            batch.forEachIndexed { i, pending -> pending.completion(responses[i]) }
+        }
+    }
+
+    companion object {
+
+        // shared by every batcher, it only schedules the flushes
+        private val scheduler: ScheduledExecutorService = Executors.newSingleThreadScheduledExecutor()
+    }
+}
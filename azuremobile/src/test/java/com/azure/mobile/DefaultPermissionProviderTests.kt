@@ -0,0 +1,121 @@
+package com.azure.mobile
+
+/**
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+import com.azure.data.AzureData
+import com.azure.data.model.Permission
+import com.azure.data.model.PermissionMode
+import com.azure.data.model.service.Response
+import okhttp3.HttpUrl.Companion.toHttpUrl
+import okhttp3.OkHttpClient
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Test
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+
+class DefaultPermissionProviderTests {
+
+    private val collections = listOf("coll1", "coll2", "coll3")
+
+    @Before
+    fun before() {
+        // sets up the serialization of the resources
+        AzureData.reset()
+    }
+
+    private fun provider(broker: LocalPermissionBroker) = DefaultPermissionProvider(
+            "https://broker.example.com/".toHttpUrl(),
+            client = OkHttpClient.Builder().addInterceptor(broker).build()
+    )
+
+    private fun grant(request: PermissionRequest) = Permission().apply {
+        id = request.collectionId
+        permissionMode = request.permissionMode
+    }
+
+    // requests the permissions of every collection at once, and returns the responses by collection
+    private fun requestAll(provider: DefaultPermissionProvider): Map<String, Response<Permission>> {
+
+        val responses = HashMap<String, Response<Permission>>()
+        val latch = CountDownLatch(collections.size)
+
+        collections.forEach { collectionId ->
+
+            provider.getPermissionForCollection(collectionId, "db", PermissionMode.Read) {
+
+                synchronized(responses) { responses[collectionId] = it }
+                latch.countDown()
+            }
+        }
+
+        assertTrue(latch.await(5, TimeUnit.SECONDS))
+
+        return responses
+    }
+
+    @Test
+    fun requestsWithinTheWindowAreSentInOneBatch() {
+
+        val broker = LocalPermissionBroker { grant(it) }
+        val provider = provider(broker).apply { batchWindow = 200 }
+
+        val responses = requestAll(provider)
+
+        // each caller gets the permission for its own request
+        collections.forEach { assertEquals(it, responses.getValue(it).resource?.id) }
+
+        assertEquals(1, broker.callCount)
+        assertEquals(1, broker.batchCallCount)
+    }
+
+    @Test
+    fun deniedPermissionsOnlyFailTheirOwnRequests() {
+
+        val broker = LocalPermissionBroker { if (it.collectionId == "coll2") null else grant(it) }
+        val provider = provider(broker).apply { batchWindow = 200 }
+
+        val responses = requestAll(provider)
+
+        assertEquals("coll1", responses.getValue("coll1").resource?.id)
+        assertNull(responses.getValue("coll2").resource)
+        assertTrue(responses.getValue("coll2").error != null)
+        assertEquals("coll3", responses.getValue("coll3").resource?.id)
+    }
+
+    @Test
+    fun brokersWithoutBatchEndpointGetSingleRequests() {
+
+        val broker = LocalPermissionBroker(supportsBatch = false) { grant(it) }
+        val provider = provider(broker).apply { batchWindow = 200 }
+
+        val responses = requestAll(provider)
+
+        collections.forEach { assertEquals(it, responses.getValue(it).resource?.id) }
+
+        // the batch that found no endpoint, then one request per permission, and no more batches
+        assertEquals(1, broker.batchCallCount)
+        assertEquals(1 + collections.size, broker.callCount)
+        assertEquals(0, provider.batchWindow)
+
+        requestAll(provider)
+
+        assertEquals(1, broker.batchCallCount)
+    }
+
+    @Test
+    fun requestsAreSentOnTheirOwnWithoutWindow() {
+
+        val broker = LocalPermissionBroker { grant(it) }
+
+        requestAll(provider(broker))
+
+        assertEquals(collections.size, broker.callCount)
+        assertEquals(0, broker.batchCallCount)
+    }
+}
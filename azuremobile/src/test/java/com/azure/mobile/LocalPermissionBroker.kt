@@ -0,0 +1,73 @@
+package com.azure.mobile
+
+import com.azure.data.model.Permission
+import com.azure.data.util.json.gson
+import com.google.gson.reflect.TypeToken
+import okhttp3.Interceptor
+import okhttp3.MediaType.Companion.toMediaTypeOrNull
+import okhttp3.Protocol
+import okhttp3.Response
+import okhttp3.ResponseBody.Companion.toResponseBody
+import okio.Buffer
+
+/**
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+/**
+ * A stand-in for the permission broker, answering DefaultPermissionProvider's requests locally
+ * with the permissions returned by `grant`.
+ *
+ * Add it to the OkHttpClient given to DefaultPermissionProvider, it serves the single (`api/data/permission`)
+ * endpoint, and the batch (`api/data/permissions`) one if `supportsBatch`, and records how many calls were made.
+ */
+class LocalPermissionBroker(private val supportsBatch: Boolean = true, private val grant: (PermissionRequest) -> Permission?) : Interceptor {
+
+    var callCount = 0
+        private set
+
+    var batchCallCount = 0
+        private set
+
+    override fun intercept(chain: Interceptor.Chain): Response {
+
+        val request = chain.request()
+        val path = request.url.pathSegments.joinToString("/").trimEnd('/')
+
+        if (!path.endsWith(DefaultPermissionProvider.permissionPath) && !path.endsWith(DefaultPermissionProvider.batchPermissionPath)) {
+            return chain.proceed(request)
+        }
+
+        val isBatch = path.endsWith(DefaultPermissionProvider.batchPermissionPath)
+
+        synchronized(this) {
+            callCount++
+            if (isBatch) batchCallCount++
+        }
+
+        val body = Buffer().also { request.body?.writeTo(it) }.readUtf8()
+
+        val json = if (isBatch) {
+
+            if (!supportsBatch) {
+                null
+            } else {
+                val requests = gson.fromJson<List<PermissionRequest>>(body, object : TypeToken<List<PermissionRequest>>() {}.type)
+
+                gson.toJson(requests.map { grant(it) })
+            }
+        } else {
+
+            grant(gson.fromJson(body, PermissionRequest::class.java))?.let { gson.toJson(it) }
+        }
+
+        return Response.Builder()
+                .request(request)
+                .protocol(Protocol.HTTP_1_1)
+                .code(if (json != null) 200 else 404)
+                .message(if (json != null) "OK" else "Not Found")
+                .body((json ?: "").toResponseBody("application/json".toMediaTypeOrNull()))
+                .build()
+    }
+}